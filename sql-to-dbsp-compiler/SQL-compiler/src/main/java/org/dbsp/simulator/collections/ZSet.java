@@ -36,6 +36,11 @@ public class ZSet<Data, Weight> extends BaseCollection<Weight> implements ToInde
         return this.data.size();
     }
 
+    /** The data items with their (non-zero) weights. */
+    public Set<Map.Entry<Data, Weight>> entries() {
+        return Collections.unmodifiableMap(this.data).entrySet();
+    }
+
     /** Create an empty Z-set */
     public ZSet(WeightType<Weight> weightType) {
         this.data = new HashMap<>();
@@ -0,0 +1,513 @@
+package org.dbsp.simulator.interpreter;
+
+import org.dbsp.simulator.AggregateDescription;
+import org.dbsp.simulator.collections.IndexedZSet;
+import org.dbsp.simulator.collections.ZSet;
+import org.dbsp.simulator.types.IntegerWeight;
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperatorBase;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPApply2Operator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPApplyOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPControlledFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayOutputOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDelayedIntegralOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIncrementalSortOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNoopOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceBaseOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamDistinctOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSumOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowAggregateOperator;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.errors.InternalCompilerError;
+import org.dbsp.sqlCompiler.compiler.errors.UnimplementedException;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPAggregate;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeIndexedZSet;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Executes a DBSPCircuit without generating Rust code.
+ * Each call to 'step' feeds one change to every input table, evaluates
+ * all operators of the circuit in order, and returns the changes of all views.
+ * Streams carry Z-sets of values computed by an ExpressionEvaluator;
+ * an indexed Z-set is represented as a Z-set of (key, value) tuples.
+ * The changes of a table with a primary key are applied as upserts:
+ * a row replaces the row with the same key, and a deletion removes it.
+ * The incremental operators (join, distinct, aggregate, antijoin) are computed
+ * by applying their non-incremental versions to the integrals of their inputs,
+ * and by differentiating the result.  This is slow, but simple enough to be
+ * obviously correct, which makes the interpreter useful to validate circuits.
+ * The operators that compute waterlines and bounds (waterline, apply, apply2)
+ * produce scalar values instead of Z-sets.  The operators that only prune
+ * the traces of the runtime do not change the results, and are ignored.
+ * The operators that cannot be interpreted throw UnimplementedException;
+ * these include the ORDER BY sort and the window aggregates.
+ */
+public class CircuitInterpreter extends CircuitVisitor {
+    final DBSPCircuit program;
+    final ExpressionEvaluator evaluator;
+    /** Value produced by each operator in the current step. */
+    final Map<DBSPOperator, ZSet<Object, Integer>> values;
+    /** State of the operators that have memory, kept between steps. */
+    final Map<DBSPOperator, ZSet<Object, Integer>> state;
+    /** Value produced in the current step by each operator whose output is not a Z-set. */
+    final Map<DBSPOperator, Object> scalars;
+    /** State of the waterline operators, kept between steps. */
+    final Map<DBSPOperator, Object> waterlines;
+    /** Integrals of the inputs of incremental operators. */
+    final Map<DBSPOperator, List<ZSet<Object, Integer>>> integrals;
+    /** Changes of the input tables in the current step. */
+    final Map<String, ZSet<Object, Integer>> inputs;
+    /** Changes of the views in the current step. */
+    final Map<String, ZSet<Object, Integer>> outputs;
+    /** Number of steps executed. */
+    int steps;
+
+    public CircuitInterpreter(IErrorReporter reporter, DBSPCircuit program) {
+        super(reporter);
+        this.program = program;
+        this.evaluator = new ExpressionEvaluator();
+        this.values = new HashMap<>();
+        this.state = new HashMap<>();
+        this.scalars = new HashMap<>();
+        this.waterlines = new HashMap<>();
+        this.integrals = new HashMap<>();
+        this.inputs = new HashMap<>();
+        this.outputs = new LinkedHashMap<>();
+        this.steps = 0;
+    }
+
+    static ZSet<Object, Integer> empty() {
+        return new ZSet<>(IntegerWeight.INSTANCE);
+    }
+
+    /** Execute one step of the circuit.
+     * @param inputs Changes of the input tables, indexed by table name.
+     *               Tables that do not appear do not change.
+     * @return       The changes of the views, indexed by view name. */
+    public Map<String, ZSet<Object, Integer>> step(Map<String, ZSet<Object, Integer>> inputs) {
+        this.inputs.clear();
+        this.inputs.putAll(inputs);
+        this.values.clear();
+        this.scalars.clear();
+        this.outputs.clear();
+        this.apply(this.program);
+        this.steps++;
+        return new LinkedHashMap<>(this.outputs);
+    }
+
+    /** Execute one step of the circuit.
+     * @param inputs Changes of the input tables, in the order in which the tables are declared.
+     * @return       The changes of the views, in the order in which the views are declared. */
+    public DBSPZSetLiteral[] step(DBSPZSetLiteral... inputs) {
+        List<DBSPSourceBaseOperator> sources = new ArrayList<>(this.program.circuit.inputOperators.values());
+        if (sources.size() != inputs.length)
+            throw new InternalCompilerError("Circuit has " + sources.size() +
+                    " inputs, but " + inputs.length + " changes were supplied");
+        Map<String, ZSet<Object, Integer>> changes = new HashMap<>();
+        for (int i = 0; i < inputs.length; i++)
+            changes.put(sources.get(i).tableName, this.toZSet(inputs[i]));
+        Map<String, ZSet<Object, Integer>> results = this.step(changes);
+        List<DBSPSinkOperator> sinks = new ArrayList<>(this.program.circuit.outputOperators.values());
+        DBSPZSetLiteral[] outputs = new DBSPZSetLiteral[sinks.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            DBSPSinkOperator sink = sinks.get(i);
+            outputs[i] = this.toLiteral(
+                    Objects.requireNonNull(results.get(sink.viewName)), sink.getOutputZSetElementType());
+        }
+        return outputs;
+    }
+
+    public ZSet<Object, Integer> toZSet(DBSPZSetLiteral literal) {
+        ZSet<Object, Integer> result = empty();
+        for (Map.Entry<DBSPExpression, Long> entry: literal.data.entrySet())
+            result.append(this.evaluator.evaluate(entry.getKey()), Math.toIntExact(entry.getValue()));
+        return result;
+    }
+
+    public DBSPZSetLiteral toLiteral(ZSet<Object, Integer> zset, DBSPType elementType) {
+        DBSPZSetLiteral result = DBSPZSetLiteral.emptyWithElementType(elementType);
+        for (Map.Entry<Object, Integer> entry: zset.entries())
+            result.add(this.evaluator.toLiteral(entry.getKey(), elementType), entry.getValue());
+        return result;
+    }
+
+    ZSet<Object, Integer> getValue(DBSPOperator operator) {
+        ZSet<Object, Integer> result = this.values.get(operator);
+        if (result == null)
+            throw new InternalCompilerError("Operator evaluated before its input", operator);
+        return result;
+    }
+
+    void setValue(DBSPOperator operator, ZSet<Object, Integer> value) {
+        this.values.put(operator, value);
+    }
+
+    @Nullable
+    Object getScalar(DBSPOperator operator) {
+        if (!this.scalars.containsKey(operator))
+            throw new InternalCompilerError("Operator evaluated before its input", operator);
+        return this.scalars.get(operator);
+    }
+
+    void setScalar(DBSPOperator operator, @Nullable Object value) {
+        this.scalars.put(operator, value);
+    }
+
+    @Nullable
+    static Object key(@Nullable Object keyValue) {
+        return ((TupleValue) keyValue).get(0);
+    }
+
+    @Nullable
+    static Object value(@Nullable Object keyValue) {
+        return ((TupleValue) keyValue).get(1);
+    }
+
+    /** Apply the function of an operator to an element of its input. */
+    @Nullable
+    Object applyTo(DBSPOperator operator, Object element) {
+        DBSPClosureExpression closure = operator.getFunction().to(DBSPClosureExpression.class);
+        boolean indexed = operator.inputs.get(0).outputType.is(DBSPTypeIndexedZSet.class);
+        if (indexed && closure.parameters.length == 2)
+            return this.evaluator.apply(closure, key(element), value(element));
+        return this.evaluator.apply(closure, element);
+    }
+
+    /** Compute an incremental operator as the derivative of the non-incremental 'function'
+     * applied to the integrals of the inputs. */
+    ZSet<Object, Integer> incremental(
+            DBSPOperator operator, Function<List<ZSet<Object, Integer>>, ZSet<Object, Integer>> function) {
+        List<ZSet<Object, Integer>> integrals = this.integrals.computeIfAbsent(operator, o -> new ArrayList<>());
+        for (int i = 0; i < operator.inputs.size(); i++) {
+            ZSet<Object, Integer> delta = this.getValue(operator.inputs.get(i));
+            if (integrals.size() <= i)
+                integrals.add(delta);
+            else
+                integrals.set(i, integrals.get(i).add(delta));
+        }
+        ZSet<Object, Integer> result = function.apply(integrals);
+        ZSet<Object, Integer> previous = this.state.put(operator, result);
+        if (previous == null)
+            return result;
+        return result.subtract(previous);
+    }
+
+    ZSet<Object, Integer> join(DBSPOperator operator, ZSet<Object, Integer> left, ZSet<Object, Integer> right) {
+        DBSPClosureExpression closure = operator.getFunction().to(DBSPClosureExpression.class);
+        IndexedZSet<Object, Object, Integer> leftIndex = left.index(CircuitInterpreter::key);
+        IndexedZSet<Object, Object, Integer> rightIndex = right.index(CircuitInterpreter::key);
+        return leftIndex.join(rightIndex,
+                (l, r) -> this.evaluator.apply(closure, key(l), value(l), value(r)))
+                .deindex();
+    }
+
+    static ZSet<Object, Integer> antiJoin(ZSet<Object, Integer> left, ZSet<Object, Integer> right) {
+        ZSet<Object, Integer> keys = right.distinct().map(CircuitInterpreter::key);
+        return left.filter(kv -> keys.getWeight(key(kv)) == 0);
+    }
+
+    ZSet<Object, Integer> aggregate(DBSPAggregateOperatorBase operator, ZSet<Object, Integer> input) {
+        if (operator.aggregate == null)
+            throw new UnimplementedException("Aggregate described by a function", operator);
+        DBSPAggregate.Implementation[] components = operator.aggregate.components;
+        Object[] zero = new Object[components.length];
+        for (int i = 0; i < components.length; i++)
+            zero[i] = this.evaluator.evaluate(components[i].zero);
+        AggregateDescription<Object, TupleValue, Object, Integer> description = new AggregateDescription<>(
+                new TupleValue(zero),
+                (accumulator, kv, weight) -> {
+                    Object[] next = new Object[components.length];
+                    for (int i = 0; i < components.length; i++)
+                        next[i] = this.evaluator.apply(components[i].increment,
+                                accumulator.get(i), value(kv), weight.longValue());
+                    return new TupleValue(next);
+                },
+                accumulator -> {
+                    Object[] result = new Object[components.length];
+                    for (int i = 0; i < components.length; i++) {
+                        DBSPClosureExpression post = components[i].postProcess;
+                        result[i] = post == null ? accumulator.get(i) :
+                                this.evaluator.apply(post, accumulator.get(i));
+                    }
+                    return new TupleValue(result);
+                });
+        return input.index(CircuitInterpreter::key)
+                .aggregate(description)
+                .flatten(TupleValue::new);
+    }
+
+    @Override
+    public void postorder(DBSPOperator operator) {
+        throw new UnimplementedException("Operator not supported by the interpreter", operator);
+    }
+
+    @Override
+    public void postorder(DBSPSourceMultisetOperator operator) {
+        this.setValue(operator, this.inputs.getOrDefault(operator.tableName, empty()));
+    }
+
+    @Override
+    public void postorder(DBSPSourceMapOperator operator) {
+        ZSet<Object, Integer> previous = this.state.getOrDefault(operator, empty());
+        Map<Object, Object> rows = new LinkedHashMap<>();
+        for (Map.Entry<Object, Integer> entry: previous.entries())
+            rows.put(key(entry.getKey()), value(entry.getKey()));
+        ZSet<Object, Integer> changes = this.inputs.getOrDefault(operator.tableName, empty());
+        // Deletions first, so that an update given as a (deletion, insertion) pair
+        // keeps the new row
+        for (boolean insert: new boolean[] { false, true }) {
+            for (Map.Entry<Object, Integer> entry: changes.entries()) {
+                if ((entry.getValue() > 0) != insert)
+                    continue;
+                TupleValue row = (TupleValue) entry.getKey();
+                Object[] keyFields = new Object[operator.keyFields.size()];
+                for (int i = 0; i < keyFields.length; i++)
+                    keyFields[i] = row.get(operator.keyFields.get(i));
+                TupleValue key = new TupleValue(keyFields);
+                if (insert)
+                    rows.put(key, row);
+                else
+                    rows.remove(key);
+            }
+        }
+        ZSet<Object, Integer> current = empty();
+        for (Map.Entry<Object, Object> entry: rows.entrySet())
+            current.append(new TupleValue(entry.getKey(), entry.getValue()), 1);
+        this.state.put(operator, current);
+        this.setValue(operator, current.subtract(previous));
+    }
+
+    @Override
+    public void postorder(DBSPConstantOperator operator) {
+        if (operator.incremental && this.steps > 0) {
+            // Incremental constants only produce their value in the first step
+            this.setValue(operator, empty());
+            return;
+        }
+        this.setValue(operator, this.toZSet(operator.getFunction().to(DBSPZSetLiteral.class)));
+    }
+
+    @Override
+    public void postorder(DBSPSinkOperator operator) {
+        ZSet<Object, Integer> value = this.getValue(operator.inputs.get(0));
+        this.setValue(operator, value);
+        this.outputs.put(operator.viewName, value);
+    }
+
+    @Override
+    public void postorder(DBSPNoopOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()));
+    }
+
+    @Override
+    public void postorder(DBSPMapOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()).map(e -> this.applyTo(operator, e)));
+    }
+
+    @Override
+    public void postorder(DBSPIndexOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()).map(e -> this.applyTo(operator, e)));
+    }
+
+    @Override
+    public void postorder(DBSPMapIndexOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()).map(e -> this.applyTo(operator, e)));
+    }
+
+    @Override
+    public void postorder(DBSPDeindexOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()).map(CircuitInterpreter::value));
+    }
+
+    @Override
+    public void postorder(DBSPFilterOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()).filter(
+                e -> Boolean.TRUE.equals(this.applyTo(operator, e))));
+    }
+
+    @Override
+    public void postorder(DBSPNegateOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()).negate());
+    }
+
+    @Override
+    public void postorder(DBSPSumOperator operator) {
+        ZSet<Object, Integer> result = empty();
+        for (DBSPOperator input: operator.inputs)
+            result = result.add(this.getValue(input));
+        this.setValue(operator, result);
+    }
+
+    @Override
+    public void postorder(DBSPSubtractOperator operator) {
+        this.setValue(operator, this.getValue(operator.inputs.get(0))
+                .subtract(this.getValue(operator.inputs.get(1))));
+    }
+
+    @Override
+    public void postorder(DBSPStreamDistinctOperator operator) {
+        this.setValue(operator, this.getValue(operator.input()).distinct());
+    }
+
+    @Override
+    public void postorder(DBSPDistinctOperator operator) {
+        this.setValue(operator, this.incremental(operator, i -> i.get(0).distinct()));
+    }
+
+    @Override
+    public void postorder(DBSPStreamJoinOperator operator) {
+        this.setValue(operator, this.join(operator,
+                this.getValue(operator.inputs.get(0)), this.getValue(operator.inputs.get(1))));
+    }
+
+    @Override
+    public void postorder(DBSPJoinOperator operator) {
+        this.setValue(operator, this.incremental(operator, i -> this.join(operator, i.get(0), i.get(1))));
+    }
+
+    @Override
+    public void postorder(DBSPAntiJoinOperator operator) {
+        this.setValue(operator, this.incremental(operator, i -> antiJoin(i.get(0), i.get(1))));
+    }
+
+    @Override
+    public void postorder(DBSPStreamAggregateOperator operator) {
+        this.setValue(operator, this.aggregate(operator, this.getValue(operator.input())));
+    }
+
+    @Override
+    public void postorder(DBSPAggregateOperator operator) {
+        this.setValue(operator, this.incremental(operator, i -> this.aggregate(operator, i.get(0))));
+    }
+
+    @Override
+    public void postorder(DBSPIntegrateOperator operator) {
+        ZSet<Object, Integer> previous = this.state.getOrDefault(operator, empty());
+        ZSet<Object, Integer> result = previous.add(this.getValue(operator.input()));
+        this.state.put(operator, result);
+        this.setValue(operator, result);
+    }
+
+    @Override
+    public void postorder(DBSPDifferentiateOperator operator) {
+        ZSet<Object, Integer> input = this.getValue(operator.input());
+        ZSet<Object, Integer> previous = this.state.put(operator, input);
+        this.setValue(operator, previous == null ? input : input.subtract(previous));
+    }
+
+    @Override
+    public void postorder(DBSPDelayedIntegralOperator operator) {
+        ZSet<Object, Integer> previous = this.state.getOrDefault(operator, empty());
+        this.state.put(operator, previous.add(this.getValue(operator.input())));
+        this.setValue(operator, previous);
+    }
+
+    @Override
+    public void postorder(DBSPDelayOutputOperator operator) {
+        // The value is stored by the corresponding delay operator in the previous step
+        this.setValue(operator, this.state.getOrDefault(operator, empty()));
+    }
+
+    @Override
+    public void postorder(DBSPDelayOperator operator) {
+        DBSPOperator stateOwner = operator.output != null ? operator.output : operator;
+        ZSet<Object, Integer> previous = this.state.put(stateOwner, this.getValue(operator.input()));
+        this.setValue(operator, previous == null ? empty() : previous);
+    }
+
+    @Override
+    public void postorder(DBSPWaterlineOperator operator) {
+        // Like the runtime, fold the function applied to the keys of each change
+        // into the maximum value seen so far
+        DBSPClosureExpression function = operator.getFunction().to(DBSPClosureExpression.class);
+        boolean indexed = operator.input().outputType.is(DBSPTypeIndexedZSet.class);
+        Object waterline = this.waterlines.containsKey(operator) ? this.waterlines.get(operator) :
+                this.evaluator.apply(operator.init.to(DBSPClosureExpression.class));
+        for (Map.Entry<Object, Integer> entry: this.getValue(operator.input()).entries()) {
+            Object bound = this.evaluator.apply(function, indexed ? key(entry.getKey()) : entry.getKey());
+            if (ExpressionEvaluator.compare(bound, waterline) > 0)
+                waterline = bound;
+        }
+        this.waterlines.put(operator, waterline);
+        this.setScalar(operator, waterline);
+    }
+
+    @Override
+    public void postorder(DBSPApplyOperator operator) {
+        this.setScalar(operator, this.evaluator.apply(
+                operator.getFunction().to(DBSPClosureExpression.class), this.getScalar(operator.input())));
+    }
+
+    @Override
+    public void postorder(DBSPApply2Operator operator) {
+        this.setScalar(operator, this.evaluator.apply(
+                operator.getFunction().to(DBSPClosureExpression.class),
+                this.getScalar(operator.inputs.get(0)), this.getScalar(operator.inputs.get(1))));
+    }
+
+    @Override
+    public void postorder(DBSPControlledFilterOperator operator) {
+        DBSPClosureExpression closure = operator.getFunction().to(DBSPClosureExpression.class);
+        Object control = this.getScalar(operator.inputs.get(1));
+        this.setValue(operator, this.getValue(operator.inputs.get(0)).filter(
+                e -> Boolean.TRUE.equals(this.evaluator.apply(closure, e, control))));
+    }
+
+    @Override
+    public void postorder(DBSPIntegrateTraceRetainKeysOperator operator) {
+        // The interpreter does not prune integrals; the output of this operator is never used
+        this.setValue(operator, this.getValue(operator.inputs.get(0)));
+    }
+
+    @Override
+    public void postorder(DBSPIntegrateTraceRetainValuesOperator operator) {
+        this.setValue(operator, this.getValue(operator.inputs.get(0)));
+    }
+
+    @Override
+    public void postorder(DBSPIncrementalSortOperator operator) {
+        throw new UnimplementedException("ORDER BY is not supported by the interpreter", operator);
+    }
+
+    @Override
+    public void postorder(DBSPWindowAggregateOperator operator) {
+        throw new UnimplementedException("Window aggregates are not supported by the interpreter", operator);
+    }
+}
@@ -0,0 +1,612 @@
+package org.dbsp.simulator.interpreter;
+
+import org.dbsp.sqlCompiler.compiler.errors.InternalCompilerError;
+import org.dbsp.sqlCompiler.compiler.errors.UnimplementedException;
+import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
+import org.dbsp.sqlCompiler.ir.expression.DBSPApplyExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBaseTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBlockExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBorrowExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCastExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCloneExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPConditionalAggregateExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPDerefExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPFieldExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPIfExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPIsNullExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPSomeExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPBoolLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPDecimalLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPDoubleLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI16Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI32Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI64Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI8Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPISizeLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPNullLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPRealLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStrLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStringLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPU32Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPU64Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPUSizeLiteral;
+import org.dbsp.sqlCompiler.ir.statement.DBSPExpressionStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeCode;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDecimal;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evaluates expressions of the DBSP IR.  Values are represented as follows:
+ * - SQL NULL (Rust None) is null, and Some(x) is represented like x;
+ * - integers of all widths and weights are Long, floating point values are Double,
+ *   decimals are BigDecimal without trailing zeros, strings are String,
+ *   and Booleans are Boolean;
+ * - tuples and raw tuples are TupleValue objects;
+ * - references are represented like the values they point to.
+ * Integer arithmetic is performed on 64 bits, so the overflows of narrower types
+ * are not detected.  Expressions that cannot be evaluated, such as calls to
+ * library functions, throw UnimplementedException.
+ */
+public class ExpressionEvaluator {
+    /** Values of the variables in scope. */
+    public static class Environment {
+        @Nullable
+        final Environment parent;
+        final Map<String, Object> values;
+
+        public Environment(@Nullable Environment parent) {
+            this.parent = parent;
+            this.values = new HashMap<>();
+        }
+
+        public void define(String variable, @Nullable Object value) {
+            this.values.put(variable, value);
+        }
+
+        @Nullable
+        public Object lookup(DBSPVariablePath variable) {
+            for (Environment env = this; env != null; env = env.parent) {
+                if (env.values.containsKey(variable.variable))
+                    return env.values.get(variable.variable);
+            }
+            throw new InternalCompilerError("Undefined variable " + variable.variable, variable);
+        }
+    }
+
+    /** Apply a closure to the specified arguments. */
+    @Nullable
+    public Object apply(DBSPClosureExpression closure, Object... arguments) {
+        return this.apply(closure, new Environment(null), arguments);
+    }
+
+    @Nullable
+    Object apply(DBSPClosureExpression closure, Environment environment, Object... arguments) {
+        if (closure.parameters.length != arguments.length)
+            throw new InternalCompilerError("Closure with " + closure.parameters.length +
+                    " parameters applied to " + arguments.length + " arguments", closure);
+        Environment local = new Environment(environment);
+        for (int i = 0; i < arguments.length; i++)
+            local.define(closure.parameters[i].name, arguments[i]);
+        return this.evaluate(closure.body, local);
+    }
+
+    /** Evaluate an expression which has no free variables. */
+    @Nullable
+    public Object evaluate(DBSPExpression expression) {
+        return this.evaluate(expression, new Environment(null));
+    }
+
+    @Nullable
+    Object evaluate(DBSPExpression expression, Environment environment) {
+        if (expression.is(DBSPLiteral.class))
+            return this.literal(expression.to(DBSPLiteral.class));
+        DBSPVariablePath variable = expression.as(DBSPVariablePath.class);
+        if (variable != null)
+            return environment.lookup(variable);
+        DBSPBaseTupleExpression tuple = expression.as(DBSPBaseTupleExpression.class);
+        if (tuple != null) {
+            if (tuple.is(DBSPTupleExpression.class) && tuple.to(DBSPTupleExpression.class).isNull)
+                return null;
+            Object[] fields = new Object[tuple.fields.length];
+            for (int i = 0; i < fields.length; i++)
+                fields[i] = this.evaluate(tuple.fields[i], environment);
+            return new TupleValue(fields);
+        }
+        DBSPFieldExpression field = expression.as(DBSPFieldExpression.class);
+        if (field != null) {
+            TupleValue value = (TupleValue) this.evaluate(field.expression, environment);
+            if (value == null)
+                return null;
+            return value.get(field.fieldNo);
+        }
+        // References, clones, and Option values are represented by the values themselves
+        DBSPDerefExpression deref = expression.as(DBSPDerefExpression.class);
+        if (deref != null)
+            return this.evaluate(deref.expression, environment);
+        DBSPBorrowExpression borrow = expression.as(DBSPBorrowExpression.class);
+        if (borrow != null)
+            return this.evaluate(borrow.expression, environment);
+        DBSPCloneExpression clone = expression.as(DBSPCloneExpression.class);
+        if (clone != null)
+            return this.evaluate(clone.expression, environment);
+        DBSPSomeExpression some = expression.as(DBSPSomeExpression.class);
+        if (some != null)
+            return this.evaluate(some.expression, environment);
+        DBSPIsNullExpression isNull = expression.as(DBSPIsNullExpression.class);
+        if (isNull != null)
+            return this.evaluate(isNull.expression, environment) == null;
+        DBSPCastExpression cast = expression.as(DBSPCastExpression.class);
+        if (cast != null)
+            return this.cast(this.evaluate(cast.source, environment), cast.getType(), cast);
+        DBSPUnaryExpression unary = expression.as(DBSPUnaryExpression.class);
+        if (unary != null)
+            return this.unary(unary.operation, this.evaluate(unary.source, environment), unary);
+        DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+        if (binary != null)
+            return this.binary(binary.operation,
+                    this.evaluate(binary.left, environment),
+                    this.evaluate(binary.right, environment), binary);
+        DBSPConditionalAggregateExpression conditional = expression.as(DBSPConditionalAggregateExpression.class);
+        if (conditional != null) {
+            Object left = this.evaluate(conditional.left, environment);
+            if (conditional.condition != null &&
+                    !Boolean.TRUE.equals(this.evaluate(conditional.condition, environment)))
+                return left;
+            return this.binary(conditional.opcode, left,
+                    this.evaluate(conditional.right, environment), conditional);
+        }
+        DBSPIfExpression ifExpression = expression.as(DBSPIfExpression.class);
+        if (ifExpression != null) {
+            if (Boolean.TRUE.equals(this.evaluate(ifExpression.condition, environment)))
+                return this.evaluate(ifExpression.positive, environment);
+            return this.evaluate(ifExpression.negative, environment);
+        }
+        DBSPBlockExpression block = expression.as(DBSPBlockExpression.class);
+        if (block != null) {
+            Environment local = new Environment(environment);
+            for (DBSPStatement statement: block.contents) {
+                DBSPLetStatement let = statement.as(DBSPLetStatement.class);
+                if (let != null && let.initializer != null && !let.mutable) {
+                    local.define(let.variable, this.evaluate(let.initializer, local));
+                    continue;
+                }
+                DBSPExpressionStatement stat = statement.as(DBSPExpressionStatement.class);
+                if (stat == null)
+                    throw new UnimplementedException("Statement not supported by the interpreter", statement);
+                this.evaluate(stat.expression, local);
+            }
+            if (block.lastExpression == null)
+                return null;
+            return this.evaluate(block.lastExpression, local);
+        }
+        DBSPApplyExpression apply = expression.as(DBSPApplyExpression.class);
+        if (apply != null) {
+            DBSPClosureExpression closure = apply.function.as(DBSPClosureExpression.class);
+            if (closure != null) {
+                Object[] arguments = new Object[apply.arguments.length];
+                for (int i = 0; i < arguments.length; i++)
+                    arguments[i] = this.evaluate(apply.arguments[i], environment);
+                return this.apply(closure, environment, arguments);
+            }
+        }
+        throw new UnimplementedException("Expression not supported by the interpreter", expression);
+    }
+
+    @Nullable
+    Object literal(DBSPLiteral literal) {
+        if (literal.isNull || literal.is(DBSPNullLiteral.class))
+            return null;
+        if (literal.is(DBSPBoolLiteral.class))
+            return literal.to(DBSPBoolLiteral.class).value;
+        if (literal.is(DBSPI8Literal.class))
+            return literal.to(DBSPI8Literal.class).value.longValue();
+        if (literal.is(DBSPI16Literal.class))
+            return literal.to(DBSPI16Literal.class).value.longValue();
+        if (literal.is(DBSPI32Literal.class))
+            return literal.to(DBSPI32Literal.class).value.longValue();
+        if (literal.is(DBSPI64Literal.class))
+            return literal.to(DBSPI64Literal.class).value;
+        if (literal.is(DBSPU32Literal.class))
+            return literal.to(DBSPU32Literal.class).value.longValue();
+        if (literal.is(DBSPU64Literal.class))
+            return literal.to(DBSPU64Literal.class).value;
+        if (literal.is(DBSPISizeLiteral.class))
+            return literal.to(DBSPISizeLiteral.class).value;
+        if (literal.is(DBSPUSizeLiteral.class))
+            return literal.to(DBSPUSizeLiteral.class).value;
+        if (literal.is(DBSPDoubleLiteral.class))
+            return literal.to(DBSPDoubleLiteral.class).value;
+        if (literal.is(DBSPRealLiteral.class))
+            return literal.to(DBSPRealLiteral.class).value.doubleValue();
+        if (literal.is(DBSPDecimalLiteral.class))
+            return normalize(literal.to(DBSPDecimalLiteral.class).value);
+        if (literal.is(DBSPStringLiteral.class))
+            return literal.to(DBSPStringLiteral.class).value;
+        if (literal.is(DBSPStrLiteral.class))
+            return literal.to(DBSPStrLiteral.class).value;
+        throw new UnimplementedException("Literal not supported by the interpreter", literal);
+    }
+
+    /** Decimals are kept without trailing zeros, so that equal values are also equal as Java objects. */
+    static BigDecimal normalize(BigDecimal value) {
+        return value.stripTrailingZeros();
+    }
+
+    static BigDecimal toDecimal(Object value) {
+        if (value instanceof BigDecimal)
+            return (BigDecimal) value;
+        if (value instanceof Long)
+            return BigDecimal.valueOf((Long) value);
+        return BigDecimal.valueOf(((Number) value).doubleValue());
+    }
+
+    /** Compare two values of the same type; null is smaller than all other values,
+     * like None in Rust. */
+    static int compare(@Nullable Object left, @Nullable Object right) {
+        if (left == null)
+            return right == null ? 0 : -1;
+        if (right == null)
+            return 1;
+        if (left instanceof Long && right instanceof Long)
+            return Long.compare((Long) left, (Long) right);
+        if (left instanceof BigDecimal || right instanceof BigDecimal)
+            return toDecimal(left).compareTo(toDecimal(right));
+        if (left instanceof Number && right instanceof Number)
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        if (left instanceof String && right instanceof String)
+            return ((String) left).compareTo((String) right);
+        if (left instanceof Boolean && right instanceof Boolean)
+            return Boolean.compare((Boolean) left, (Boolean) right);
+        if (left instanceof TupleValue && right instanceof TupleValue) {
+            TupleValue l = (TupleValue) left;
+            TupleValue r = (TupleValue) right;
+            for (int i = 0; i < Math.min(l.size(), r.size()); i++) {
+                int compare = compare(l.get(i), r.get(i));
+                if (compare != 0)
+                    return compare;
+            }
+            return Integer.compare(l.size(), r.size());
+        }
+        throw new InternalCompilerError("Cannot compare " + left + " and " + right);
+    }
+
+    @Nullable
+    Object unary(DBSPOpcode opcode, @Nullable Object value, DBSPExpression expression) {
+        switch (opcode) {
+            case WRAP_BOOL:
+            case IS_TRUE:
+                return Boolean.TRUE.equals(value);
+            case IS_FALSE:
+                return Boolean.FALSE.equals(value);
+            case IS_NOT_TRUE:
+                return !Boolean.TRUE.equals(value);
+            case IS_NOT_FALSE:
+                return !Boolean.FALSE.equals(value);
+            case INDICATOR:
+                return value == null ? 0L : 1L;
+            default:
+                break;
+        }
+        if (value == null)
+            return null;
+        switch (opcode) {
+            case NOT:
+                return !(Boolean) value;
+            case UNARY_PLUS:
+                return value;
+            case NEG:
+                if (value instanceof Long)
+                    return Math.negateExact((Long) value);
+                if (value instanceof Double)
+                    return -(Double) value;
+                if (value instanceof BigDecimal)
+                    return ((BigDecimal) value).negate();
+                break;
+            default:
+                break;
+        }
+        throw new UnimplementedException("Operation " + opcode + " not supported by the interpreter", expression);
+    }
+
+    @Nullable
+    Object binary(DBSPOpcode opcode, @Nullable Object left, @Nullable Object right, DBSPExpression expression) {
+        switch (opcode) {
+            case AND:
+                if (Boolean.FALSE.equals(left) || Boolean.FALSE.equals(right))
+                    return false;
+                if (left == null || right == null)
+                    return null;
+                return true;
+            case OR:
+                if (Boolean.TRUE.equals(left) || Boolean.TRUE.equals(right))
+                    return true;
+                if (left == null || right == null)
+                    return null;
+                return false;
+            case IS_DISTINCT:
+                return compare(left, right) != 0;
+            case IS_NOT_DISTINCT:
+                return compare(left, right) == 0;
+            case AGG_GT:
+            case AGG_LT:
+                // NULL is larger than all other values
+                if (left == null)
+                    return right == null;
+                if (right == null)
+                    return true;
+                int compare = compare(left, right);
+                return opcode == DBSPOpcode.AGG_GT ? compare > 0 : compare < 0;
+            case AGG_ADD:
+            case AGG_MAX:
+            case AGG_MIN:
+            case AGG_AND:
+            case AGG_OR:
+            case AGG_XOR:
+                // Aggregates ignore NULL values
+                if (left == null)
+                    return right;
+                if (right == null)
+                    return left;
+                break;
+            default:
+                if (left == null || right == null)
+                    return null;
+                break;
+        }
+        switch (opcode) {
+            case EQ:
+                return compare(left, right) == 0;
+            case NEQ:
+                return compare(left, right) != 0;
+            case LT:
+                return compare(left, right) < 0;
+            case GT:
+                return compare(left, right) > 0;
+            case LTE:
+                return compare(left, right) <= 0;
+            case GTE:
+                return compare(left, right) >= 0;
+            case MAX:
+            case AGG_MAX:
+                return compare(left, right) >= 0 ? left : right;
+            case MIN:
+            case AGG_MIN:
+                return compare(left, right) <= 0 ? left : right;
+            case CONCAT:
+                return left.toString() + right;
+            case BW_AND:
+            case AGG_AND:
+                if (left instanceof Boolean)
+                    return (Boolean) left && (Boolean) right;
+                return (Long) left & (Long) right;
+            case BW_OR:
+            case AGG_OR:
+                if (left instanceof Boolean)
+                    return (Boolean) left || (Boolean) right;
+                return (Long) left | (Long) right;
+            case XOR:
+            case AGG_XOR:
+                if (left instanceof Boolean)
+                    return (Boolean) left ^ (Boolean) right;
+                return (Long) left ^ (Long) right;
+            case ADD:
+            case AGG_ADD:
+            case SUB:
+            case MUL:
+            case MUL_WEIGHT:
+            case DIV:
+            case DIV_NULL:
+            case MOD:
+                return this.arithmetic(opcode, (Number) left, (Number) right, expression);
+            default:
+                break;
+        }
+        throw new UnimplementedException("Operation " + opcode + " not supported by the interpreter", expression);
+    }
+
+    @Nullable
+    Object arithmetic(DBSPOpcode opcode, Number left, Number right, DBSPExpression expression) {
+        if (left instanceof Long && right instanceof Long) {
+            long l = left.longValue();
+            long r = right.longValue();
+            switch (opcode) {
+                case ADD:
+                case AGG_ADD:
+                    return Math.addExact(l, r);
+                case SUB:
+                    return Math.subtractExact(l, r);
+                case MUL:
+                case MUL_WEIGHT:
+                    return Math.multiplyExact(l, r);
+                case DIV:
+                case DIV_NULL:
+                    if (r == 0 && opcode == DBSPOpcode.DIV_NULL)
+                        return null;
+                    return l / r;
+                case MOD:
+                    return l % r;
+                default:
+                    break;
+            }
+        } else if (left instanceof BigDecimal || right instanceof BigDecimal) {
+            BigDecimal l = toDecimal(left);
+            BigDecimal r = toDecimal(right);
+            switch (opcode) {
+                case ADD:
+                case AGG_ADD:
+                    return normalize(l.add(r));
+                case SUB:
+                    return normalize(l.subtract(r));
+                case MUL:
+                case MUL_WEIGHT:
+                    return normalize(l.multiply(r));
+                case DIV:
+                case DIV_NULL:
+                    if (r.signum() == 0 && opcode == DBSPOpcode.DIV_NULL)
+                        return null;
+                    return normalize(l.divide(r, MathContext.DECIMAL128));
+                case MOD:
+                    return normalize(l.remainder(r));
+                default:
+                    break;
+            }
+        } else {
+            double l = left.doubleValue();
+            double r = right.doubleValue();
+            switch (opcode) {
+                case ADD:
+                case AGG_ADD:
+                    return l + r;
+                case SUB:
+                    return l - r;
+                case MUL:
+                case MUL_WEIGHT:
+                    return l * r;
+                case DIV:
+                case DIV_NULL:
+                    if (r == 0 && opcode == DBSPOpcode.DIV_NULL)
+                        return null;
+                    return l / r;
+                case MOD:
+                    return l % r;
+                default:
+                    break;
+            }
+        }
+        throw new UnimplementedException("Operation " + opcode + " not supported by the interpreter", expression);
+    }
+
+    @Nullable
+    Object cast(@Nullable Object value, DBSPType type, DBSPExpression expression) {
+        if (value == null) {
+            if (!type.mayBeNull)
+                throw new InternalCompilerError("Cast of NULL to non-nullable type " + type, expression);
+            return null;
+        }
+        switch (type.code) {
+            case BOOL:
+                if (value instanceof Boolean)
+                    return value;
+                if (value instanceof String)
+                    return Boolean.parseBoolean(((String) value).trim());
+                if (value instanceof Number)
+                    return compare(value, 0L) != 0;
+                break;
+            case INT8:
+            case INT16:
+            case INT32:
+            case INT64:
+            case ISIZE:
+            case UINT16:
+            case UINT32:
+            case UINT64:
+            case USIZE:
+            case WEIGHT:
+                if (value instanceof Boolean)
+                    return (Boolean) value ? 1L : 0L;
+                if (value instanceof String)
+                    return Long.parseLong(((String) value).trim());
+                if (value instanceof Number)
+                    // Truncates fractional values
+                    return ((Number) value).longValue();
+                break;
+            case DOUBLE:
+                if (value instanceof String)
+                    return Double.parseDouble(((String) value).trim());
+                if (value instanceof Number)
+                    return ((Number) value).doubleValue();
+                break;
+            case REAL:
+                if (value instanceof String)
+                    return (double) Float.parseFloat(((String) value).trim());
+                if (value instanceof Number)
+                    return (double) ((Number) value).floatValue();
+                break;
+            case DECIMAL: {
+                int scale = type.to(DBSPTypeDecimal.class).scale;
+                BigDecimal decimal;
+                if (value instanceof String)
+                    decimal = new BigDecimal(((String) value).trim());
+                else if (value instanceof Number)
+                    decimal = toDecimal(value);
+                else
+                    break;
+                return normalize(decimal.setScale(scale, RoundingMode.HALF_UP));
+            }
+            case STRING:
+            case STR:
+                if (value instanceof TupleValue)
+                    break;
+                return value.toString();
+            default:
+                break;
+        }
+        throw new UnimplementedException("Cast to " + type + " not supported by the interpreter", expression);
+    }
+
+    /** Convert a value produced by the interpreter into a literal with the specified type. */
+    public DBSPExpression toLiteral(@Nullable Object value, DBSPType type) {
+        CalciteObject node = CalciteObject.EMPTY;
+        if (value == null) {
+            if (type.is(DBSPTypeTuple.class))
+                return new DBSPTupleExpression(type.to(DBSPTypeTuple.class));
+            return DBSPLiteral.none(type);
+        }
+        switch (type.code) {
+            case BOOL:
+                return new DBSPBoolLiteral(node, type, (Boolean) value);
+            case INT8:
+                return new DBSPI8Literal(node, type, ((Long) value).byteValue());
+            case INT16:
+                return new DBSPI16Literal(node, type, ((Long) value).shortValue());
+            case INT32:
+                return new DBSPI32Literal(node, type, Math.toIntExact((Long) value));
+            case INT64:
+                return new DBSPI64Literal(node, type, (Long) value);
+            case DOUBLE:
+                return new DBSPDoubleLiteral(node, type, (Double) value, false);
+            case REAL:
+                return new DBSPRealLiteral(node, type, ((Double) value).floatValue(), false);
+            case DECIMAL:
+                return new DBSPDecimalLiteral(node, type, ((BigDecimal) value)
+                        .setScale(type.to(DBSPTypeDecimal.class).scale, RoundingMode.HALF_UP));
+            case STRING:
+                return new DBSPStringLiteral(node, type, (String) value, StandardCharsets.UTF_8);
+            case TUPLE:
+            case RAW_TUPLE: {
+                DBSPTypeTupleBase tupleType = type.to(DBSPTypeTupleBase.class);
+                TupleValue tuple = (TupleValue) value;
+                DBSPExpression[] fields = new DBSPExpression[tupleType.size()];
+                for (int i = 0; i < fields.length; i++)
+                    fields[i] = this.toLiteral(tuple.get(i), tupleType.tupFields[i]);
+                if (type.code == DBSPTypeCode.RAW_TUPLE)
+                    return new DBSPRawTupleExpression(fields);
+                return new DBSPTupleExpression(node, type.mayBeNull, fields);
+            }
+            default:
+                break;
+        }
+        throw new UnimplementedException("Values of type " + type + " not supported by the interpreter", type);
+    }
+}
@@ -0,0 +1,50 @@
+package org.dbsp.simulator.interpreter;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/** The value of a tuple or of a raw tuple; fields may be null. */
+public class TupleValue {
+    private final Object[] fields;
+
+    public TupleValue(Object... fields) {
+        this.fields = fields;
+    }
+
+    public int size() {
+        return this.fields.length;
+    }
+
+    @Nullable
+    public Object get(int index) {
+        return this.fields[index];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TupleValue that = (TupleValue) o;
+        return Arrays.equals(this.fields, that.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.fields);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        boolean first = true;
+        builder.append("(");
+        for (Object field: this.fields) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(field == null ? "NULL" : field.toString());
+        }
+        builder.append(")");
+        return builder.toString();
+    }
+}
@@ -218,7 +218,11 @@ public class CompilerMain {
         return main.run();
     }
 
-    public static void main(String[] argv) throws SQLException {
+    public static void main(String[] argv) throws SQLException, IOException {
+        if (argv.length == 1 && argv[0].equals("--server")) {
+            CompilerServer.main(argv);
+            return;
+        }
         CompilerMessages messages = execute(argv);
         messages.show(System.err);
         System.exit(messages.exitCode);
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.compiler.CompilerOptions;
+import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.errors.SourcePositionRange;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.ViewPlanCache;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-running compiler which reads compilation requests from an input stream
+ * and writes the results to an output stream, one JSON object per line.
+ * This avoids paying the JVM startup and the Calcite initialization for each program.
+ * A request has the shape
+ * {"id": any, "program": "SQL statements", "options": ["-i", "-O", "2", ...]}
+ * where "id" is optional and is copied to the response, and the "options" are
+ * command-line options of the compiler.  Options which name files
+ * (output, images, schema, UDFs) and logging options are ignored.
+ * The response has the shape
+ * {"id": any, "exitCode": 0, "messages": [...], "schema": {...}, "rust": "code"},
+ * where "messages" has the format produced by the -je option;
+ * "schema" and "rust" are missing if compilation fails.
+ * The optimized plans of views are cached across requests, so when a program
+ * is edited only the views whose definition or dependencies changed are
+ * optimized again.
+ * The server stops at the end of the input.
+ */
+public class CompilerServer {
+    /** Name used for the program in error messages. */
+    static final String PROGRAM_NAME = "program.sql";
+
+    final ObjectMapper mapper;
+    final ViewPlanCache planCache;
+
+    public CompilerServer() {
+        this.mapper = new ObjectMapper();
+        this.planCache = new ViewPlanCache();
+    }
+
+    /** Parse the options of a request; on failure the problem is appended to 'error'. */
+    static CompilerOptions parseOptions(List<String> args, StringBuilder error) {
+        CompilerOptions options = new CompilerOptions();
+        // The main parameter is required, but the program is part of the request
+        List<String> argv = new ArrayList<>(args);
+        argv.add(PROGRAM_NAME);
+        JCommander commander = JCommander.newBuilder()
+                .addObject(options)
+                .build();
+        try {
+            commander.parse(argv.toArray(new String[0]));
+        } catch (ParameterException ex) {
+            error.append(ex.getMessage());
+        }
+        return options;
+    }
+
+    /** Compile the program in a request and produce the response. */
+    public ObjectNode compile(JsonNode request) {
+        ObjectNode response = this.mapper.createObjectNode();
+        if (request.has("id"))
+            response.set("id", request.get("id"));
+        List<String> args = new ArrayList<>();
+        JsonNode requestOptions = request.get("options");
+        if (requestOptions != null) {
+            for (JsonNode option: requestOptions)
+                args.add(option.asText());
+        }
+        StringBuilder error = new StringBuilder();
+        CompilerOptions options = parseOptions(args, error);
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.frontend.setPlanCache(this.planCache);
+        if (!error.isEmpty()) {
+            compiler.reportError(SourcePositionRange.INVALID, "Illegal option", error.toString());
+            return this.finish(compiler, response);
+        }
+        JsonNode program = request.get("program");
+        if (program == null || !program.isTextual()) {
+            compiler.reportError(SourcePositionRange.INVALID, "Invalid request",
+                    "Request does not contain a 'program' string");
+            return this.finish(compiler, response);
+        }
+
+        try {
+            InputStream input = new ByteArrayInputStream(program.asText().getBytes(StandardCharsets.UTF_8));
+            compiler.setEntireInput(null, input);
+            compiler.compileInput();
+            if (compiler.hasErrors())
+                return this.finish(compiler, response);
+            response.set("schema", compiler.metadata.asJson());
+
+            compiler.optimize();
+            DBSPCircuit dbsp = compiler.getFinalCircuit(options.ioOptions.functionName);
+            ByteArrayOutputStream rust = new ByteArrayOutputStream();
+            PrintStream stream = new PrintStream(rust, true, StandardCharsets.UTF_8);
+            RustFileWriter writer = new RustFileWriter(stream);
+            writer.add(dbsp);
+            writer.write(compiler);
+            stream.close();
+            if (!compiler.hasErrors())
+                response.put("rust", rust.toString(StandardCharsets.UTF_8));
+        } catch (Throwable ex) {
+            // Report the problem to the client and continue serving requests
+            compiler.messages.reportError(ex);
+        }
+        return this.finish(compiler, response);
+    }
+
+    ObjectNode finish(DBSPCompiler compiler, ObjectNode response) {
+        if (compiler.hasErrors())
+            response.remove(List.of("schema", "rust"));
+        response.put("exitCode", compiler.messages.exitCode);
+        response.set("messages", compiler.messages.toJson());
+        return response;
+    }
+
+    /** Serve the requests received on 'input' until the end of the input. */
+    public void serve(InputStream input, PrintStream output) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank())
+                continue;
+            ObjectNode response;
+            try {
+                JsonNode request = this.mapper.readTree(line);
+                response = this.compile(request);
+            } catch (JsonProcessingException ex) {
+                DBSPCompiler compiler = new DBSPCompiler(new CompilerOptions());
+                compiler.reportError(SourcePositionRange.INVALID, "Invalid request", ex.getOriginalMessage());
+                response = this.finish(compiler, this.mapper.createObjectNode());
+            }
+            output.println(this.mapper.writeValueAsString(response));
+            output.flush();
+        }
+    }
+
+    public static void main(String[] argv) throws IOException {
+        new CompilerServer().serve(System.in, System.out);
+    }
+}
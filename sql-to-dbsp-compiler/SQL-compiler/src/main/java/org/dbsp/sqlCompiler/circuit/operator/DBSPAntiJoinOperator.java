@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.errors.InternalCompilerError;
+import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Keeps the elements of the left input whose key does not appear in the right input.
+ * Both inputs are IndexedZSets with the same key type; the output has the type of
+ * the left input.  The weights of the right input only matter if they are positive:
+ * the operator maintains the distinct keys of the right input, so that the elements
+ * of the left input are emitted and retracted as keys of the right input disappear
+ * and appear.
+ * This operator is incremental only; for a non-incremental version it
+ * should be sandwiched between a D-I.
+ */
+public class DBSPAntiJoinOperator extends DBSPOperator {
+    public DBSPAntiJoinOperator(CalciteObject node, DBSPOperator left, DBSPOperator right) {
+        super(node, "antijoin", null, left.outputType, left.isMultiset);
+        this.addInput(left);
+        this.addInput(right);
+        DBSPType leftKey = left.getOutputIndexedZSetType().keyType;
+        DBSPType rightKey = right.getOutputIndexedZSetType().keyType;
+        if (!leftKey.sameType(rightKey))
+            throw new InternalCompilerError("Inputs do not have the same key type " + leftKey +
+                    " and " + rightKey, this);
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression unused, DBSPType outputType) {
+        return this;
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        if (force || this.inputsDiffer(newInputs))
+            return new DBSPAntiJoinOperator(
+                    this.getNode(), newInputs.get(0), newInputs.get(1));
+        return this;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/** Equivalent to the apply2 operator from DBSP
+ * which applies an arbitrary function to the current values of two streams.
+ * The inputs and outputs do not have to be Z-sets or indexed Z-sets. */
+public class DBSPApply2Operator extends DBSPOperator {
+    public DBSPApply2Operator(CalciteObject node, DBSPClosureExpression function,
+                              DBSPType outputType, DBSPOperator left, DBSPOperator right) {
+        super(node, "apply2", function, outputType, false);
+        this.addInput(left);
+        this.addInput(right);
+        assert function.parameters.length == 2: "Expected 2 parameters for function " + function;
+        DBSPType paramType = function.parameters[0].getType().deref();
+        assert left.outputType.sameType(paramType):
+                "Parameter type " + paramType + " does not match input type " + left.outputType;
+        paramType = function.parameters[1].getType().deref();
+        assert right.outputType.sameType(paramType):
+                "Parameter type " + paramType + " does not match input type " + right.outputType;
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
+        return new DBSPApply2Operator(
+                this.getNode(), Objects.requireNonNull(expression).to(DBSPClosureExpression.class),
+                outputType, this.inputs.get(0), this.inputs.get(1));
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        assert newInputs.size() == 2: "Expected 2 inputs " + newInputs;
+        if (force || this.inputsDiffer(newInputs)) {
+            return new DBSPApply2Operator(
+                    this.getNode(), this.getFunction().to(DBSPClosureExpression.class),
+                    this.getType(), newInputs.get(0), newInputs.get(1));
+        }
+        return this;
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+}
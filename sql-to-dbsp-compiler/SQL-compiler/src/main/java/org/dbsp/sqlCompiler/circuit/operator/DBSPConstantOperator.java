@@ -34,10 +34,20 @@ import java.util.List;
 import java.util.Objects;
 
 public class DBSPConstantOperator extends DBSPOperator {
-    public DBSPConstantOperator(CalciteObject node, DBSPExpression value, boolean isMultiset) {
+    /** If true the operator produces the value only in the first step, and
+     * empty collections afterwards: the output is the derivative of the
+     * output of the non-incremental operator. */
+    public final boolean incremental;
+
+    public DBSPConstantOperator(CalciteObject node, DBSPExpression value, boolean incremental, boolean isMultiset) {
         // Notice that we use the 'this.function' field to represent
         // the constant value.  Constants are not ClosureExpressions.
         super(node, "", value, value.getType(), isMultiset);
+        this.incremental = incremental;
+    }
+
+    public DBSPConstantOperator(CalciteObject node, DBSPExpression value, boolean isMultiset) {
+        this(node, value, false, isMultiset);
     }
 
     @Override
@@ -51,13 +61,14 @@ public class DBSPConstantOperator extends DBSPOperator {
 
     @Override
     public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
-        return new DBSPConstantOperator(this.getNode(), Objects.requireNonNull(expression), this.isMultiset);
+        return new DBSPConstantOperator(this.getNode(), Objects.requireNonNull(expression),
+                this.incremental, this.isMultiset);
     }
 
     @Override
     public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
         if (force || this.inputsDiffer(newInputs))
-            return new DBSPConstantOperator(this.getNode(), this.getFunction(), this.isMultiset);
+            return new DBSPConstantOperator(this.getNode(), this.getFunction(), this.incremental, this.isMultiset);
         return this;
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.errors.InternalCompilerError;
+import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.frontend.TypeCompiler;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPComparatorExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeIndexedZSet;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeVec;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Implements a global ORDER BY.  The input is an IndexedZSet with an empty key,
+ * and the output is a ZSet containing a single vector with all the input values,
+ * sorted using the comparator.  The operator keeps the sorted vector as its state,
+ * and applies each input change by inserting or removing values at their position,
+ * instead of sorting the whole collection on every step.
+ * This operator is incremental only; for a non-incremental version it
+ * should be sandwiched between a D-I.
+ */
+public class DBSPIncrementalSortOperator extends DBSPUnaryOperator {
+    static DBSPType outputType(DBSPTypeIndexedZSet sourceType) {
+        return TypeCompiler.makeZSet(new DBSPTypeVec(sourceType.elementType, false));
+    }
+
+    /**
+     * @param node        CalciteObject which produced this operator.
+     * @param comparator  A ComparatorExpression used to sort the values.
+     * @param source      Input operator.
+     */
+    public DBSPIncrementalSortOperator(CalciteObject node, DBSPExpression comparator, DBSPOperator source) {
+        super(node, "sorted_vec_update", comparator,
+                outputType(source.getOutputIndexedZSetType()), false, source);
+        if (source.getOutputIndexedZSetType().keyType.to(DBSPTypeTupleBase.class).size() != 0)
+            throw new InternalCompilerError("Expected an empty key", source.outputType);
+        if (!comparator.is(DBSPComparatorExpression.class))
+            throw new InternalCompilerError("Expected a comparator expression", comparator);
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        if (force || this.inputsDiffer(newInputs))
+            return new DBSPIncrementalSortOperator(this.getNode(), this.getFunction(), newInputs.get(0));
+        return this;
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
+        return new DBSPIncrementalSortOperator(this.getNode(),
+                Objects.requireNonNull(expression), this.input());
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.circuit.operator;
+
+import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.monotone.IMaybeMonotoneType;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.monotone.PartiallyMonotoneTuple;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/** Prunes the integral of an IndexedZSet, keeping only the values that compare
+ * greater or equal to the bound produced by the control input.
+ * This is the counterpart of the DBSPIntegrateTraceRetainKeysOperator
+ * for collections where only the values are monotone. */
+public class DBSPIntegrateTraceRetainValuesOperator extends DBSPOperator {
+    public DBSPIntegrateTraceRetainValuesOperator(
+            CalciteObject node, DBSPExpression expression,
+            DBSPOperator data, DBSPOperator control) {
+        super(node, "integrate_trace_retain_values", expression, data.getType(), data.isMultiset);
+        this.addInput(data);
+        this.addInput(control);
+    }
+
+    /**
+     * @param data            Indexed collection whose integral is pruned.
+     * @param dataProjection  Monotone projection of the data; the value must be monotone.
+     * @param control         Operator that produces the bound for the monotone projection. */
+    public static DBSPIntegrateTraceRetainValuesOperator create(
+            CalciteObject node, DBSPOperator data, IMaybeMonotoneType dataProjection, DBSPOperator control) {
+        DBSPType controlType = control.getType();
+        DBSPType leftSliceType = Objects.requireNonNull(dataProjection.getProjectedType());
+        assert leftSliceType.sameType(controlType):
+                "Projection type does not match control type " + leftSliceType + "/" + controlType;
+
+        PartiallyMonotoneTuple tuple = dataProjection.to(PartiallyMonotoneTuple.class);
+        DBSPType valueType = data.getOutputIndexedZSetType().elementType;
+        DBSPVariablePath dataArg = new DBSPVariablePath("d", valueType);
+        DBSPParameter param = new DBSPParameter(dataArg.variable, dataArg.getType().ref());
+        DBSPExpression project = tuple.getField(1).projectExpression(dataArg);
+        DBSPVariablePath controlArg = new DBSPVariablePath("c", controlType.ref());
+        // The control only contains the monotone fields of the projection
+        DBSPExpression compare = DBSPControlledFilterOperator.generateTupleCompare(
+                project, controlArg.deref().field(tuple.compressedIndex(1)));
+        DBSPExpression closure = compare.closure(param, controlArg.asParameter());
+        return new DBSPIntegrateTraceRetainValuesOperator(node, closure, data, control);
+    }
+
+    @Override
+    public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
+        return new DBSPIntegrateTraceRetainValuesOperator(
+                this.getNode(), Objects.requireNonNull(expression),
+                this.inputs.get(0), this.inputs.get(1));
+    }
+
+    @Override
+    public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        assert newInputs.size() == 2: "Expected 2 inputs, got " + newInputs.size();
+        if (force || this.inputsDiffer(newInputs))
+            return new DBSPIntegrateTraceRetainValuesOperator(
+                    this.getNode(), this.getFunction(),
+                    newInputs.get(0), newInputs.get(1));
+        return this;
+    }
+
+    @Override
+    public void accept(CircuitVisitor visitor) {
+        visitor.push(this);
+        VisitDecision decision = visitor.preorder(this);
+        if (!decision.stop())
+            visitor.postorder(this);
+        visitor.pop(this);
+    }
+}
@@ -40,6 +40,10 @@ import java.util.List;
  * map_index.
  * This operator only operates correctly on deltas.  To operate on collections it
  * must differentiate its input, and integrate its output.
+ * The operator may have an optional second input, a waterline: a lower bound
+ * for the values of the ORDER BY column of the input.  When the waterline is present
+ * the operator is implemented using partitioned_rolling_aggregate_with_waterline,
+ * which discards the input rows that are no longer part of any window.
  */
 public class DBSPWindowAggregateOperator extends DBSPAggregateOperatorBase {
     public final DBSPExpression window;
@@ -49,32 +53,67 @@ public class DBSPWindowAggregateOperator extends DBSPAggregateOperatorBase {
             @Nullable DBSPExpression function, @Nullable DBSPAggregate aggregate,
             DBSPExpression window,
             DBSPTypeIndexedZSet outputType,
-            DBSPOperator input) {
+            DBSPOperator input, @Nullable DBSPOperator waterline) {
         super(node, "window_aggregate", outputType, function, aggregate, true, input, false);
         this.window = window;
+        if (waterline != null)
+            this.addInput(waterline);
         // Expect a tuple with 2 fields
         DBSPTypeTuple partAndTime = outputType.keyType.to(DBSPTypeTuple.class);
         if (partAndTime.size() != 2)
             throw new InternalCompilerError("Unexpected type for Window aggregate operator " + outputType);
     }
 
+    public DBSPWindowAggregateOperator(
+            CalciteObject node,
+            @Nullable DBSPExpression function, @Nullable DBSPAggregate aggregate,
+            DBSPExpression window,
+            DBSPTypeIndexedZSet outputType,
+            DBSPOperator input) {
+        this(node, function, aggregate, window, outputType, input, null);
+    }
+
+    /** The operator that produces the waterline of the ORDER BY column, if any. */
+    @Nullable
+    public DBSPOperator waterline() {
+        if (this.inputs.size() < 2)
+            return null;
+        return this.inputs.get(1);
+    }
+
+    /** The type of the ORDER BY column */
+    public DBSPType getOrderType() {
+        return this.getOutputIndexedZSetType().keyType.to(DBSPTypeTuple.class).getFieldType(1);
+    }
+
     @Override
     public DBSPOperator withFunction(@Nullable DBSPExpression expression, DBSPType outputType) {
         return new DBSPWindowAggregateOperator(
                 this.getNode(), expression, this.aggregate, this.window,
                 outputType.to(DBSPTypeIndexedZSet.class),
-                this.input());
+                this.input(), this.waterline());
     }
 
     @Override
     public DBSPOperator withInputs(List<DBSPOperator> newInputs, boolean force) {
+        assert newInputs.size() == this.inputs.size():
+                "Expected " + this.inputs.size() + " inputs, got " + newInputs.size();
         if (force || this.inputsDiffer(newInputs))
             return new DBSPWindowAggregateOperator(
                     this.getNode(), this.function, this.aggregate, this.window,
-                    this.getOutputIndexedZSetType(), newInputs.get(0));
+                    this.getOutputIndexedZSetType(), newInputs.get(0),
+                    newInputs.size() > 1 ? newInputs.get(1) : null);
         return this;
     }
 
+    /** The same operator, reading its input from 'input', and using
+     * the specified waterline for the ORDER BY column. */
+    public DBSPWindowAggregateOperator withWaterline(DBSPOperator input, DBSPOperator waterline) {
+        return new DBSPWindowAggregateOperator(
+                this.getNode(), this.function, this.aggregate, this.window,
+                this.getOutputIndexedZSetType(), input, waterline);
+    }
+
     @Override
     public void accept(CircuitVisitor visitor) {
         visitor.push(this);
@@ -70,12 +70,17 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
         @Parameter(names = "--unquotedCasing",
                 description = "How unquoted identifiers are treated.  Choices are: 'upper', 'lower', 'unchanged'")
         public String unquotedCasing = "upper";
+        @Parameter(names = "--aggregateSalt",
+                description = "Split each group of a GROUP BY into this many sub-groups which are aggregated " +
+                        "separately and then combined; useful for skewed keys.  0 disables splitting")
+        public int aggregateSalt = 0;
 
         public boolean same(Language language) {
             // Only compare fields that matter.
             return this.incrementalize == language.incrementalize &&
                     this.ignoreOrderBy == language.ignoreOrderBy &&
                     this.outputsAreSets == language.outputsAreSets &&
+                    this.aggregateSalt == language.aggregateSalt &&
                     this.lexicalRules.equals(language.lexicalRules);
         }
 
@@ -91,6 +96,7 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
                     ", lexicalRules=" + this.lexicalRules +
                     ", lenient=" + this.lenient +
                     ", unquotedCasing=" + this.unquotedCasing +
+                    ", aggregateSalt=" + this.aggregateSalt +
                     '}';
         }
 
@@ -118,6 +124,12 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
                         .append("!=")
                         .append(other.outputsAreSets)
                         .append(System.lineSeparator());
+            if (this.aggregateSalt != other.aggregateSalt)
+                result.append(", aggregateSalt=")
+                        .append(this.aggregateSalt)
+                        .append("!=")
+                        .append(other.aggregateSalt)
+                        .append(System.lineSeparator());
             if (this.lexicalRules != other.lexicalRules)
                 result.append(", lexicalRules=")
                         .append(this.lexicalRules)
@@ -170,6 +182,8 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
         public boolean emitHandles = false;
         @Parameter(names = "--jdbcSource", description = "Connection string to a database that contains table metadata")
         public String metadataSource = "";
+        @Parameter(names = "-j", description = "Number of threads used to optimize the plans of views")
+        public int threads = 1;
 
         /** Only compare fields that matter. */
         public boolean same(IO other) {
@@ -189,6 +203,7 @@ public class CompilerOptions implements IDiff<CompilerOptions> {
                     ", inputFile=" + Utilities.singleQuote(this.inputFile) +
                     ", functionName=" + Utilities.singleQuote(this.functionName) +
                     ", verbosity=" + this.verbosity +
+                    ", threads=" + this.threads +
                     '}';
         }
 
@@ -58,6 +58,7 @@ import org.dbsp.sqlCompiler.ir.type.DBSPTypeCode;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeStruct;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeUser;
 import org.dbsp.util.IWritesLogs;
+import org.dbsp.util.IdGenerators;
 import org.dbsp.util.Logger;
 
 import javax.annotation.Nullable;
@@ -86,6 +87,11 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
     public static final String UDF_FILE_NAME = "udf.rs";
 
     final GlobalTypes globalTypes = new GlobalTypes();
+    /** Allocates the ids of the nodes and the fresh names of this compilation.
+     * It is made current on the calling thread for the duration of each public
+     * entry point which creates IR nodes, so that several compilers can be used
+     * in the same JVM. */
+    final IdGenerators ids = new IdGenerators();
 
     /** Where does the compiled program come from? */
     public enum InputSource {
@@ -119,17 +125,25 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
     public @Nullable DBSPCircuit circuit;
 
     public DBSPCompiler(CompilerOptions options) {
-        this.options = options;
-        // Setting these first allows errors to be reported
-        this.messages = new CompilerMessages(this);
-        this.metadata = new ProgramMetadata();
-        this.frontend = new CalciteCompiler(options, this);
-        this.midend = new CalciteToDBSPCompiler(true, options,
-                this, this.metadata);
-        this.sources = new SourceFileContents();
-        this.circuit = null;
-        this.typeCompiler = new TypeCompiler(this);
-        this.weightVar = new DBSPTypeUser(CalciteObject.EMPTY, DBSPTypeCode.USER, "Weight", false).var("w");
+        try (IdGenerators.Scope ignored = this.ids.enter()) {
+            this.options = options;
+            // Setting these first allows errors to be reported
+            this.messages = new CompilerMessages(this);
+            this.metadata = new ProgramMetadata();
+            this.frontend = new CalciteCompiler(options, this);
+            this.midend = new CalciteToDBSPCompiler(true, options,
+                    this, this.metadata);
+            this.sources = new SourceFileContents();
+            this.circuit = null;
+            this.typeCompiler = new TypeCompiler(this);
+            this.weightVar = new DBSPTypeUser(CalciteObject.EMPTY, DBSPTypeCode.USER, "Weight", false).var("w");
+        }
+    }
+
+    /** Allocate the ids of the objects created by the current thread from this compiler
+     * until the returned scope is closed. */
+    public IdGenerators.Scope enterIdScope() {
+        return this.ids.enter();
     }
 
     public boolean hasWarnings() {
@@ -207,6 +221,12 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
     }
 
     private void compileInternal(String statements, boolean many, @Nullable String comment) {
+        try (IdGenerators.Scope ignored = this.ids.enter()) {
+            this.compileInScope(statements, many, comment);
+        }
+    }
+
+    private void compileInScope(String statements, boolean many, @Nullable String comment) {
         if (this.inputSources != InputSource.File) {
             // If we read from file we already have read the entire data.
             // Otherwise, we append the statements to the sources.
@@ -268,6 +288,8 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
             }
 
             // Compile all statements which do not define functions or types
+            boolean concurrent = this.options.ioOptions.threads > 1;
+            List<FrontEndStatement> compiled = new ArrayList<>();
             for (SqlNode node : parsed) {
                 SqlKind kind = node.getKind();
                 if (kind == SqlKind.CREATE_FUNCTION || kind == SqlKind.CREATE_TYPE)
@@ -276,8 +298,19 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
                 if (fe == null)
                     // error during compilation
                     continue;
-                this.midend.compile(fe);
+                if (concurrent)
+                    compiled.add(fe);
+                else
+                    this.midend.compile(fe);
+            }
+            if (concurrent) {
+                // Validation and conversion are sequential, since they share the catalog;
+                // the view plans are independent and can be optimized in parallel.
+                this.frontend.optimizeViews(compiled);
+                for (FrontEndStatement fe: compiled)
+                    this.midend.compile(fe);
             }
+            this.frontend.logOptimizerStatistics();
         } catch (SqlParseException e) {
             if (e.getCause() instanceof BaseCompilerException) {
                 // Exceptions we throw in parser validation code are caught
@@ -337,11 +370,13 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
     }
 
     public void optimize() {
-        if (this.circuit == null) {
-            this.circuit = this.getFinalCircuit("tmp");
+        try (IdGenerators.Scope ignored = this.ids.enter()) {
+            if (this.circuit == null) {
+                this.circuit = this.getFinalCircuit("tmp");
+            }
+            CircuitOptimizer optimizer = new CircuitOptimizer(this);
+            this.circuit = optimizer.optimize(circuit);
         }
-        CircuitOptimizer optimizer = new CircuitOptimizer(this);
-        this.circuit = optimizer.optimize(circuit);
     }
 
     public void compileStatement(String statement) {
@@ -376,13 +411,15 @@ public class DBSPCompiler implements IWritesLogs, ICompilerComponent, IErrorRepo
      * @param name  Name to use for the produced circuit.
      */
     public DBSPCircuit getFinalCircuit(String name) {
-        if (this.circuit == null) {
-            DBSPPartialCircuit circuit = this.midend.getFinalCircuit();
-            this.circuit = circuit.seal(name);
+        try (IdGenerators.Scope ignored = this.ids.enter()) {
+            if (this.circuit == null) {
+                DBSPPartialCircuit circuit = this.midend.getFinalCircuit();
+                this.circuit = circuit.seal(name);
+            }
+            DBSPCircuit result = this.circuit.rename(name);
+            this.circuit = null;
+            return result;
         }
-        DBSPCircuit result = this.circuit.rename(name);
-        this.circuit = null;
-        return result;
     }
 
     /** Get the contents of the tables as a result of all the INSERT statements compiled. */
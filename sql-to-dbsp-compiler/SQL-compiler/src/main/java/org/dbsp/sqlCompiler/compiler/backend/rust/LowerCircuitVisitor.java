@@ -20,7 +20,8 @@ import java.util.Objects;
 
 /**
  * Lowers a circuit's representation.
- * - converts DBSPAggregate into basic operations.
+ * - converts DBSPAggregate into basic operations,
+ *   or into DBSP aggregators such as Min and Max if possible.
  * - converts DBSPFlatmap into basic operations.
  */
 public class LowerCircuitVisitor extends CircuitCloneVisitor {
@@ -126,6 +127,72 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
         }
     }
 
+    /**
+     * Given an operator whose aggregate can be computed by a DBSP aggregator,
+     * generate the input of the aggregator, which projects the values aggregated.
+     * @param node       Aggregate operator.
+     * @param primitive  Implementation of the aggregate. */
+    DBSPOperator projectAggregated(DBSPAggregateOperatorBase node, DBSPAggregate.Implementation primitive) {
+        DBSPOperator input = this.mapped(node.input());
+        DBSPTypeIndexedZSet inputType = input.getOutputIndexedZSetType();
+        DBSPClosureExpression projection = Objects.requireNonNull(primitive.projection);
+        DBSPVariablePath kv = new DBSPVariablePath("kv", inputType.getKVRefType());
+        DBSPExpression value = projection.call(kv.field(1));
+        DBSPExpression project = new DBSPRawTupleExpression(
+                kv.field(0).deref().applyCloneIfNeeded(), value);
+        DBSPTypeIndexedZSet projectedType = new DBSPTypeIndexedZSet(
+                node.getNode(), inputType.keyType, projection.getResultType());
+        DBSPOperator result = new DBSPMapIndexOperator(
+                node.getNode(), project.closure(kv.asParameter()), projectedType, input);
+        this.addOperator(result);
+        return result;
+    }
+
+    /**
+     * Convert the result produced by a DBSP aggregator to the type produced
+     * by the original aggregate operator.
+     * @param node        Original aggregate operator.
+     * @param aggregator  Operator that invokes the aggregator. */
+    void convertAggregated(DBSPAggregateOperatorBase node, DBSPOperator aggregator) {
+        this.addOperator(aggregator);
+        DBSPTypeIndexedZSet outputType = node.getOutputIndexedZSetType();
+        DBSPType resultType = outputType.elementType.to(DBSPTypeTuple.class).getFieldType(0);
+        DBSPVariablePath kv = new DBSPVariablePath("kv", aggregator.getOutputIndexedZSetType().getKVRefType());
+        DBSPExpression value = kv.field(1).deref().applyCloneIfNeeded();
+        if (!value.getType().mayBeNull && resultType.mayBeNull)
+            value = value.some();
+        DBSPExpression convert = new DBSPRawTupleExpression(
+                kv.field(0).deref().applyCloneIfNeeded(),
+                new DBSPTupleExpression(value.cast(resultType)));
+        DBSPOperator result = new DBSPMapIndexOperator(
+                node.getNode(), convert.closure(kv.asParameter()), outputType, aggregator);
+        this.map(node, result);
+    }
+
+    /**
+     * The type produced by a linear aggregate before post-processing.
+     * @param node  Original aggregate operator. */
+    static DBSPTypeIndexedZSet linearType(DBSPAggregateOperatorBase node) {
+        DBSPTypeIndexedZSet outputType = node.getOutputIndexedZSetType();
+        DBSPType linearType = node.getAggregate().combineLinear().getResultType();
+        return new DBSPTypeIndexedZSet(node.getNode(), outputType.keyType, linearType);
+    }
+
+    /**
+     * Apply the post-processing of a linear aggregate to the result produced by 'linear'.
+     * @param node    Original aggregate operator.
+     * @param linear  Operator that computes the linear aggregate. */
+    void postProcessLinear(DBSPAggregateOperatorBase node, DBSPOperator linear) {
+        this.addOperator(linear);
+        DBSPClosureExpression post = node.getAggregate().getLinearPostprocessing();
+        DBSPVariablePath kv = new DBSPVariablePath("kv", linear.getOutputIndexedZSetType().getKVRefType());
+        DBSPExpression convert = new DBSPRawTupleExpression(
+                kv.field(0).deref().applyCloneIfNeeded(), post.call(kv.field(1)));
+        DBSPOperator result = new DBSPMapIndexOperator(
+                node.getNode(), convert.closure(kv.asParameter()), node.getOutputIndexedZSetType(), linear);
+        this.map(node, result);
+    }
+
     @Override
     public void postorder(DBSPStreamAggregateOperator node) {
         if (node.function != null) {
@@ -134,13 +201,24 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
             return;
         }
 
-        DBSPExpression function;
+        DBSPAggregate.Implementation primitive = node.getAggregate().getPrimitive();
+        if (primitive != null) {
+            DBSPOperator input = this.projectAggregated(node, primitive);
+            // The aggregator produces a value with the same type as its input values
+            DBSPOperator aggregator = new DBSPStreamAggregateOperator(node.getNode(), input.getOutputIndexedZSetType(),
+                    Objects.requireNonNull(primitive.aggregator), null, input, false);
+            this.convertAggregated(node, aggregator);
+            return;
+        }
+
         if (node.isLinear) {
-            function = node.getAggregate().combineLinear();
-        } else {
-            DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
-            function = impl.asFold();
+            DBSPOperator linear = new DBSPStreamAggregateOperator(node.getNode(), linearType(node),
+                    node.getAggregate().combineLinear(), null, this.mapped(node.input()), true);
+            this.postProcessLinear(node, linear);
+            return;
         }
+        DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
+        DBSPExpression function = impl.asFold();
         DBSPOperator result = new DBSPStreamAggregateOperator(node.getNode(),node.getOutputIndexedZSetType(),
                 function, null, this.mapped(node.input()), node.isLinear);
         this.map(node, result);
@@ -153,13 +231,23 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
             super.postorder(node);
             return;
         }
-        DBSPExpression function;
+        DBSPAggregate.Implementation primitive = node.getAggregate().getPrimitive();
+        if (primitive != null) {
+            DBSPOperator input = this.projectAggregated(node, primitive);
+            // The aggregator produces a value with the same type as its input values
+            DBSPOperator aggregator = new DBSPAggregateOperator(node.getNode(), input.getOutputIndexedZSetType(),
+                    Objects.requireNonNull(primitive.aggregator), null, input, false);
+            this.convertAggregated(node, aggregator);
+            return;
+        }
         if (node.isLinear) {
-            function = node.getAggregate().combineLinear();
-        } else {
-            DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
-            function = impl.asFold();
+            DBSPOperator linear = new DBSPAggregateOperator(node.getNode(), linearType(node),
+                    node.getAggregate().combineLinear(), null, this.mapped(node.input()), true);
+            this.postProcessLinear(node, linear);
+            return;
         }
+        DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
+        DBSPExpression function = impl.asFold();
         DBSPOperator result = new DBSPAggregateOperator(
                 node.getNode(), node.getOutputIndexedZSetType(),
                 function, null, this.mapped(node.input()), node.isLinear);
@@ -174,9 +262,11 @@ public class LowerCircuitVisitor extends CircuitCloneVisitor {
         }
         DBSPAggregate.Implementation impl = node.getAggregate().combine(this.errorReporter);
         DBSPExpression function = impl.asFold();
+        DBSPOperator waterline = node.waterline();
         DBSPOperator result = new DBSPWindowAggregateOperator(node.getNode(),
                 function, null, node.window,
-                node.getOutputIndexedZSetType(), this.mapped(node.input()));
+                node.getOutputIndexedZSetType(), this.mapped(node.input()),
+                waterline == null ? null : this.mapped(waterline));
         this.map(node, result);
     }
 }
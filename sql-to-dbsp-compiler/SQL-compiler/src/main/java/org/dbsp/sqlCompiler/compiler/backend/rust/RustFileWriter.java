@@ -4,8 +4,10 @@ import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.BetaReduction;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.EliminateClones;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.InnerVisitor;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitRewriter;
+import org.dbsp.sqlCompiler.compiler.visitors.outer.HoistConstants;
 import org.dbsp.sqlCompiler.ir.DBSPFunction;
 import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
 import org.dbsp.sqlCompiler.ir.IDBSPNode;
@@ -13,6 +15,7 @@ import org.dbsp.sqlCompiler.ir.type.DBSPTypeCode;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeSemigroup;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeStruct;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.util.IdGenerators;
 import org.dbsp.util.IndentStream;
 import org.dbsp.util.Linq;
 import org.dbsp.util.ProgramAndTester;
@@ -112,7 +115,9 @@ public class RustFileWriter {
                             FilterMap,
                             Fold,
                             time_series::{RelRange, RelOffset, OrdPartitionedIndexedZSet},
+                            Max,
                             MaxSemigroup,
+                            Min,
                             MinSemigroup,
                             CmpFunc,
                         },
@@ -351,12 +356,21 @@ public class RustFileWriter {
     }
 
     public void write(DBSPCompiler compiler) {
+        // The nodes created while lowering are numbered by the compiler
+        try (IdGenerators.Scope ignored = compiler.enterIdScope()) {
+            this.writeInScope(compiler);
+        }
+    }
+
+    void writeInScope(DBSPCompiler compiler) {
         // Lower the circuits
         CircuitRewriter reducer = new BetaReduction(compiler).getCircuitVisitor();
         List<IDBSPNode> lowered = new ArrayList<>();
         FindResources findResources = new FindResources(compiler);
         CircuitRewriter findCircuitResources = findResources.getCircuitVisitor();
         LowerCircuitVisitor lower = new LowerCircuitVisitor(compiler);
+        CircuitRewriter eliminateClones = new EliminateClones(compiler).circuitRewriter();
+        HoistConstants hoist = new HoistConstants(compiler);
 
         for (IDBSPNode node: this.toWrite) {
             IDBSPInnerNode inner = node.as(IDBSPInnerNode.class);
@@ -369,6 +383,10 @@ public class RustFileWriter {
                 outer = lower.apply(outer);
                 // Beta reduction is beneficial after implementing aggregates.
                 outer = reducer.apply(outer);
+                // Move values instead of cloning them where possible
+                outer = eliminateClones.apply(outer);
+                // Evaluate expensive constants only once
+                outer = hoist.apply(outer);
                 // Find the resources used to generate the correct Rust preamble
                 outer = findCircuitResources.apply(outer);
                 lowered.add(outer);
@@ -40,6 +40,7 @@ import org.dbsp.sqlCompiler.ir.statement.DBSPConstItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPExpressionStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStaticItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStructItem;
 import org.dbsp.sqlCompiler.ir.type.*;
 import org.dbsp.sqlCompiler.ir.type.primitive.*;
@@ -699,6 +700,17 @@ public class ToRustInnerVisitor extends InnerVisitor {
         return VisitDecision.STOP;
     }
 
+    @Override
+    public VisitDecision preorder(DBSPStaticItem item) {
+        this.builder.append("static ")
+                .append(item.name).append(": StaticLazy<");
+        item.type.accept(this);
+        this.builder.append("> = StaticLazy::new(|| ");
+        item.expression.accept(this);
+        this.builder.append(");");
+        return VisitDecision.STOP;
+    }
+
     @Override
     public VisitDecision preorder(DBSPExpressionStatement statement) {
         statement.expression.accept(this);
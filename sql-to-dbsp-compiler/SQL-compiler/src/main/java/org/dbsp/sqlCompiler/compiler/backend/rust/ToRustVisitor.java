@@ -29,8 +29,10 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPControlledFilterOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIncrementalSortOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
@@ -68,6 +70,7 @@ import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI64Literal;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStrLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
 import org.dbsp.sqlCompiler.ir.statement.DBSPFunctionItem;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStaticItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStructItem;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeCode;
@@ -414,6 +417,13 @@ public class ToRustVisitor extends CircuitVisitor {
                 .increase();
         if (!this.useHandles)
             this.builder.append("let mut catalog = Catalog::new();").newline();
+        // Static items are visible in the closures of all operators
+        for (DBSPDeclaration decl: circuit.declarations) {
+            if (decl.item.is(DBSPStaticItem.class)) {
+                decl.accept(this);
+                this.builder.newline();
+            }
+        }
 
         for (IDBSPNode node : circuit.getAllOperators())
             this.processNode(node);
@@ -645,6 +655,18 @@ public class ToRustVisitor extends CircuitVisitor {
 
     @Override
     public VisitDecision preorder(DBSPIntegrateTraceRetainKeysOperator operator) {
+        this.generateRetain(operator);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPIntegrateTraceRetainValuesOperator operator) {
+        this.generateRetain(operator);
+        return VisitDecision.STOP;
+    }
+
+    /** Generate code for operators that prune an integral using a bound. */
+    void generateRetain(DBSPOperator operator) {
         this.writeComments(operator)
                 .append("let ")
                 .append(operator.getOutputName());
@@ -661,7 +683,6 @@ public class ToRustVisitor extends CircuitVisitor {
                 .append(", ");
         operator.getFunction().accept(this.innerVisitor);
         this.builder.append(");");
-        return VisitDecision.STOP;
     }
 
     @Override
@@ -903,6 +924,42 @@ public class ToRustVisitor extends CircuitVisitor {
         return VisitDecision.STOP;
     }
 
+    @Override
+    public VisitDecision preorder(DBSPIncrementalSortOperator operator) {
+        /*
+        let stream: Stream<..> = {
+            let ec = ...;  // comparator
+            let mut data = Vec::new();
+            input.shard().apply_mut(move |delta| sorted_vec_update(
+                &mut data, delta, |a: &Tup<...>, b: &Tup<...>| ec.compare(a, b)))
+        };
+         */
+        DBSPType elementType = operator.input().getOutputIndexedZSetType().elementType;
+        DBSPType streamType = new DBSPTypeStream(operator.outputType);
+        this.writeComments(operator)
+                .append("let ")
+                .append(operator.getOutputName())
+                .append(": ");
+        streamType.accept(this.innerVisitor);
+        this.builder.append(" = {").increase();
+        this.builder.append("let ec = ");
+        operator.getFunction().accept(this.innerVisitor);
+        this.builder.append(";").newline()
+                .append("let mut data = Vec::new();").newline();
+        // All the values have the same key, so sharding sends them to a single worker
+        this.builder.append(operator.input().getOutputName())
+                .append(".shard().apply_mut(move |delta| ")
+                .append(operator.operation)
+                .append("(&mut data, delta, |a: &");
+        elementType.accept(this.innerVisitor);
+        this.builder.append(", b: &");
+        elementType.accept(this.innerVisitor);
+        this.builder.append("| ec.compare(a, b)))").newline()
+                .decrease()
+                .append("};");
+        return VisitDecision.STOP;
+    }
+
     @Override
     public VisitDecision preorder(DBSPLagOperator operator) {
         String structName = "Cmp" + operator.getOutputName();
@@ -947,9 +1004,28 @@ public class ToRustVisitor extends CircuitVisitor {
                 .append("let ")
                 .append(tmp)
                 .append(" = ")
-                .append(operator.input().getOutputName())
-                // FIXME: `as_partitioned_zset()` is a temporary workaround.
-                .append(".as_partitioned_zset().partitioned_rolling_aggregate(");
+                .append(operator.input().getOutputName());
+        DBSPOperator waterline = operator.waterline();
+        if (waterline == null) {
+            // FIXME: `as_partitioned_zset()` is a temporary workaround.
+            this.builder.append(".as_partitioned_zset().partitioned_rolling_aggregate(");
+        } else {
+            // The input of partitioned_rolling_aggregate_with_waterline is indexed by time,
+            // and the partition is extracted from the value.
+            DBSPType orderType = operator.getOrderType();
+            this.builder.append(".map_generic::<_, _, _, dbsp::typed_batch::TypedBatch<");
+            orderType.accept(this.innerVisitor);
+            this.builder.append(", _, dbsp::ZWeight, dbsp::typed_batch::DynOrdIndexedZSet<")
+                    .append("dbsp::dynamic::DynDataTyped<");
+            orderType.accept(this.innerVisitor);
+            this.builder.append(">, DynData>>>(|(k, v)| (v.0, Tup2::new(k.clone(), v.1.clone())))")
+                    .append(".partitioned_rolling_aggregate_with_waterline(&")
+                    .append(waterline.getOutputName())
+                    // FIXME: temporary workaround until the compiler learns about
+                    // TypedBox's
+                    .append(".apply(|bound| TypedBox::<_, dbsp::dynamic::DynDataTyped<_>>::new(*bound))")
+                    .append(", |v| (v.0.clone(), v.1.clone()), ");
+        }
         operator.getFunction().accept(this.innerVisitor);
         builder.append(", ");
         operator.window.accept(this.innerVisitor);
@@ -1048,14 +1124,30 @@ public class ToRustVisitor extends CircuitVisitor {
         builder.append("let ")
                 .append(operator.getOutputName())
                 .append(" = ")
-                .append("circuit.add_source(Generator::new(|| ");
-        this.builder.append("if Runtime::worker_index() == 0 {");
+                .append("circuit.add_source(Generator::new({")
+                .increase();
+        if (operator.incremental) {
+            // Produce the value only in the first step
+            this.builder.append("let mut first = true;")
+                    .newline()
+                    .append("move || if std::mem::take(&mut first) && Runtime::worker_index() == 0 {");
+        } else {
+            // Build the value once, and produce a copy in every step
+            this.builder.append("let mut value = None;")
+                    .newline()
+                    .append("move || value.get_or_insert_with(|| if Runtime::worker_index() == 0 {");
+        }
         operator.function.accept(this.innerVisitor);
         this.builder.append("} else {");
         DBSPZSetLiteral empty = DBSPZSetLiteral.emptyWithElementType(
                 operator.getOutputZSetElementType());
         empty.accept(this.innerVisitor);
-        this.builder.append("}));");
+        this.builder.append("}");
+        if (!operator.incremental)
+            this.builder.append(").clone()");
+        this.builder.newline()
+                .decrease()
+                .append("}));");
         return VisitDecision.STOP;
     }
 
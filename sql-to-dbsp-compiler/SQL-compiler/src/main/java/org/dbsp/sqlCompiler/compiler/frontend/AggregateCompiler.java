@@ -48,11 +48,15 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPConditionalAggregateExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPIfExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPPathExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI64Literal;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.path.DBSPPath;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeAny;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeUser;
 import org.dbsp.sqlCompiler.ir.type.IsNumericType;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeBool;
@@ -165,6 +169,71 @@ public class AggregateCompiler implements ICompilerComponent {
         return this.v.deref().field(this.filterArgument);
     }
 
+    /** The zero of a numeric type, with exactly that type. */
+    static DBSPExpression zero(DBSPType type) {
+        return type.to(IsNumericType.class).getZero().cast(type);
+    }
+
+    /** The one of a numeric type, with exactly that type. */
+    static DBSPExpression one(DBSPType type) {
+        return type.to(IsNumericType.class).getOne().cast(type);
+    }
+
+    /** If there is a filter, returns 'value' for the rows that pass the filter
+     * and 'zero' for the other ones.  Used to keep filtered aggregates linear. */
+    DBSPExpression filtered(CalciteObject node, DBSPExpression value, DBSPExpression zero) {
+        DBSPExpression filter = this.filterArgument();
+        if (filter == null)
+            return value;
+        return new DBSPIfExpression(node, ExpressionCompiler.wrapBoolIfNeeded(filter), value, zero);
+    }
+
+    /** The aggregated value of a row as a contribution to a linear sum:
+     * cast to the non-nullable 'type', with null values and filtered rows replaced by 0. */
+    DBSPExpression linearValue(CalciteObject node, DBSPType type) {
+        DBSPExpression value = this.getAggregatedValue().deepCopy();
+        if (value.getType().mayBeNull)
+            value = new DBSPIfExpression(node, value.deepCopy().is_null(),
+                    zero(value.getType().setMayBeNull(false)),
+                    value.applyCloneIfNeeded().unwrap());
+        return this.filtered(node, value.cast(type), zero(type));
+    }
+
+    /** The contribution of a row to the linear count of non-null aggregated values,
+     * with the non-nullable 'type'. */
+    DBSPExpression linearCount(CalciteObject node, DBSPType type) {
+        DBSPExpression value = this.getAggregatedValue().deepCopy();
+        DBSPExpression count = one(type);
+        if (value.getType().mayBeNull)
+            count = ExpressionCompiler.makeIndicator(node, type, value);
+        return this.filtered(node, count, zero(type));
+    }
+
+    /** Given the post-processing function of a fold whose accumulator is a tuple of
+     * nullable sums, which are None when no values have been accumulated, create
+     * the post-processing function for the corresponding linear aggregate.  The
+     * linear accumulator has the non-nullable 'linearType', and its field 'countIndex'
+     * counts the accumulated values. */
+    DBSPClosureExpression linearPostProcess(
+            CalciteObject node, DBSPTypeTuple linearType, int countIndex, DBSPClosureExpression post) {
+        DBSPVariablePath accumulator = linearType.var(this.genAccumulatorName());
+        DBSPExpression[] fields = new DBSPExpression[linearType.size()];
+        for (int i = 0; i < linearType.size(); i++)
+            fields[i] = this.nullIfEmpty(node, accumulator, countIndex, i);
+        return post.deepCopy().call(new DBSPTupleExpression(fields)).closure(accumulator.asParameter());
+    }
+
+    /** Field 'index' of a linear accumulator, or NULL if the accumulator
+     * field 'countIndex', which counts the accumulated values, is 0. */
+    DBSPExpression nullIfEmpty(CalciteObject node, DBSPVariablePath accumulator, int countIndex, int index) {
+        DBSPExpression count = accumulator.field(countIndex);
+        DBSPExpression empty = ExpressionCompiler.makeBinaryExpression(node,
+                DBSPTypeBool.create(false), DBSPOpcode.EQ, count, zero(count.getType()));
+        DBSPExpression field = accumulator.field(index).applyCloneIfNeeded();
+        return new DBSPIfExpression(node, empty,
+                DBSPLiteral.none(field.getType().setMayBeNull(true)), field.some());
+    }
+
     void processBitOp(SqlBitOpAggFunction function) {
         CalciteObject node = CalciteObject.create(function);
         DBSPExpression zero = DBSPLiteral.none(this.nullableResultType);
@@ -172,18 +241,29 @@ public class AggregateCompiler implements ICompilerComponent {
         DBSPExpression aggregatedValue = this.getAggregatedValue();
         DBSPVariablePath accumulator = this.nullableResultType.var(this.genAccumulatorName());
 
-        DBSPOpcode opcode = switch (function.getKind()) {
-            case BIT_OR -> DBSPOpcode.AGG_OR;
-            case BIT_AND -> DBSPOpcode.AGG_AND;
-            case BIT_XOR -> DBSPOpcode.AGG_XOR;
+        DBSPOpcode opcode;
+        String semigroupName = switch (function.getKind()) {
+            case BIT_OR -> {
+                opcode = DBSPOpcode.AGG_OR;
+                yield "BitOrSemigroup";
+            }
+            case BIT_AND -> {
+                opcode = DBSPOpcode.AGG_AND;
+                yield "BitAndSemigroup";
+            }
+            case BIT_XOR -> {
+                opcode = DBSPOpcode.AGG_XOR;
+                yield "BitXorSemigroup";
+            }
             default -> throw new UnimplementedException(node);
         };
 
-        // TODO: some of these are linear
+        // None of these is linear: BIT_AND and BIT_OR cannot undo a deleted
+        // value, and BIT_XOR depends on the parity of the weight, not on the weight.
         increment = this.aggregateOperation(node, opcode,
                 this.nullableResultType, accumulator, aggregatedValue, this.filterArgument());
-        DBSPType semigroup = new DBSPTypeUser(CalciteObject.EMPTY, USER, "UnimplementedSemigroup",
-                false, accumulator.getType());
+        DBSPType semigroup = new DBSPTypeUser(CalciteObject.EMPTY, USER, semigroupName,
+                false, accumulator.getType().setMayBeNull(false));
         this.setFoldingFunction(new DBSPAggregate.Implementation(
                 node, zero, this.makeRowClosure(increment, accumulator), zero, semigroup, null));
     }
@@ -204,7 +284,8 @@ public class AggregateCompiler implements ICompilerComponent {
         }
         DBSPExpression increment = new DBSPI64Literal(result).cast(this.nullableResultType);
         DBSPVariablePath accumulator = this.nullableResultType.var(this.genAccumulatorName());
-        DBSPType semigroup = new DBSPTypeUser(CalciteObject.EMPTY, USER, "UnimplementedSemigroup",
+        // All rows of a group produce the same value
+        DBSPType semigroup = new DBSPTypeUser(CalciteObject.EMPTY, USER, "ConstantSemigroup",
                 false, accumulator.getType());
         this.setFoldingFunction(new DBSPAggregate.Implementation(
                 node, zero, this.makeRowClosure(increment, accumulator), zero, semigroup, null));
@@ -230,7 +311,10 @@ public class AggregateCompiler implements ICompilerComponent {
         }
 
         @Nullable
-        DBSPClosureExpression linear = argument.closure(this.v.asParameter());
+        DBSPClosureExpression linear = this.filtered(node, argument.deepCopy(), zero.deepCopy())
+                .closure(this.v.asParameter());
+        @Nullable
+        DBSPClosureExpression linearPost = null;
         DBSPVariablePath accumulator = this.resultType.var(this.genAccumulatorName());
         if (this.isDistinct) {
             linear = null;
@@ -244,13 +328,15 @@ public class AggregateCompiler implements ICompilerComponent {
                     node, DBSPOpcode.AGG_ADD, this.resultType,
                     accumulator, weighted, this.filterArgument());
         }
-        if (this.filterArgument >= 0)
-            // no longer linear, since it returns 0 instead of nothing for an empty collection
-            linear = null;
+        if (this.filterArgument >= 0 && linear != null) {
+            // The count is 0 for a group where no rows pass the filter
+            DBSPVariablePath count = this.resultType.var(this.genAccumulatorName());
+            linearPost = count.closure(count.asParameter());
+        }
         DBSPType semigroup = new DBSPTypeUser(node, USER, "DefaultSemigroup", false, this.resultType);
         this.setFoldingFunction(new DBSPAggregate.Implementation(
-                node, zero, this.makeRowClosure(increment, accumulator),
-                zero, semigroup, linear));
+                node, zero, this.makeRowClosure(increment, accumulator), null,
+                zero, semigroup, linear, linearPost, null, null));
     }
 
     void processBasic(SqlBasicAggFunction function) {
@@ -258,9 +344,16 @@ public class AggregateCompiler implements ICompilerComponent {
         CalciteObject node = CalciteObject.create(function);
         DBSPTupleExpression tuple = Objects.requireNonNull(this.aggArgument).to(DBSPTupleExpression.class);
         assert tuple.fields.length == 2: "Expected 2 arguments for " + kind;
-        DBSPOpcode compare = switch (kind) {
-            case ARG_MAX -> DBSPOpcode.AGG_GT;
-            case ARG_MIN -> DBSPOpcode.AGG_LT;
+        DBSPOpcode compare;
+        String semigroupName = switch (kind) {
+            case ARG_MAX -> {
+                compare = DBSPOpcode.AGG_GT;
+                yield "ArgMaxSemigroup";
+            }
+            case ARG_MIN -> {
+                compare = DBSPOpcode.AGG_LT;
+                yield "ArgMinSemigroup";
+            }
             default -> throw new UnimplementedException(node);
         };
 
@@ -274,7 +367,12 @@ public class AggregateCompiler implements ICompilerComponent {
                 tuple.fields[1].applyCloneIfNeeded(),
                 accumulator.field(1).applyCloneIfNeeded());
         DBSPExpression increment = new DBSPIfExpression(node, ge, this.aggArgument, accumulator.applyCloneIfNeeded());
-        DBSPType semigroup = new DBSPTypeUser(node, USER, "UnimplementedSemigroup", false, tuple.getType());
+        DBSPType compared = tuple.fields[1].getType();
+        if (compared.mayBeNull)
+            // A null value compared is treated as a missing value
+            semigroupName = semigroupName.replace("Semigroup", "OptSemigroup");
+        DBSPType semigroup = new DBSPTypeUser(node, USER, semigroupName, false,
+                tuple.fields[0].getType(), compared.setMayBeNull(false));
         DBSPExpression postBody = accumulator.field(0).applyCloneIfNeeded();
         this.setFoldingFunction(new DBSPAggregate.Implementation(
                 node, zero,
@@ -316,11 +414,11 @@ public class AggregateCompiler implements ICompilerComponent {
         String semigroupName = switch (function.getKind()) {
             case MIN -> {
                 call = DBSPOpcode.AGG_MIN;
-                yield "MinSemigroup";
+                yield "MinOptSemigroup";
             }
             case MAX -> {
                 call = DBSPOpcode.AGG_MAX;
-                yield "MaxSemigroup";
+                yield "MaxOptSemigroup";
             }
             default -> throw new UnimplementedException(node);
         };
@@ -328,9 +426,23 @@ public class AggregateCompiler implements ICompilerComponent {
         DBSPVariablePath accumulator = this.nullableResultType.var(this.genAccumulatorName());
         DBSPExpression increment = this.aggregateOperation(
                 node, call, this.nullableResultType, accumulator, aggregatedValue, this.filterArgument());
-        DBSPType semigroup = new DBSPTypeUser(node, USER, semigroupName, false, accumulator.getType());
+        DBSPType semigroup = new DBSPTypeUser(node, USER, semigroupName, false,
+                accumulator.getType().setMayBeNull(false));
+
+        // The DBSP Min and Max aggregators return the first and last value of the sorted
+        // values of a group.  In Rust None is smaller than any other value, so this
+        // computes MAX correctly for nullable values, but not MIN.
+        @Nullable DBSPExpression aggregator = null;
+        @Nullable DBSPClosureExpression projection = null;
+        if (this.filterArgument < 0 &&
+                (call == DBSPOpcode.AGG_MAX || !aggregatedValue.getType().mayBeNull)) {
+            String name = call == DBSPOpcode.AGG_MAX ? "Max" : "Min";
+            aggregator = new DBSPPathExpression(DBSPTypeAny.getDefault(), new DBSPPath(name));
+            projection = aggregatedValue.deepCopy().applyCloneIfNeeded().closure(this.v.asParameter());
+        }
         this.setFoldingFunction(new DBSPAggregate.Implementation(
-                node, zero, this.makeRowClosure(increment, accumulator), zero, semigroup, null));
+                node, zero, this.makeRowClosure(increment, accumulator), null,
+                zero, semigroup, null, null, aggregator, projection));
     }
 
     void processSum(SqlSumAggFunction function) {
@@ -340,6 +452,10 @@ public class AggregateCompiler implements ICompilerComponent {
         DBSPExpression aggregatedValue = this.getAggregatedValue();
         DBSPVariablePath accumulator = this.nullableResultType.var(this.genAccumulatorName());
 
+        @Nullable
+        DBSPClosureExpression linear = null;
+        @Nullable
+        DBSPClosureExpression linearPost = null;
         if (this.isDistinct) {
             increment = this.aggregateOperation(
                     node, DBSPOpcode.AGG_ADD,
@@ -351,11 +467,22 @@ public class AggregateCompiler implements ICompilerComponent {
             increment = this.aggregateOperation(
                     node, DBSPOpcode.AGG_ADD, this.nullableResultType,
                     accumulator, weighted, this.filterArgument());
+            // Linear version: sum the non-null values and count them;
+            // the result is NULL if there are no such values.
+            DBSPType sumType = this.nullableResultType.setMayBeNull(false);
+            DBSPType countType = new DBSPTypeInteger(node, 64, true, false);
+            DBSPTupleExpression pair = new DBSPTupleExpression(
+                    this.linearValue(node, sumType), this.linearCount(node, countType));
+            linear = pair.closure(this.v.asParameter());
+            DBSPVariablePath sumAndCount = pair.getType().var(this.genAccumulatorName());
+            linearPost = this.nullIfEmpty(node, sumAndCount, 1, 0)
+                    .closure(sumAndCount.asParameter());
         }
         DBSPType semigroup = new DBSPTypeUser(CalciteObject.EMPTY, USER, "DefaultOptSemigroup",
                 false, accumulator.getType().setMayBeNull(false));
         this.setFoldingFunction(new DBSPAggregate.Implementation(
-                node, zero, this.makeRowClosure(increment, accumulator), zero, semigroup, null));
+                node, zero, this.makeRowClosure(increment, accumulator), null,
+                zero, semigroup, linear, linearPost, null, null));
     }
 
     void processSumZero(SqlSumEmptyIsZeroAggFunction function) {
@@ -380,16 +507,27 @@ public class AggregateCompiler implements ICompilerComponent {
                     node, DBSPOpcode.AGG_ADD, this.resultType,
                     accumulator, weighted, this.filterArgument());
         }
+        @Nullable
+        DBSPClosureExpression linearPost = null;
         String semigroupName = "DefaultSemigroup";
-        if (this.filterArgument >= 0)
-            // If we are filtering the sum is no longer linear
-            linear = null;
+        if (this.filterArgument >= 0 && linear != null) {
+            if (this.resultType.mayBeNull) {
+                linear = null;
+            } else {
+                // Rows that do not pass the filter contribute 0.
+                // The sum is 0 for a group where no rows pass the filter.
+                linear = this.linearValue(node, this.resultType).closure(this.v.asParameter());
+                DBSPVariablePath sum = this.resultType.var(this.genAccumulatorName());
+                linearPost = sum.closure(sum.asParameter());
+            }
+        }
         if (accumulator.getType().mayBeNull)
             semigroupName = "DefaultOptSemigroup";
         DBSPType semigroup = new DBSPTypeUser(node, USER, semigroupName, false,
                 accumulator.getType().setMayBeNull(false));
         this.setFoldingFunction(new DBSPAggregate.Implementation(
-                node, zero, this.makeRowClosure(increment, accumulator), zero, semigroup, linear));
+                node, zero, this.makeRowClosure(increment, accumulator), null,
+                zero, semigroup, linear, linearPost, null, null));
     }
 
     void processSingle(SqlSingleValueAggFunction function) {
@@ -470,8 +608,22 @@ public class AggregateCompiler implements ICompilerComponent {
                 intermediateResultType, intermediateResultType,
                 new DBSPTypeUser(node, USER, "DefaultOptSemigroup", false, intermediateResultTypeNonNull),
                 new DBSPTypeUser(node, USER, "DefaultOptSemigroup", false, intermediateResultTypeNonNull));
+
+        @Nullable
+        DBSPClosureExpression linear = null;
+        @Nullable
+        DBSPClosureExpression linearPost = null;
+        if (!this.isDistinct) {
+            DBSPTupleExpression linearPair = new DBSPTupleExpression(
+                    this.linearValue(node, intermediateResultTypeNonNull),
+                    this.linearCount(node, intermediateResultTypeNonNull));
+            linear = linearPair.closure(this.v.asParameter());
+            linearPost = this.linearPostProcess(
+                    node, linearPair.getType().to(DBSPTypeTuple.class), countIndex, post);
+        }
         return new DBSPAggregate.Implementation(
-                node, zero, this.makeRowClosure(increment, accumulator), post, postZero, semigroup, null);
+                node, zero, this.makeRowClosure(increment, accumulator), post, postZero, semigroup,
+                linear, linearPost, null, null);
     }
 
     DBSPAggregate.Implementation doStddev(SqlAvgAggFunction function) {
@@ -569,8 +721,27 @@ public class AggregateCompiler implements ICompilerComponent {
                 new DBSPTypeUser(node, USER, "DefaultOptSemigroup", false, intermediateResultTypeNonNull),
                 new DBSPTypeUser(node, USER, "DefaultOptSemigroup", false, intermediateResultTypeNonNull),
                 new DBSPTypeUser(node, USER, "DefaultOptSemigroup", false, intermediateResultTypeNonNull));
+
+        @Nullable
+        DBSPClosureExpression linear = null;
+        @Nullable
+        DBSPClosureExpression linearPost = null;
+        if (!this.isDistinct) {
+            DBSPExpression square = ExpressionCompiler.makeBinaryExpression(
+                    node, intermediateResultTypeNonNull, DBSPOpcode.MUL,
+                    this.linearValue(node, intermediateResultTypeNonNull),
+                    this.linearValue(node, intermediateResultTypeNonNull));
+            DBSPTupleExpression linearTriple = new DBSPTupleExpression(
+                    this.linearValue(node, intermediateResultTypeNonNull),
+                    this.linearCount(node, intermediateResultTypeNonNull),
+                    square);
+            linear = linearTriple.closure(this.v.asParameter());
+            linearPost = this.linearPostProcess(
+                    node, linearTriple.getType().to(DBSPTypeTuple.class), countIndex, post);
+        }
         return new DBSPAggregate.Implementation(
-                node, zero, this.makeRowClosure(increment, accumulator), post, postZero, semigroup, null);
+                node, zero, this.makeRowClosure(increment, accumulator), post, postZero, semigroup,
+                linear, linearPost, null, null);
     }
 
     void processAvg(SqlAvgAggFunction function) {
@@ -71,12 +71,14 @@ import org.apache.calcite.sql.ddl.SqlCreateType;
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.ImmutableBitSet;
 import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDeclaration;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFlatMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIncrementalSortOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
@@ -91,7 +93,6 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamAggregateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamDistinctOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
-import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSumOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowAggregateOperator;
 import org.dbsp.sqlCompiler.compiler.CompilerOptions;
@@ -129,7 +130,6 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPFlatmap;
 import org.dbsp.sqlCompiler.ir.expression.DBSPNoComparatorExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
 import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
-import org.dbsp.sqlCompiler.ir.expression.DBSPSortExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
@@ -157,7 +157,6 @@ import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeBool;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDate;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeInteger;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeTimestamp;
-import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeVoid;
 import org.dbsp.util.ICastable;
 import org.dbsp.util.IWritesLogs;
 import org.dbsp.util.Linq;
@@ -172,12 +171,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator.TopKNumbering.*;
-import static org.dbsp.sqlCompiler.ir.type.DBSPTypeCode.USER;
 
 /**
  * The compiler is stateful: it compiles a sequence of SQL statements
@@ -438,6 +437,125 @@ public class CalciteToDBSPCompiler extends RelVisitor
         return new DBSPTupleExpression(keys);
     }
 
+    /** Semigroups whose 'combine' has the zero of the aggregate as a neutral element. */
+    static final Set<String> SPLITTABLE_SEMIGROUPS = Set.of(
+            "DefaultSemigroup", "DefaultOptSemigroup", "MinOptSemigroup", "MaxOptSemigroup",
+            "PairSemigroup", "TripleSemigroup", "BitAndSemigroup", "BitOrSemigroup", "BitXorSemigroup",
+            "ArgMinOptSemigroup", "ArgMaxOptSemigroup");
+
+    /** True if the groups of an aggregate can be split into sub-groups whose
+     * partial results are combined using the semigroups of the aggregate. */
+    boolean canSplitGroups(List<AggregateCall> aggregateCalls, DBSPAggregate fold) {
+        if (this.options.languageOptions.aggregateSalt <= 0)
+            return false;
+        // The sub-groups are not disjoint for distinct values
+        if (Linq.any(aggregateCalls, AggregateCall::isDistinct))
+            return false;
+        for (DBSPAggregate.Implementation implementation: fold.components) {
+            DBSPTypeUser semigroup = implementation.semigroup.as(DBSPTypeUser.class);
+            if (semigroup == null || !SPLITTABLE_SEMIGROUPS.contains(semigroup.name))
+                return false;
+        }
+        return true;
+    }
+
+    /** Implement an aggregate in two phases.  The first phase aggregates sub-groups of
+     * each group, indexed by the group key and a 'salt' computed from a hash of the row.
+     * The second phase combines the partial results of the sub-groups of each group.
+     * This spreads the work for groups with many rows across workers.
+     * @param opInput       Input of the aggregate.
+     * @param localKeys     Fields of the input that form the group key.
+     * @param tuple         Type of the aggregate result.
+     * @param t             Variable that refers to an input row.
+     * @param fold          Aggregate to compute.
+     * @param aggregateType Type of the result: group key and aggregate values.
+     * @return The operator that produces the aggregate; the caller adds it to the circuit. */
+    DBSPOperator splitAggregate(CalciteObject node, DBSPOperator opInput, ImmutableBitSet localKeys,
+                                DBSPTypeTuple tuple, DBSPVariablePath t, DBSPAggregate fold,
+                                DBSPTypeIndexedZSet aggregateType) {
+        // Index by (key, salt)
+        DBSPTupleExpression localKeyExpression = this.generateKeyExpression(localKeys, t, tuple);
+        List<DBSPExpression> saltedKeyFields = Linq.list(localKeyExpression.fields);
+        DBSPType saltType = new DBSPTypeInteger(node, 32, true, false);
+        saltedKeyFields.add(new DBSPApplyExpression(node, "hash_partition", saltType,
+                t.deepCopy(), new DBSPI32Literal(this.options.languageOptions.aggregateSalt)));
+        DBSPTupleExpression saltedKey = new DBSPTupleExpression(saltedKeyFields, false);
+        DBSPClosureExpression makeKeys = new DBSPRawTupleExpression(
+                saltedKey, DBSPTupleExpression.flatten(t.deref())).closure(t.asParameter());
+        DBSPType inputRowType = t.getType().deref();
+        DBSPIndexOperator index = new DBSPIndexOperator(node, makeKeys,
+                this.makeIndexedZSet(saltedKey.getType(), inputRowType), false, opInput);
+        this.circuit.addOperator(index);
+
+        // The first phase produces the accumulators of the aggregates.
+        // For a linear aggregate the first phase is linear too, and produces the sums
+        // of the linear functions; the row count appended by combineLinear keeps
+        // the sub-groups whose sums are zero.
+        boolean linear = fold.isLinear();
+        DBSPAggregate.Implementation[] partials = Linq.map(fold.components,
+                c -> new DBSPAggregate.Implementation(c.getNode(), c.zero.deepCopy(),
+                        c.increment.deepCopy().to(DBSPClosureExpression.class), null,
+                        c.zero.deepCopy(), c.semigroup, linear ? c.linearFunction : null, null, null, null),
+                DBSPAggregate.Implementation.class);
+        DBSPAggregate partial = new DBSPAggregate(node, fold.rowVar, partials, false);
+        DBSPTypeTuple accumulatorType;
+        if (linear)
+            accumulatorType = new DBSPTypeTuple(Linq.map(partials,
+                    c -> Objects.requireNonNull(c.linearFunction).getResultType(), DBSPType.class));
+        else
+            accumulatorType = partial.defaultZeroType();
+        DBSPTypeIndexedZSet partialType = this.makeIndexedZSet(saltedKey.getType(), accumulatorType);
+        DBSPOperator partialAgg = new DBSPStreamAggregateOperator(
+                node, partialType, null, partial, index, linear);
+        this.circuit.addOperator(partialAgg);
+
+        // Index by key; the salt is kept in the value, so the partial results
+        // of the different sub-groups of a group are distinct values.
+        DBSPVariablePath kv = new DBSPVariablePath("kv", partialType.getKVRefType());
+        int keySize = localKeyExpression.size();
+        DBSPExpression[] keyFields = new DBSPExpression[keySize];
+        for (int i = 0; i < keySize; i++)
+            keyFields[i] = kv.deepCopy().field(0).deref().field(i).applyCloneIfNeeded();
+        DBSPExpression[] valueFields = new DBSPExpression[partials.length + 1];
+        valueFields[0] = kv.deepCopy().field(0).deref().field(keySize);
+        for (int i = 0; i < partials.length; i++)
+            valueFields[i + 1] = kv.deepCopy().field(1).deref().field(i).applyCloneIfNeeded();
+        DBSPTupleExpression value = new DBSPTupleExpression(valueFields);
+        DBSPExpression reindex = new DBSPRawTupleExpression(
+                new DBSPTupleExpression(keyFields), value);
+        DBSPOperator reindexed = new DBSPMapIndexOperator(node, reindex.closure(kv.asParameter()),
+                this.makeIndexedZSet(aggregateType.keyType, value.getType()), partialAgg);
+        this.circuit.addOperator(reindexed);
+
+        // The second phase combines the accumulators of each group.
+        // For a linear aggregate it adds the partial sums, and post-processes the result;
+        // the folds are only used if the aggregate is not linear.
+        DBSPVariablePath v = value.getType().ref().var("v");
+        DBSPVariablePath weight = this.getCompiler().weightVar;
+        DBSPAggregate.Implementation[] finals = new DBSPAggregate.Implementation[partials.length];
+        for (int i = 0; i < partials.length; i++) {
+            DBSPAggregate.Implementation c = fold.components[i];
+            DBSPTypeUser semigroup = c.semigroup.to(DBSPTypeUser.class);
+            DBSPType type = c.zero.getType();
+            DBSPVariablePath accumulator = type.var("a" + i);
+            DBSPExpression combine = new DBSPPath(
+                    new DBSPSimplePathSegment(semigroup.name, semigroup.typeArgs),
+                    new DBSPSimplePathSegment("combine")).toExpression();
+            DBSPExpression increment = new DBSPApplyExpression(combine, type,
+                    accumulator.borrow(), v.deref().field(i + 1).borrow());
+            @Nullable
+            DBSPClosureExpression linearFunction = linear ?
+                    v.deref().field(i + 1).applyCloneIfNeeded().closure(v.asParameter()) : null;
+            finals[i] = new DBSPAggregate.Implementation(c.getNode(), c.zero,
+                    increment.closure(accumulator.asParameter(), v.asParameter(), weight.asParameter()),
+                    c.postProcess, c.emptySetResult, c.semigroup,
+                    linearFunction, c.linearPostProcess, null, null);
+        }
+        DBSPAggregate combined = new DBSPAggregate(node, v, finals, false);
+        return new DBSPStreamAggregateOperator(
+                node, aggregateType, null, combined, reindexed, linear);
+    }
+
     /** Implement one aggregate from a set of rollups described by a LogicalAggregate. */
     DBSPOperator implementOneAggregate(LogicalAggregate aggregate, ImmutableBitSet localKeys) {
         CalciteObject node = CalciteObject.create(aggregate);
@@ -468,11 +586,11 @@ public class CalciteToDBSPCompiler extends RelVisitor
         DBSPTypeIndexedZSet localGroupAndInput = this.makeIndexedZSet(localGroupType, inputRowType);
         DBSPIndexOperator createIndex = new DBSPIndexOperator(
                 node, makeKeys, localGroupAndInput, false, opInput);
-        this.circuit.addOperator(createIndex);
         DBSPTypeIndexedZSet aggregateType = this.makeIndexedZSet(localGroupType, typeFromAggregate);
 
         DBSPOperator agg;
         if (fold.isEmpty()) {
+            this.circuit.addOperator(createIndex);
             // No aggregations: just apply distinct
             DBSPVariablePath var = new DBSPVariablePath("t", localGroupAndInput.getKVRefType());
             DBSPExpression addEmpty = new DBSPRawTupleExpression(
@@ -481,7 +599,10 @@ public class CalciteToDBSPCompiler extends RelVisitor
             agg = new DBSPMapIndexOperator(node, addEmpty.closure(var.asParameter()), aggregateType, createIndex);
           this.circuit.addOperator(agg);
             agg = new DBSPStreamDistinctOperator(node, agg);
+        } else if (this.canSplitGroups(aggregateCalls, fold)) {
+            agg = this.splitAggregate(node, opInput, localKeys, tuple, t, fold, aggregateType);
         } else {
+            this.circuit.addOperator(createIndex);
             agg = new DBSPStreamAggregateOperator(
                       node, aggregateType, null, fold, createIndex, fold.isLinear());
         }
@@ -803,6 +924,42 @@ public class CalciteToDBSPCompiler extends RelVisitor
         return filter;
     }
 
+    /**
+     * Generates the operators which compute the rows of 'rows' that do not appear in 'matched'.
+     * Both inputs are ZSets with elements of type 'rowType'.
+     * The result is an IndexedZSet that has the rows as keys and empty values.
+     * The rows keep their weights in 'rows'. */
+    private DBSPOperator antiJoinRows(
+            CalciteObject node, DBSPOperator rows, DBSPOperator matched, DBSPTypeTuple rowType) {
+        DBSPVariablePath t = rowType.ref().var("t");
+        DBSPExpression entireKey =
+                new DBSPRawTupleExpression(
+                        t.deref().applyClone(),
+                        new DBSPRawTupleExpression()).closure(
+                        t.asParameter());
+        DBSPOperator rowsIndex = new DBSPIndexOperator(
+                node, entireKey,
+                this.makeIndexedZSet(rowType, new DBSPTypeRawTuple()),
+                rows.isMultiset, rows);
+        this.circuit.addOperator(rowsIndex);
+        DBSPOperator matchedIndex = new DBSPIndexOperator(
+                node, entireKey.deepCopy(),
+                this.makeIndexedZSet(rowType, new DBSPTypeRawTuple()),
+                matched.isMultiset, matched);
+        this.circuit.addOperator(matchedIndex);
+
+        // The anti-join is always incremental, so we have to wrap it into a D-I pair
+        DBSPDifferentiateOperator rowsDiff = new DBSPDifferentiateOperator(node, rowsIndex);
+        this.circuit.addOperator(rowsDiff);
+        DBSPDifferentiateOperator matchedDiff = new DBSPDifferentiateOperator(node, matchedIndex);
+        this.circuit.addOperator(matchedDiff);
+        DBSPAntiJoinOperator antiJoin = new DBSPAntiJoinOperator(node, rowsDiff, matchedDiff);
+        this.circuit.addOperator(antiJoin);
+        DBSPIntegrateOperator integral = new DBSPIntegrateOperator(node, antiJoin);
+        this.circuit.addOperator(integral);
+        return integral;
+    }
+
     private void visitJoin(LogicalJoin join) {
         CalciteObject node = CalciteObject.create(join);
         JoinRelType joinType = join.getJoinType();
@@ -923,10 +1080,8 @@ public class CalciteToDBSPCompiler extends RelVisitor
             DBSPOperator joinLeftColumns = new DBSPMapOperator(
                     node, toLeftColumns, this.makeZSet(leftResultType), inner);
             this.circuit.addOperator(joinLeftColumns);
-            DBSPOperator distJoin = new DBSPStreamDistinctOperator(node, joinLeftColumns);
-            this.circuit.addOperator(distJoin);
 
-            // subtract from left relation
+            // left rows which do not appear in the join
             DBSPOperator leftCast = left;
             if (!leftResultType.sameType(leftElementType)) {
                 DBSPClosureExpression castLeft =
@@ -936,19 +1091,17 @@ public class CalciteToDBSPCompiler extends RelVisitor
                 leftCast = new DBSPMapOperator(node, castLeft, this.makeZSet(leftResultType), left);
                 this.circuit.addOperator(leftCast);
             }
-            DBSPOperator sub = new DBSPSubtractOperator(node, leftCast, distJoin);
-            this.circuit.addOperator(sub);
-            DBSPStreamDistinctOperator dist = new DBSPStreamDistinctOperator(node, sub);
-            this.circuit.addOperator(dist);
+            DBSPOperator unmatched = this.antiJoinRows(node, leftCast, joinLeftColumns, leftResultType);
 
             // fill nulls in the right relation fields
             DBSPTupleExpression rEmpty = new DBSPTupleExpression(
                     Linq.map(rightElementType.tupFields,
                              et -> DBSPLiteral.none(et.setMayBeNull(true)), DBSPExpression.class));
-            DBSPVariablePath lCasted = leftResultType.ref().var("l");
-            DBSPClosureExpression leftRow = DBSPTupleExpression.flatten(lCasted.deref(), rEmpty).closure(
+            DBSPVariablePath lCasted = new DBSPTypeRawTuple(
+                    leftResultType.ref(), new DBSPTypeRawTuple().ref()).var("l");
+            DBSPClosureExpression leftRow = DBSPTupleExpression.flatten(lCasted.field(0).deref(), rEmpty).closure(
                     lCasted.asParameter());
-            DBSPOperator expand = new DBSPMapOperator(node, leftRow, this.makeZSet(resultType), dist);
+            DBSPOperator expand = new DBSPMapOperator(node, leftRow, this.makeZSet(resultType), unmatched);
             this.circuit.addOperator(expand);
             result = new DBSPSumOperator(node, result, expand);
         }
@@ -964,10 +1117,8 @@ public class CalciteToDBSPCompiler extends RelVisitor
             DBSPOperator joinRightColumns = new DBSPMapOperator(
                     node, toRightColumns, this.makeZSet(rightResultType), inner);
             this.circuit.addOperator(joinRightColumns);
-            DBSPOperator distJoin = new DBSPStreamDistinctOperator(node, joinRightColumns);
-            this.circuit.addOperator(distJoin);
 
-            // subtract from right relation
+            // right rows which do not appear in the join
             DBSPOperator rightCast = right;
             if (!rightResultType.sameType(rightElementType)) {
                 DBSPClosureExpression castRight =
@@ -977,21 +1128,19 @@ public class CalciteToDBSPCompiler extends RelVisitor
                 rightCast = new DBSPMapOperator(node, castRight, this.makeZSet(rightResultType), right);
                 this.circuit.addOperator(rightCast);
             }
-            DBSPOperator sub = new DBSPSubtractOperator(node, rightCast, distJoin);
-            this.circuit.addOperator(sub);
-            DBSPStreamDistinctOperator dist = new DBSPStreamDistinctOperator(node, sub);
-            this.circuit.addOperator(dist);
+            DBSPOperator unmatched = this.antiJoinRows(node, rightCast, joinRightColumns, rightResultType);
 
             // fill nulls in the left relation fields
             DBSPTupleExpression lEmpty = new DBSPTupleExpression(
                     Linq.map(leftElementType.tupFields,
                             et -> DBSPLiteral.none(et.setMayBeNull(true)), DBSPExpression.class));
-            DBSPVariablePath rCasted = rightResultType.ref().var("r");
+            DBSPVariablePath rCasted = new DBSPTypeRawTuple(
+                    rightResultType.ref(), new DBSPTypeRawTuple().ref()).var("r");
             DBSPClosureExpression rightRow =
-                    DBSPTupleExpression.flatten(lEmpty, rCasted.deref()).closure(
+                    DBSPTupleExpression.flatten(lEmpty, rCasted.field(0).deref()).closure(
                     rCasted.asParameter());
             DBSPOperator expand = new DBSPMapOperator(node,
-                    rightRow, this.makeZSet(resultType), dist);
+                    rightRow, this.makeZSet(resultType), unmatched);
             this.circuit.addOperator(expand);
             result = new DBSPSumOperator(node, result, expand);
         }
@@ -1350,8 +1499,25 @@ public class CalciteToDBSPCompiler extends RelVisitor
                     DBSPTypeAny.getDefault(), numericBound);
         }
 
-        @Override
-        DBSPOperator implement(DBSPOperator input, DBSPOperator lastOperator) {
+        /** True if 'other' has the same partition and order keys as this group. */
+        boolean samePartitionAndOrder(StandardAggregates other) {
+            return this.group.keys.equals(other.group.keys) &&
+                    this.group.orderKeys.equals(other.group.orderKeys);
+        }
+
+        /** The (partition, order) key of the row referenced by 'row'. */
+        DBSPTupleExpression partitionAndOrder(DBSPVariablePath row) {
+            List<DBSPExpression> expressions = Linq.map(this.group.keys.toList(),
+                    f -> row.deepCopy().deref().field(f).applyCloneIfNeeded());
+            DBSPTupleExpression partition = new DBSPTupleExpression(node, expressions);
+            int orderColumnIndex = this.group.orderKeys.getFieldCollations().get(0).getFieldIndex();
+            return new DBSPTupleExpression(
+                    partition, row.deepCopy().deref().field(orderColumnIndex).applyCloneIfNeeded());
+        }
+
+        /** Computes the aggregates for each (partition, order) key.
+         * The result is an IndexedZSet with the aggregate results as values. */
+        DBSPOperator aggregate(DBSPOperator input) {
             List<RelFieldCollation> orderKeys = group.orderKeys.getFieldCollations();
             List<Integer> partitionKeys = group.keys.toList();
             List<DBSPExpression> expressions = Linq.map(partitionKeys,
@@ -1416,14 +1582,70 @@ public class CalciteToDBSPCompiler extends RelVisitor
 
             DBSPIntegrateOperator integral = new DBSPIntegrateOperator(node, windowAgg);
             CalciteToDBSPCompiler.this.circuit.addOperator(integral);
+            return integral;
+        }
 
-            // Join the previous result with the aggregate
-            // First index the aggregate.
+        @Override
+        DBSPOperator implement(DBSPOperator input, DBSPOperator lastOperator) {
+            return new FusedAggregates(Linq.list(this)).implement(input, lastOperator);
+        }
+    }
+
+    /**
+     * Several StandardAggregates with the same partition and order keys,
+     * which produce consecutive columns of the window result.
+     * The aggregates of all groups are joined with each other on the
+     * (partition, order) key, and the result is joined with the rows only once.
+     * This avoids keeping a copy of the rows in the trace of a join for each group.
+     */
+    class FusedAggregates extends GroupAndAggregates {
+        final List<StandardAggregates> parts;
+
+        FusedAggregates(List<StandardAggregates> parts) {
+            super(parts.get(0).window, parts.get(0).group,
+                    Linq.flatMap(parts, p -> p.aggregateCalls), parts.get(0).windowFieldIndex);
+            this.parts = parts;
+        }
+
+        @Override
+        DBSPOperator implement(DBSPOperator input, DBSPOperator lastOperator) {
+            DBSPOperator aggregates = null;
+            for (StandardAggregates part: this.parts) {
+                DBSPOperator partAggregates = part.aggregate(input);
+                if (aggregates == null) {
+                    aggregates = partAggregates;
+                    continue;
+                }
+                // Append the new aggregates to the ones computed so far
+                DBSPTypeIndexedZSet leftType = aggregates.getOutputIndexedZSetType();
+                DBSPTypeIndexedZSet rightType = partAggregates.getOutputIndexedZSetType();
+                DBSPVariablePath key = leftType.keyType.ref().var("k");
+                DBSPVariablePath left = leftType.elementType.ref().var("l");
+                DBSPVariablePath right = rightType.elementType.ref().var("r");
+                DBSPTupleExpression values = DBSPTupleExpression.flatten(left.deref(), right.deref());
+                DBSPTupleExpression keyAndValues = new DBSPTupleExpression(key.deref().applyClone(), values);
+                DBSPOperator join = new DBSPStreamJoinOperator(node,
+                        CalciteToDBSPCompiler.this.makeZSet(keyAndValues.getType()),
+                        keyAndValues.closure(key.asParameter(), left.asParameter(), right.asParameter()),
+                        false, aggregates, partAggregates);
+                CalciteToDBSPCompiler.this.circuit.addOperator(join);
+
+                DBSPVariablePath t = keyAndValues.getType().ref().var("t");
+                DBSPExpression reindex = new DBSPRawTupleExpression(
+                        t.deref().field(0).applyClone(), t.deref().field(1).applyClone());
+                aggregates = new DBSPIndexOperator(node, reindex.closure(t.asParameter()),
+                        CalciteToDBSPCompiler.this.makeIndexedZSet(leftType.keyType, values.getType()),
+                        false, join);
+                CalciteToDBSPCompiler.this.circuit.addOperator(aggregates);
+            }
+            Objects.requireNonNull(aggregates);
+            DBSPTypeTuple aggResultType = aggregates.getOutputIndexedZSetType().elementType.to(DBSPTypeTuple.class);
+
+            // Join the previous result with the aggregates
+            // First index the previous result.
             DBSPTypeTuple currentTupleType = lastOperator.getOutputZSetElementType().to(DBSPTypeTuple.class);
             DBSPVariablePath previousRowRefVar = currentTupleType.ref().var("t");
-            DBSPExpression partAndOrder = new DBSPTupleExpression(
-                    partition.applyCloneIfNeeded(),
-                    orderField.applyCloneIfNeeded());
+            DBSPExpression partAndOrder = this.parts.get(0).partitionAndOrder(previousRowRefVar);
             DBSPExpression indexedInput = new DBSPRawTupleExpression(
                     partAndOrder, previousRowRefVar.deepCopy().deref().applyClone());
             DBSPExpression partAndOrderClo = indexedInput.closure(previousRowRefVar.asParameter());
@@ -1450,8 +1672,32 @@ public class CalciteToDBSPCompiler extends RelVisitor
             DBSPClosureExpression addExtraField =
                     addExtraFieldBody.closure(key.asParameter(), left.asParameter(), right.asParameter());
             return new DBSPStreamJoinOperator(node, CalciteToDBSPCompiler.this.makeZSet(addExtraFieldBody.getType()),
-                    addExtraField, indexInput.isMultiset || windowAgg.isMultiset, indexInput, integral);
+                    addExtraField, indexInput.isMultiset || aggregates.isMultiset, indexInput, aggregates);
+        }
+    }
+
+    /** Merges consecutive StandardAggregates which have the same partition and order keys
+     * into FusedAggregates, which are joined with the input rows only once. */
+    List<GroupAndAggregates> fuseWindowGroups(List<GroupAndAggregates> groups) {
+        List<GroupAndAggregates> result = new ArrayList<>();
+        List<StandardAggregates> current = new ArrayList<>();
+        for (GroupAndAggregates ga: groups) {
+            StandardAggregates standard = null;
+            if (ga instanceof StandardAggregates)
+                standard = (StandardAggregates) ga;
+            if (standard == null || (!current.isEmpty() && !current.get(0).samePartitionAndOrder(standard))) {
+                if (!current.isEmpty())
+                    result.add(new FusedAggregates(current));
+                current = new ArrayList<>();
+            }
+            if (standard == null)
+                result.add(ga);
+            else
+                current.add(standard);
         }
+        if (!current.isEmpty())
+            result.add(new FusedAggregates(current));
+        return result;
     }
 
     /** Decompose a window into a list of GroupAndAggregates that can be each implemented
@@ -1528,7 +1774,7 @@ public class CalciteToDBSPCompiler extends RelVisitor
         // The final result is accumulated using join operators, which just keep adding columns to
         // the "lastOperator".  The "lastOperator" is initially the input node itself.
         DBSPOperator lastOperator = input;
-        List<GroupAndAggregates> toProcess = this.splitWindow(window, windowFieldIndex);
+        List<GroupAndAggregates> toProcess = this.fuseWindowGroups(this.splitWindow(window, windowFieldIndex));
         for (GroupAndAggregates ga: toProcess) {
             if (lastOperator != input)
                 this.circuit.addOperator(lastOperator);
@@ -1606,38 +1852,13 @@ public class CalciteToDBSPCompiler extends RelVisitor
             // Fall through, continuing from the integral.
             index = integral;
         }
-        // Global sort.  Implemented by aggregate in a single Vec<> which is then sorted.
-        // Apply an aggregation function that just creates a vector.
-        DBSPTypeVec vecType = new DBSPTypeVec(inputRowType, false);
-        DBSPExpression zero = new DBSPPath(vecType.name, "new").toExpression().call();
-        DBSPVariablePath accum = vecType.ref(true).var("a");
-        DBSPVariablePath row = inputRowType.ref().var("v");
-        // An element with weight 'w' is pushed 'w' times into the vector
-        DBSPExpression wPush = new DBSPApplyExpression(node,
-                "weighted_push", new DBSPTypeVoid(), accum, row, this.compiler.weightVar);
-        DBSPExpression push = wPush.closure(
-                accum.asParameter(), row.asParameter(),
-                this.compiler.weightVar.asParameter());
-        DBSPExpression constructor =
-                new DBSPPath(
-                        new DBSPSimplePathSegment("Fold",
-                                DBSPTypeAny.getDefault(),
-                                DBSPTypeAny.getDefault(),
-                                new DBSPTypeUser(node, USER, "UnimplementedSemigroup",
-                                        false, DBSPTypeAny.getDefault()),
-                                DBSPTypeAny.getDefault(),
-                                DBSPTypeAny.getDefault()),
-                        new DBSPSimplePathSegment("new")).toExpression();
-
-        DBSPExpression folder = constructor.call(zero, push);
-        DBSPStreamAggregateOperator agg = new DBSPStreamAggregateOperator(node,
-                this.makeIndexedZSet(new DBSPTypeRawTuple(), new DBSPTypeVec(inputRowType, false)),
-                folder, null, index, false);
-        this.circuit.addOperator(agg);
-
-        DBSPSortExpression sorter = new DBSPSortExpression(node, inputRowType, comparator);
-        DBSPOperator result = new DBSPMapOperator(
-                node, sorter, this.makeZSet(vecType), agg);
+        // Global sort.  The result is a single Vec<> with all the sorted rows.
+        // The sort operator is incremental, so we have to wrap it into a D-I pair.
+        DBSPDifferentiateOperator diff = new DBSPDifferentiateOperator(node, index);
+        this.circuit.addOperator(diff);
+        DBSPIncrementalSortOperator sorter = new DBSPIncrementalSortOperator(node, comparator, diff);
+        this.circuit.addOperator(sorter);
+        DBSPOperator result = new DBSPIntegrateOperator(node, sorter);
         this.assignOperator(sort, result);
     }
 
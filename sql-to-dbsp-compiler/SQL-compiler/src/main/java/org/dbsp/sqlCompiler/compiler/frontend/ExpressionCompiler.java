@@ -86,6 +86,7 @@ import org.dbsp.sqlCompiler.ir.type.DBSPTypeResult;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeStruct;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeUser;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeVec;
 import org.dbsp.sqlCompiler.ir.type.IsDateType;
 import org.dbsp.sqlCompiler.ir.type.IsNumericType;
@@ -120,6 +121,7 @@ import java.util.List;
 import java.util.Objects;
 
 import static org.dbsp.sqlCompiler.ir.type.DBSPTypeCode.NULL;
+import static org.dbsp.sqlCompiler.ir.type.DBSPTypeCode.USER;
 
 public class ExpressionCompiler extends RexVisitorImpl<DBSPExpression> implements IWritesLogs, ICompilerComponent {
     private final TypeCompiler typeCompiler;
@@ -494,6 +496,35 @@ public class ExpressionCompiler extends RexVisitorImpl<DBSPExpression> implement
         return compileFunction(getCallName(call), node, resultType, ops, expectedArgCount);
     }
 
+    /**
+     * Compile a pattern matching call (LIKE, RLIKE) whose pattern arguments are
+     * string literals.  The pattern is compiled by calling 'patternCompiler',
+     * which is a constant expression, and can thus be evaluated once for all rows.
+     * @param  patternCompiler  Function which compiles the pattern arguments.
+     * @param  node CalciteObject holding the call.
+     * @param  resultType Type of result produced by call.
+     * @param  ops  Translated operands for the call; the first one is the matched value.
+     * @return null if the pattern arguments are not all non-null literals.
+     */
+    @Nullable
+    static DBSPExpression compilePatternMatch(
+            String patternCompiler, CalciteObject node, DBSPType resultType, List<DBSPExpression> ops) {
+        DBSPExpression value = ops.get(0);
+        if (!value.getType().is(DBSPTypeString.class) || value.getType().mayBeNull != resultType.mayBeNull)
+            return null;
+        List<DBSPExpression> pattern = ops.subList(1, ops.size());
+        for (DBSPExpression op: pattern) {
+            DBSPStringLiteral literal = op.as(DBSPStringLiteral.class);
+            if (literal == null || literal.isNull || literal.getType().mayBeNull)
+                return null;
+        }
+        DBSPType compiledType = new DBSPTypeUser(node, USER, "CompiledPattern", false);
+        DBSPExpression compiled = new DBSPApplyExpression(
+                node, patternCompiler, compiledType, pattern.toArray(new DBSPExpression[0]));
+        return new DBSPApplyExpression(node, "pattern_matches" + typeString(value.getType()),
+                resultType, value, compiled.borrow());
+    }
+
     /**
      * Compile a function call into a Rust function.
      * One of the arguments is a keyword.
@@ -1072,6 +1103,10 @@ public class ExpressionCompiler extends RexVisitorImpl<DBSPExpression> implement
                 // Calcite does not enforce the type of the arguments, why?
                 for (int i = 0; i < 2; i++)
                     this.ensureString(ops, i);
+                validateArgCount(node, ops.size(), 2);
+                DBSPExpression match = compilePatternMatch("compile_rlike", node, type, ops);
+                if (match != null)
+                    return match;
                 return compileFunction(call, node, type, ops, 2);
             }
             case POSITION: {
@@ -1092,6 +1127,12 @@ public class ExpressionCompiler extends RexVisitorImpl<DBSPExpression> implement
             }
             case LIKE:
             case SIMILAR: {
+                if (getCallName(call).equals("like")) {
+                    validateArgCount(node, ops.size(), 2, 3);
+                    DBSPExpression match = compilePatternMatch("compile_like" + ops.size(), node, type, ops);
+                    if (match != null)
+                        return match;
+                }
                 return compileFunction(call, node, type, ops, 2, 3);
             }
             case FLOOR:
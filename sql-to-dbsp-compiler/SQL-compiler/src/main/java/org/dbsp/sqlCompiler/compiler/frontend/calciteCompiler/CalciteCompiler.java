@@ -30,6 +30,7 @@ import org.apache.calcite.config.CalciteConnectionProperty;
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.plan.hep.HepPlanner;
 import org.apache.calcite.plan.hep.HepProgramBuilder;
@@ -37,6 +38,8 @@ import org.apache.calcite.prepare.CalciteCatalogReader;
 import org.apache.calcite.prepare.Prepare;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelRoot;
+import org.apache.calcite.rel.externalize.RelJsonReader;
+import org.apache.calcite.rel.externalize.RelJsonWriter;
 import org.apache.calcite.rel.logical.LogicalValues;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
@@ -118,6 +121,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The calcite compiler compiles SQL into Calcite RelNode representations.
@@ -148,6 +155,8 @@ public class CalciteCompiler implements IWritesLogs {
     @Nullable
     private SqlToRelConverter converter;
     @Nullable
+    private Prepare.CatalogReader catalogReader;
+    @Nullable
     private ValidateTypes validateTypes;
     private final CalciteConnectionConfig connectionConfig;
     private final IErrorReporter errorReporter;
@@ -157,11 +166,28 @@ public class CalciteCompiler implements IWritesLogs {
     private final CustomFunctions customFunctions;
     /** User-defined types */
     private final HashMap<String, RelStruct> udt = new HashMap<>();
+    /** If not null, optimized view plans are looked up here and saved here. */
+    @Nullable
+    private ViewPlanCache planCache = null;
+    /** For each table and view the fingerprint of its definition; see ViewPlanCache. */
+    private final Map<String, String> fingerprints = new HashMap<>();
+    /** Definitions of user-defined functions and types, which are part of all view fingerprints. */
+    private final StringBuilder declarations = new StringBuilder();
+    /** Views whose plan has not been optimized yet, and their fingerprints (which may be null). */
+    private final Map<CreateViewStatement, String> unoptimized = new HashMap<>();
+    /** Optimizer shared by all views, so that the optimizer steps build their programs once.
+     * Created when first used, since the optimization level can change until then. */
+    @Nullable
+    private CalciteOptimizer optimizer = null;
 
     public CustomFunctions getCustomFunctions() {
         return this.customFunctions;
     }
 
+    public void setPlanCache(@Nullable ViewPlanCache planCache) {
+        this.planCache = planCache;
+    }
+
     public void generateOutputForNextView(boolean generate) {
         this.generateOutputForNextView = generate;
     }
@@ -291,19 +317,24 @@ public class CalciteCompiler implements IWritesLogs {
                                 SqlLibrary.SPATIAL)),
                 SqlOperatorTables.of(this.customFunctions.getInitialFunctions())
         );
-        // This planner does not do anything.
-        // We use a series of planner stages later to perform the real optimizations.
-        RelOptPlanner planner = new HepPlanner(new HepProgramBuilder().build());
-        planner.setExecutor(RexUtil.EXECUTOR);
-        this.cluster = RelOptCluster.create(planner, new RexBuilder(this.typeFactory));
+        this.cluster = this.createCluster();
         this.converterConfig = SqlToRelConverter.config()
                 .withExpand(true);
         this.validator = null;
         this.validateTypes = null;
         this.converter = null;
+        this.catalogReader = null;
         this.addOperatorTable(operatorTable);
     }
 
+    RelOptCluster createCluster() {
+        // This planner does not do anything.
+        // We use a series of planner stages later to perform the real optimizations.
+        RelOptPlanner planner = new HepPlanner(new HepProgramBuilder().build());
+        planner.setExecutor(RexUtil.EXECUTOR);
+        return RelOptCluster.create(planner, new RexBuilder(this.typeFactory));
+    }
+
     public void addSchemaSource(String name, Schema schema) {
         this.rootSchema.add(name, schema);
     }
@@ -320,21 +351,25 @@ public class CalciteCompiler implements IWritesLogs {
         }
         SqlValidator.Config validatorConfig = SqlValidator.Config.DEFAULT
                 .withIdentifierExpansion(true);
-        Prepare.CatalogReader catalogReader = new CalciteCatalogReader(
+        this.catalogReader = new CalciteCatalogReader(
                 CalciteSchema.from(this.rootSchema), Collections.singletonList(calciteCatalog.schemaName),
                 this.typeFactory, connectionConfig);
         this.validator = SqlValidatorUtil.newValidator(
                 newOperatorTable,
-                catalogReader,
+                this.catalogReader,
                 this.typeFactory,
                 validatorConfig
         );
         this.validateTypes = new ValidateTypes(errorReporter);
-        this.converter = new SqlToRelConverter(
+        this.converter = this.createConverter(this.cluster);
+    }
+
+    SqlToRelConverter createConverter(RelOptCluster cluster) {
+        return new SqlToRelConverter(
                 (type, query, schema, path) -> null,
-                this.validator,
-                catalogReader,
-                this.cluster,
+                Objects.requireNonNull(this.validator),
+                Objects.requireNonNull(this.catalogReader),
+                cluster,
                 StandardConvertletTable.INSTANCE,
                 this.converterConfig
         );
@@ -407,7 +442,7 @@ public class CalciteCompiler implements IWritesLogs {
                 .newline();
 
         RelBuilder relBuilder = this.converterConfig.getRelBuilderFactory().create(
-                cluster, null);
+                rel.getCluster(), null);
         // This converts correlated sub-queries into standard joins.
         rel = RelDecorrelator.decorrelateQuery(rel, relBuilder);
         Logger.INSTANCE.belowLevel(this, level)
@@ -417,8 +452,7 @@ public class CalciteCompiler implements IWritesLogs {
                 .decrease()
                 .newline();
 
-        CalciteOptimizer optimizer = new CalciteOptimizer(this.options.languageOptions.optimizationLevel);
-        rel = optimizer.apply(rel);
+        rel = this.getOptimizer().apply(rel);
         Logger.INSTANCE.belowLevel(this, level)
                 .append("After optimizer ")
                 .increase()
@@ -428,6 +462,120 @@ public class CalciteCompiler implements IWritesLogs {
         return rel;
     }
 
+    /** The optimizer for the current optimization level.
+     * Synchronized since views may be optimized concurrently. */
+    synchronized CalciteOptimizer getOptimizer() {
+        int level = this.options.languageOptions.optimizationLevel;
+        if (this.optimizer == null || this.optimizer.level != level)
+            this.optimizer = new CalciteOptimizer(level);
+        return this.optimizer;
+    }
+
+    /** Log the time spent in each step of the optimizer. */
+    public void logOptimizerStatistics() {
+        if (this.optimizer != null)
+            this.optimizer.logStatistics();
+    }
+
+    /** True if the plans of views are optimized concurrently by optimizeViews.
+     * Logging is not thread-safe, so this is disabled when the optimizer logs. */
+    boolean optimizeConcurrently() {
+        return this.options.ioOptions.threads > 1 &&
+                Logger.INSTANCE.getLoggingLevel(CalciteCompiler.class) == 0 &&
+                Logger.INSTANCE.getLoggingLevel(CalciteOptimizer.class) == 0;
+    }
+
+    /**
+     * Optimize the plans of all views in a list of compiled statements.
+     * Only needed when the plans are optimized concurrently; otherwise the
+     * plans are optimized when the views are compiled and this does nothing.
+     * The plans of different views are independent, so they are optimized in
+     * parallel; the results are attached to the views in program order. */
+    public void optimizeViews(List<FrontEndStatement> statements) {
+        if (!this.optimizeConcurrently())
+            return;
+        List<CreateViewStatement> views = new ArrayList<>();
+        for (FrontEndStatement statement: statements) {
+            if (statement.is(CreateViewStatement.class) &&
+                    this.unoptimized.containsKey(statement.to(CreateViewStatement.class)))
+                views.add(statement.to(CreateViewStatement.class));
+        }
+        if (views.isEmpty())
+            return;
+        ForkJoinPool pool = new ForkJoinPool(this.options.ioOptions.threads);
+        try {
+            List<ForkJoinTask<RelNode>> tasks = Linq.map(views,
+                    view -> pool.submit(() -> this.optimize(view.getRelNode())));
+            for (int i = 0; i < views.size(); i++) {
+                CreateViewStatement view = views.get(i);
+                RelNode optimized = tasks.get(i).join();
+                view.setOptimized(optimized);
+                this.savePlan(this.unoptimized.remove(view), optimized);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** The fingerprint of a view, or null if it cannot be computed because
+     * the view depends on relations that were not defined by the program. */
+    @Nullable
+    String viewFingerprint(String statement, RelNode rel) {
+        List<String> parts = new ArrayList<>();
+        parts.add(this.options.languageOptions.toString());
+        parts.add(this.declarations.toString());
+        parts.add(statement);
+        Set<String> dependencies = new TreeSet<>();
+        for (RelOptTable table: RelOptUtil.findTables(rel)) {
+            List<String> name = table.getQualifiedName();
+            dependencies.add(name.get(name.size() - 1));
+        }
+        for (String dependency: dependencies) {
+            String fingerprint = this.fingerprints.get(dependency);
+            if (fingerprint == null)
+                return null;
+            parts.add(dependency);
+            parts.add(fingerprint);
+        }
+        return ViewPlanCache.fingerprint(parts);
+    }
+
+    /** Optimized plan of a view with the specified fingerprint from the plan cache.
+     * The cached plan is read in the cluster of 'rel', the unoptimized plan of the
+     * view, and against the catalog of this compiler.  Returns null if the plan is
+     * not cached or cannot be read back. */
+    @Nullable
+    RelNode cachedPlan(@Nullable String fingerprint, RelNode rel) {
+        if (fingerprint == null || this.planCache == null)
+            return null;
+        String json = this.planCache.get(fingerprint);
+        if (json == null)
+            return null;
+        try {
+            RelJsonReader reader = new RelJsonReader(
+                    rel.getCluster(), Objects.requireNonNull(this.catalogReader), this.rootSchema);
+            RelNode plan = reader.read(json);
+            if (!RelOptUtil.areRowTypesEqual(plan.getRowType(), rel.getRowType(), false))
+                return null;
+            return plan;
+        } catch (Exception ex) {
+            // Such a view is optimized again
+            return null;
+        }
+    }
+
+    void savePlan(@Nullable String fingerprint, RelNode optimized) {
+        if (fingerprint == null || this.planCache == null)
+            return;
+        try {
+            RelJsonWriter writer = new RelJsonWriter();
+            optimized.explain(writer);
+            this.planCache.put(fingerprint, writer.asString());
+        } catch (Exception ex) {
+            // Plans that cannot be serialized are not cached
+        }
+    }
+
     public RelDataType specToRel(SqlDataTypeSpec spec) {
         SqlTypeNameSpec typeName = spec.getTypeNameSpec();
         String name = "";
@@ -659,6 +807,7 @@ public class CalciteCompiler implements IWritesLogs {
                 SqlDropTable dt = (SqlDropTable) node;
                 String tableName = dt.name.getSimple();
                 this.calciteCatalog.dropTable(tableName);
+                this.fingerprints.remove(tableName);
                 return new DropTableStatement(node, sqlStatement, tableName, comment);
             }
             case CREATE_TABLE: {
@@ -689,6 +838,8 @@ public class CalciteCompiler implements IWritesLogs {
                         tableName, table.getEmulatedTable(), this.errorReporter, table);
                 if (!success)
                     return null;
+                this.fingerprints.put(tableName, ViewPlanCache.fingerprint(
+                        Linq.list(this.declarations.toString(), sqlStatement)));
                 return table;
             }
             case CREATE_FUNCTION: {
@@ -704,10 +855,15 @@ public class CalciteCompiler implements IWritesLogs {
                 RelDataType returnType = this.specToRel(decl.getReturnType());
                 ExternalFunction function = this.customFunctions.createUDF(
                         CalciteObject.create(node), decl.getName(), structType, returnType);
+                this.declarations.append(sqlStatement).append("\n");
                 return new CreateFunctionStatement(node, sqlStatement, function);
             }
             case CREATE_VIEW: {
                 SqlToRelConverter converter = this.getConverter();
+                boolean concurrent = this.optimizeConcurrently();
+                if (concurrent)
+                    // The planner metadata cached in a cluster cannot be shared between threads
+                    converter = this.createConverter(this.createCluster());
                 SqlCreateView cv = (SqlCreateView) node;
                 SqlNode query = cv.query;
                 if (cv.getReplace())
@@ -718,8 +874,19 @@ public class CalciteCompiler implements IWritesLogs {
                 RelRoot relRoot = converter.convertQuery(query, true, true);
                 List<RelColumnMetadata> columns = this.createColumnsMetadata(CalciteObject.create(node),
                         cv.name, true, relRoot, cv.columnList);
-                RelNode optimized = this.optimize(relRoot.rel);
-                relRoot = relRoot.withRel(optimized);
+                String fingerprint = this.viewFingerprint(sqlStatement, relRoot.rel);
+                RelNode cached = this.cachedPlan(fingerprint, relRoot.rel);
+                boolean optimized = true;
+                if (cached != null) {
+                    relRoot = relRoot.withRel(cached);
+                } else if (!concurrent) {
+                    RelNode plan = this.optimize(relRoot.rel);
+                    relRoot = relRoot.withRel(plan);
+                    this.savePlan(fingerprint, plan);
+                } else {
+                    // Optimized later by optimizeViews
+                    optimized = false;
+                }
                 String viewName = cv.name.getSimple();
                 CreateViewStatement view = new CreateViewStatement(
                         node, sqlStatement,
@@ -729,6 +896,10 @@ public class CalciteCompiler implements IWritesLogs {
                 boolean success = this.calciteCatalog.addTable(viewName, view.getEmulatedTable(), this.errorReporter, view);
                 if (!success)
                     return null;
+                if (fingerprint != null)
+                    this.fingerprints.put(viewName, fingerprint);
+                if (!optimized)
+                    this.unoptimized.put(view, fingerprint);
                 return view;
             }
             case CREATE_TYPE: {
@@ -762,6 +933,7 @@ public class CalciteCompiler implements IWritesLogs {
                 boolean success = this.calciteCatalog.addType(typeName, this.errorReporter, result);
                 if (!success)
                     return null;
+                this.declarations.append(sqlStatement).append("\n");
                 return result;
             }
             case INSERT: {
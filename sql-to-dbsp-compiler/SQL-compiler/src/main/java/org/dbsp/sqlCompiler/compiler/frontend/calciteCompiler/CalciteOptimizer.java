@@ -9,27 +9,43 @@ import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.core.Aggregate;
 import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.rules.CoreRules;
 import org.apache.calcite.rel.rules.PruneEmptyRules;
+import org.dbsp.util.IIndentStream;
 import org.dbsp.util.IWritesLogs;
 import org.dbsp.util.Logger;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
-/** Optimizer using the Calcite program rewrite rules */
+/** Optimizer using the Calcite program rewrite rules.
+ * The same optimizer is used for all views of a program, possibly from multiple threads:
+ * the steps build their rule programs once, and HepPrograms are immutable. */
 public class CalciteOptimizer implements IWritesLogs {
     public abstract class CalciteOptimizerStep {
+        /** Total time spent in this step, in nanoseconds. */
+        final LongAdder elapsed = new LongAdder();
+        /** Number of plans optimized by this step. */
+        final LongAdder invocations = new LongAdder();
+
         /** Name of the optimizer step */
         abstract String getName();
         /** The program that performs the optimization */
         abstract HepProgram getProgram(RelNode node);
 
         RelNode optimize(RelNode rel) {
+            long start = System.nanoTime();
             HepProgram program = this.getProgram(rel);
             HepPlanner planner = new HepPlanner(program);
             planner.setRoot(rel);
             RelNode result = planner.findBestExp();
+            long time = System.nanoTime() - start;
+            this.elapsed.add(time);
+            this.invocations.increment();
             if (rel != result) {
                 Logger.INSTANCE.belowLevel(CalciteOptimizer.this, 3)
                         .append("After ")
@@ -39,17 +55,25 @@ public class CalciteOptimizer implements IWritesLogs {
                         .decrease()
                         .newline();
             }
+            Logger.INSTANCE.belowLevel(CalciteOptimizer.this, 4)
+                    .append(this.getName())
+                    .append(" took ")
+                    .append(time / 1000)
+                    .append("us")
+                    .newline();
             return result;
         }
     }
 
-    public class BaseOptimizerStep extends CalciteOptimizerStep {
+    /** A step whose program depends on some properties of the optimized plan,
+     * described by a key.  The program is built once for each key. */
+    public abstract class CachedOptimizerStep<K> extends CalciteOptimizerStep {
         final String name;
-        final HepProgramBuilder builder;
+        final Map<K, HepProgram> programs;
 
-        public BaseOptimizerStep(String name) {
+        protected CachedOptimizerStep(String name) {
             this.name = name;
-            this.builder = new HepProgramBuilder();
+            this.programs = new ConcurrentHashMap<>();
         }
 
         @Override
@@ -57,29 +81,54 @@ public class CalciteOptimizer implements IWritesLogs {
             return this.name;
         }
 
+        /** The properties of the plan that determine the program */
+        abstract K getKey(RelNode node);
+
+        /** Build the program for plans with the specified properties */
+        abstract HepProgram buildProgram(K key);
+
         @Override
         HepProgram getProgram(RelNode node) {
-            return this.builder.build();
-        }
-
-        void addRules(RelOptRule... rules) {
-            for (RelOptRule rule: rules)
-                this.builder.addRuleInstance(rule);
+            return this.programs.computeIfAbsent(this.getKey(node), this::buildProgram);
         }
     }
 
-    public class SimpleOptimizerStep extends BaseOptimizerStep {
+    /** A step that always applies the same rules. */
+    public class SimpleOptimizerStep extends CalciteOptimizerStep {
+        final String name;
+        final HepProgram program;
+
         SimpleOptimizerStep(String name, RelOptRule... rules) {
-            super(name);
+            this.name = name;
+            HepProgramBuilder builder = new HepProgramBuilder();
             for (RelOptRule r: rules)
-                this.builder.addRuleInstance(r);
+                builder.addRuleInstance(r);
+            this.program = builder.build();
         }
+
+        @Override
+        String getName() {
+            return this.name;
+        }
+
+        @Override
+        HepProgram getProgram(RelNode node) {
+            return this.program;
+        }
+    }
+
+    static void addRules(HepProgramBuilder builder, RelOptRule... rules) {
+        for (RelOptRule rule: rules)
+            builder.addRuleInstance(rule);
     }
 
     final List<CalciteOptimizerStep> steps;
+    /** Optimization level */
+    final int level;
 
     public CalciteOptimizer(int level) {
         this.steps = new ArrayList<>();
+        this.level = level;
         if (level < 1)
             // For optimization levels below 1 we don't even apply Calcite optimizations.
             // Note that this may cause compilation to fail, since our compiler does not
@@ -98,6 +147,7 @@ public class CalciteOptimizer implements IWritesLogs {
     /** Helper class to discover whether a query contains outer joins */
     static class OuterJoinFinder extends RelVisitor {
         public int outerJoinCount = 0;
+        public int fullJoinCount = 0;
         public int joinCount = 0;
         @Override public void visit(
                 RelNode node, int ordinal,
@@ -107,6 +157,8 @@ public class CalciteOptimizer implements IWritesLogs {
                 ++joinCount;
                 if (join.getJoinType().isOuterJoin())
                     ++outerJoinCount;
+                if (join.getJoinType() == JoinRelType.FULL)
+                    ++fullJoinCount;
             }
             super.visit(node, ordinal, parent);
         }
@@ -125,6 +177,8 @@ public class CalciteOptimizer implements IWritesLogs {
         @Override public void visit(
                 RelNode node, int ordinal,
                 @org.checkerframework.checker.nullness.qual.Nullable RelNode parent) {
+            if (this.hasGroupSets)
+                return;
             if (node instanceof Aggregate) {
                 Aggregate aggregate = (Aggregate)node;
                 if (!aggregate.groupSets.isEmpty())
@@ -138,21 +192,36 @@ public class CalciteOptimizer implements IWritesLogs {
         }
     }
 
+    /** Join reordering algorithm applied to a plan */
+    enum JoinOrder {
+        /** Joins are left in the original order */
+        NONE,
+        /** Bushy join trees */
+        BUSHY,
+        /** Left-deep join trees */
+        LEFT_DEEP
+    }
+
     void createOptimizer() {
-        this.addStep(new BaseOptimizerStep("Constant fold") {
+        this.addStep(new CachedOptimizerStep<Boolean>("Constant fold") {
             @Override
-            HepProgram getProgram(RelNode node) {
+            Boolean getKey(RelNode node) {
                 // Check if program contains Aggregates with groupSets.
                 AggregationGroupSets ags = new AggregationGroupSets();
                 ags.run(node);
+                return ags.hasGroupSets;
+            }
 
-                this.addRules(
+            @Override
+            HepProgram buildProgram(Boolean hasGroupSets) {
+                HepProgramBuilder builder = new HepProgramBuilder();
+                addRules(builder,
                         CoreRules.COERCE_INPUTS,
                         CoreRules.FILTER_REDUCE_EXPRESSIONS);
                 // Rule is buggy: https://issues.apache.org/jira/projects/CALCITE/issues/CALCITE-6317
-                if (!ags.hasGroupSets)
-                    this.addRules(CoreRules.PROJECT_REDUCE_EXPRESSIONS);
-                this.addRules(
+                if (!hasGroupSets)
+                    addRules(builder, CoreRules.PROJECT_REDUCE_EXPRESSIONS);
+                addRules(builder,
                         CoreRules.JOIN_REDUCE_EXPRESSIONS,
                         CoreRules.WINDOW_REDUCE_EXPRESSIONS,
                         CoreRules.CALC_REDUCE_EXPRESSIONS,
@@ -163,7 +232,7 @@ public class CalciteOptimizer implements IWritesLogs {
                         // https://github.com/feldera/feldera/issues/217
                         // CoreRules.PROJECT_VALUES_MERGE
                         CoreRules.AGGREGATE_VALUES);
-                return this.builder.build();
+                return builder.build();
             }
         });
         this.addStep(new SimpleOptimizerStep("Remove empty relations",
@@ -181,47 +250,76 @@ public class CalciteOptimizer implements IWritesLogs {
         this.addStep(new SimpleOptimizerStep("Expand windows",
                 CoreRules.PROJECT_TO_LOGICAL_PROJECT_AND_WINDOW
         ));
-        this.addStep(new BaseOptimizerStep("Isolate DISTINCT aggregates") {
+        this.addStep(new CachedOptimizerStep<Boolean>("Isolate DISTINCT aggregates") {
             @Override
-            HepProgram getProgram(RelNode node) {
+            Boolean getKey(RelNode node) {
                 AggregationGroupSets finder = new AggregationGroupSets();
                 finder.run(node);
-                if (!finder.hasGroupSets) {
+                return finder.hasGroupSets;
+            }
+
+            @Override
+            HepProgram buildProgram(Boolean hasGroupSets) {
+                HepProgramBuilder builder = new HepProgramBuilder();
+                if (!hasGroupSets) {
                     // Convert DISTINCT aggregates into separate computations and join the results.
                     // The following rule is unsound if aggregates contain groupSets
                     // https://issues.apache.org/jira/browse/CALCITE-6332
-                    this.addRules(CoreRules.AGGREGATE_EXPAND_DISTINCT_AGGREGATES_TO_JOIN);
+                    addRules(builder, CoreRules.AGGREGATE_EXPAND_DISTINCT_AGGREGATES_TO_JOIN);
                 } else {
                     // TODO: This sometimes triggers a bug in our compiler
-                    this.addRules(CoreRules.AGGREGATE_EXPAND_DISTINCT_AGGREGATES);
+                    addRules(builder, CoreRules.AGGREGATE_EXPAND_DISTINCT_AGGREGATES);
                 }
-                return this.builder.build();
+                return builder.build();
             }
         });
 
-        this.addStep(new BaseOptimizerStep("Join order") {
+        this.addStep(new CachedOptimizerStep<JoinOrder>("Join order") {
+            @Override
+            JoinOrder getKey(RelNode node) {
+                OuterJoinFinder finder = new OuterJoinFinder();
+                finder.run(node);
+                // In an incremental circuit every join input, including
+                // intermediate join results, is integrated, so the cost to
+                // minimize is the size of the intermediate results.  Both
+                // optimizers below use the estimated row counts of the
+                // intermediate results as the cost.
+                if (finder.joinCount < 3)
+                    return JoinOrder.NONE;
+                if (finder.outerJoinCount == 0)
+                    return JoinOrder.BUSHY;
+                // Bushy join optimization fails when the query contains outer joins.
+                // This optimizer only produces left-deep trees, but it
+                // never moves a factor across the null-generating side
+                // of a LEFT or RIGHT join.
+                if (finder.fullJoinCount == 0)
+                    return JoinOrder.LEFT_DEEP;
+                // FULL joins are left in the original order.
+                return JoinOrder.NONE;
+            }
+
             @Override
-            HepProgram getProgram(RelNode node) {
-                this.addRules(
+            HepProgram buildProgram(JoinOrder order) {
+                HepProgramBuilder builder = new HepProgramBuilder();
+                addRules(builder,
                         CoreRules.JOIN_CONDITION_PUSH,
                         CoreRules.JOIN_PUSH_EXPRESSIONS
                         // Rule is unsound
                         // CoreRules.FILTER_INTO_JOIN
                 );
-
-                OuterJoinFinder finder = new OuterJoinFinder();
-                finder.run(node);
-                // Bushy join optimization fails when the query contains outer joins.
-                boolean hasOuterJoins = (finder.outerJoinCount > 0) || (finder.joinCount < 3);
-                if (!hasOuterJoins) {
-                    this.addRules(
+                switch (order) {
+                    case BUSHY -> addRules(builder,
+                            CoreRules.JOIN_TO_MULTI_JOIN,
+                            CoreRules.PROJECT_MULTI_JOIN_MERGE,
+                            CoreRules.MULTI_JOIN_OPTIMIZE_BUSHY);
+                    case LEFT_DEEP -> addRules(builder,
                             CoreRules.JOIN_TO_MULTI_JOIN,
                             CoreRules.PROJECT_MULTI_JOIN_MERGE,
-                            CoreRules.MULTI_JOIN_OPTIMIZE_BUSHY
-                    );
+                            CoreRules.MULTI_JOIN_OPTIMIZE);
+                    case NONE -> {}
                 }
-                this.builder.addMatchOrder(HepMatchOrder.BOTTOM_UP);
-                return this.builder.build();
+                builder.addMatchOrder(HepMatchOrder.BOTTOM_UP);
+                return builder.build();
             }
         });
 
@@ -258,4 +356,18 @@ public class CalciteOptimizer implements IWritesLogs {
     public void addStep(CalciteOptimizerStep step) {
         this.steps.add(step);
     }
+
+    /** Log the time spent in each optimizer step. */
+    public void logStatistics() {
+        IIndentStream stream = Logger.INSTANCE.belowLevel(this, 1);
+        for (CalciteOptimizerStep step: this.steps) {
+            stream.append(step.getName())
+                    .append(": ")
+                    .append(step.invocations.sum())
+                    .append(" plans, ")
+                    .append(step.elapsed.sum() / 1_000_000)
+                    .append("ms")
+                    .newline();
+        }
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of optimized view plans, which can be shared by the compilations
+ * of successive versions of a program, e.g., in the compiler server.
+ * A plan is identified by the fingerprint of its view, which covers the
+ * view definition, the definitions of all the tables and views it depends
+ * on (transitively), the user-defined functions and types, and the compiler
+ * options.  A view whose fingerprint is unchanged does not need to be
+ * optimized again.
+ * The plans are stored serialized as JSON, so that they do not keep alive
+ * the compiler that produced them; a plan is read back in the compiler that
+ * uses it, against its own catalog.  The size of the cache is bounded by
+ * the total length of the serialized plans; the least recently used plans
+ * are evicted first.
+ */
+public class ViewPlanCache {
+    /** Maximum total length of the cached plans, in characters. */
+    final long capacity;
+    final Map<String, String> plans;
+    /** Total length of the cached plans, in characters. */
+    long size;
+    int hits;
+    int misses;
+
+    public ViewPlanCache(long capacity) {
+        this.capacity = capacity;
+        // Iterates in access order, least recently used first
+        this.plans = new LinkedHashMap<>(16, 0.75f, true);
+        this.size = 0;
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    public ViewPlanCache() {
+        this(64L * 1024 * 1024);
+    }
+
+    /** The serialized plan with the specified fingerprint, or null if not cached. */
+    @Nullable
+    public synchronized String get(String fingerprint) {
+        String result = this.plans.get(fingerprint);
+        if (result == null)
+            this.misses++;
+        else
+            this.hits++;
+        return result;
+    }
+
+    public synchronized void put(String fingerprint, String plan) {
+        if (plan.length() > this.capacity)
+            return;
+        String previous = this.plans.put(fingerprint, plan);
+        if (previous != null)
+            this.size -= previous.length();
+        this.size += plan.length();
+        Iterator<Map.Entry<String, String>> it = this.plans.entrySet().iterator();
+        while (this.size > this.capacity) {
+            Map.Entry<String, String> eldest = it.next();
+            this.size -= eldest.getValue().length();
+            it.remove();
+        }
+    }
+
+    /** Number of cached plans. */
+    public synchronized int size() {
+        return this.plans.size();
+    }
+
+    /** Total length of the cached plans, in characters. */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /** Number of lookups which found a plan. */
+    public synchronized int getHits() {
+        return this.hits;
+    }
+
+    /** Number of lookups which did not find a plan. */
+    public synchronized int getMisses() {
+        return this.misses;
+    }
+
+    public synchronized void clear() {
+        this.plans.clear();
+        this.size = 0;
+    }
+
+    /** A fingerprint of a sequence of strings. */
+    public static String fingerprint(List<String> parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part: parts) {
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                // Prefix each part with its length, so that parts cannot run into each other
+                digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ':');
+                digest.update(bytes);
+            }
+            StringBuilder result = new StringBuilder();
+            for (byte b: digest.digest())
+                result.append(String.format("%02x", b));
+            return result.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -5,13 +5,20 @@ import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
 import org.apache.calcite.schema.impl.AbstractTable;
 import org.dbsp.sqlCompiler.compiler.errors.UnsupportedException;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.RelColumnMetadata;
 
+import java.util.List;
+
 /** A description of a table wrapping the attributes that Calcite needs
  * to compile SQL programs that refer to this table. */
 public class CalciteTableDescription extends AbstractTable implements ScannableTable {
+    /** We have no cardinality information about the tables; this is the
+     * row count that Calcite assumes for tables without statistics. */
+    static final double DEFAULT_ROW_COUNT = 100.0;
     final IHasSchema schema;
 
     public CalciteTableDescription(IHasSchema schema) {
@@ -31,4 +38,14 @@ public class CalciteTableDescription extends AbstractTable implements ScannableT
             builder.add(meta.field);
         return builder.build();
     }
+
+    /** Statistics used by the Calcite optimizer for join ordering.
+     * The primary key is deliberately not published as a unique key:
+     * when the circuit is generated with input handles the key is not
+     * enforced, and Calcite rules that remove aggregates and joins
+     * based on uniqueness would then produce wrong results. */
+    @Override
+    public Statistic getStatistic() {
+        return Statistics.of(DEFAULT_ROW_COUNT, List.of());
+    }
 }
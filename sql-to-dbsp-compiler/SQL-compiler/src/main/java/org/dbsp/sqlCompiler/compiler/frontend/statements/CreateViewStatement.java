@@ -37,7 +37,7 @@ import java.util.Objects;
  */
 public class CreateViewStatement extends CreateRelationStatement {
     /** Compiled and optimized query. */
-    private final RelRoot compiled;
+    private RelRoot compiled;
     public final SqlNode query;
 
     public CreateViewStatement(SqlNode node, String statement, String tableName,
@@ -53,6 +53,11 @@ public class CreateViewStatement extends CreateRelationStatement {
         return Objects.requireNonNull(this.compiled).rel;
     }
 
+    /** Replace the query plan with an optimized version. */
+    public void setOptimized(RelNode optimized) {
+        this.compiled = this.compiled.withRel(optimized);
+    }
+
     public RelRoot getRoot() {
         return this.compiled;
     }
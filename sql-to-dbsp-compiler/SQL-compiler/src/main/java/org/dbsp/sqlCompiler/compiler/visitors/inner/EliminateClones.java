@@ -0,0 +1,184 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.inner;
+
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.ir.IDBSPDeclaration;
+import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPApplyExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBaseTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCastExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCloneExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPForExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPSomeExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeAny;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeRef;
+
+/**
+ * Removes calls to clone() whose result could be moved instead:
+ * - clones of values which are freshly computed, such as the results of
+ *   function calls, casts, operations, and constructors;
+ * - clones of variables declared by 'let' statements which are used exactly once,
+ *   if the use is not in a closure or loop nested in the code that declares
+ *   the variable (which could execute the use multiple times).
+ * Variables can only be moved if they are owned values, not references. */
+public class EliminateClones extends InnerRewriteVisitor {
+    final CountUses uses;
+
+    public EliminateClones(IErrorReporter reporter) {
+        super(reporter);
+        this.uses = new CountUses(reporter);
+    }
+
+    /** Counts the uses of the variables declared by 'let' statements. */
+    static class CountUses extends InnerVisitor {
+        final ResolveReferences resolver;
+        /** Number of uses of each variable; a variable used in a nested closure
+         * or loop counts as used multiple times. */
+        final DeclarationValue<Integer> uses;
+        /** Nesting depth of closures and loops where each variable is declared. */
+        final DeclarationValue<Integer> depth;
+        /** Current nesting depth of closures and loops. */
+        int currentDepth;
+
+        CountUses(IErrorReporter reporter) {
+            super(reporter);
+            this.resolver = new ResolveReferences(reporter, true);
+            this.uses = new DeclarationValue<>();
+            this.depth = new DeclarationValue<>();
+            this.currentDepth = 0;
+        }
+
+        /** True if the variable is declared by a 'let' which has only this use. */
+        boolean usedOnce(DBSPVariablePath variable) {
+            IDBSPDeclaration declaration = this.resolver.reference.get(variable);
+            if (declaration == null)
+                return false;
+            Integer count = this.uses.get(declaration);
+            return count != null && count == 1;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPClosureExpression expression) {
+            this.currentDepth++;
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public void postorder(DBSPClosureExpression expression) {
+            this.currentDepth--;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPForExpression expression) {
+            this.currentDepth++;
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public void postorder(DBSPForExpression expression) {
+            this.currentDepth--;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPLetStatement statement) {
+            this.uses.put(statement, 0);
+            this.depth.put(statement, this.currentDepth);
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPVariablePath variable) {
+            IDBSPDeclaration declaration = this.resolver.reference.get(variable);
+            if (declaration == null || !this.uses.containsKey(declaration))
+                return VisitDecision.STOP;
+            int count = this.uses.get(declaration) + 1;
+            if (this.depth.get(declaration) != this.currentDepth)
+                // May be executed multiple times
+                count++;
+            this.uses.put(declaration, count);
+            return VisitDecision.STOP;
+        }
+
+        @Override
+        public void startVisit(IDBSPInnerNode node) {
+            this.resolver.apply(node);
+            this.uses.clear();
+            this.depth.clear();
+            this.currentDepth = 0;
+            super.startVisit(node);
+        }
+    }
+
+    /** True if the value produced by 'expression' can be moved instead of cloned. */
+    boolean canMove(DBSPExpression expression) {
+        DBSPType type = expression.getType();
+        if (type.is(DBSPTypeRef.class) || type.is(DBSPTypeAny.class))
+            return false;
+        if (expression.is(DBSPVariablePath.class))
+            return this.uses.usedOnce(expression.to(DBSPVariablePath.class));
+        DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+        if (binary != null)
+            // a[i] is not a fresh value
+            return binary.operation != DBSPOpcode.RUST_INDEX;
+        return expression.is(DBSPApplyExpression.class) ||
+                expression.is(DBSPCloneExpression.class) ||
+                expression.is(DBSPCastExpression.class) ||
+                expression.is(DBSPUnaryExpression.class) ||
+                expression.is(DBSPBaseTupleExpression.class) ||
+                expression.is(DBSPSomeExpression.class) ||
+                expression.is(DBSPLiteral.class);
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPCloneExpression expression) {
+        this.push(expression);
+        DBSPExpression source = this.transform(expression.expression);
+        this.pop(expression);
+        DBSPExpression result;
+        // The analysis refers to the nodes of the original expression
+        if (this.canMove(expression.expression))
+            result = source;
+        else
+            result = new DBSPCloneExpression(expression.getNode(), source);
+        this.map(expression, result);
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public void startVisit(IDBSPInnerNode node) {
+        this.uses.apply(node);
+        super.startVisit(node);
+    }
+}
@@ -38,6 +38,7 @@ import org.dbsp.sqlCompiler.ir.statement.DBSPExpressionStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStaticItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStructItem;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeStream;
@@ -925,6 +926,17 @@ public abstract class InnerRewriteVisitor
         return VisitDecision.STOP;
     }
 
+    @Override
+    public VisitDecision preorder(DBSPStaticItem item) {
+        this.push(item);
+        DBSPType type = this.transform(item.type);
+        DBSPExpression expression = this.transform(item.expression);
+        this.pop(item);
+        DBSPStaticItem result = new DBSPStaticItem(item.name, type, expression);
+        this.map(item, result);
+        return VisitDecision.STOP;
+    }
+
     @Override
     public VisitDecision preorder(DBSPStructItem item) {
         this.push(item);
@@ -970,6 +982,9 @@ public abstract class InnerRewriteVisitor
         DBSPExpression emptySetResult = this.transform(implementation.emptySetResult);
         DBSPType semiGroup = this.transform(implementation.semigroup);
         DBSPExpression linear = this.transformN(implementation.linearFunction);
+        DBSPExpression linearPost = this.transformN(implementation.linearPostProcess);
+        DBSPExpression aggregator = this.transformN(implementation.aggregator);
+        DBSPExpression projection = this.transformN(implementation.projection);
         this.pop(implementation);
 
         DBSPAggregate.Implementation result = new DBSPAggregate.Implementation(
@@ -977,7 +992,10 @@ public abstract class InnerRewriteVisitor
                 increment.to(DBSPClosureExpression.class),
                 postProcess != null ? postProcess.to(DBSPClosureExpression.class) : null,
                 emptySetResult, semiGroup,
-                linear != null ? linear.to(DBSPClosureExpression.class) : null);
+                linear != null ? linear.to(DBSPClosureExpression.class) : null,
+                linearPost != null ? linearPost.to(DBSPClosureExpression.class) : null,
+                aggregator,
+                projection != null ? projection.to(DBSPClosureExpression.class) : null);
         result.validate();
         this.map(implementation, result);
         return VisitDecision.STOP;
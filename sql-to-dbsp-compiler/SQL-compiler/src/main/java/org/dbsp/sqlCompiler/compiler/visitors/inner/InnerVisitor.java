@@ -208,6 +208,10 @@ public abstract class InnerVisitor implements IRTransform, IWritesLogs {
         return this.preorder(node.to(DBSPItem.class));
     }
 
+    public VisitDecision preorder(DBSPStaticItem node) {
+        return this.preorder(node.to(DBSPItem.class));
+    }
+
     // Various
     
     public VisitDecision preorder(DBSPPathSegment node) {
@@ -676,6 +680,10 @@ public abstract class InnerVisitor implements IRTransform, IWritesLogs {
         this.postorder(node.to(DBSPItem.class));
     }
 
+    public void postorder(DBSPStaticItem node) {
+        this.postorder(node.to(DBSPItem.class));
+    }
+
     public void postorder(DBSPExpressionStatement node) {
         this.postorder(node.to(DBSPStatement.class));
     }
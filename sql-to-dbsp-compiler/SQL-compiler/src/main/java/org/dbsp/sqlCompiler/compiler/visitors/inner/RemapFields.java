@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.inner;
+
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.expression.DBSPDerefExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPFieldExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Rewrites an expression replacing each field access (*param).i,
+ * where param is a reference to a tuple, with the expression produced
+ * by a remapping function for i.  The rewrite fails if the parameter
+ * is used in any other way, or if the function returns null. */
+public class RemapFields extends InnerRewriteVisitor {
+    final String parameter;
+    final Function<Integer, DBSPExpression> remap;
+    boolean failed;
+
+    public RemapFields(IErrorReporter reporter, DBSPParameter parameter,
+                       Function<Integer, DBSPExpression> remap) {
+        super(reporter);
+        this.parameter = parameter.name;
+        this.remap = remap;
+        this.failed = false;
+    }
+
+    /** If the expression has the shape (*parameter).i return i, otherwise -1. */
+    static int fieldOfParameter(DBSPFieldExpression expression, String parameter) {
+        DBSPDerefExpression deref = expression.expression.as(DBSPDerefExpression.class);
+        if (deref == null)
+            return -1;
+        DBSPVariablePath var = deref.expression.as(DBSPVariablePath.class);
+        if (var == null || !var.variable.equals(parameter))
+            return -1;
+        return expression.fieldNo;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPFieldExpression expression) {
+        int field = fieldOfParameter(expression, this.parameter);
+        if (field < 0)
+            return super.preorder(expression);
+        DBSPExpression replacement = this.remap.apply(field);
+        if (replacement == null) {
+            this.failed = true;
+            this.map(expression, expression);
+        } else {
+            this.map(expression, replacement.deepCopy());
+        }
+        return VisitDecision.STOP;
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPVariablePath expression) {
+        if (expression.variable.equals(this.parameter))
+            this.failed = true;
+        return super.preorder(expression);
+    }
+
+    /** Rewrite the expression; return null if the rewrite is not possible. */
+    @Nullable
+    public DBSPExpression rewrite(DBSPExpression expression) {
+        this.failed = false;
+        DBSPExpression result = this.apply(expression).to(DBSPExpression.class);
+        if (this.failed)
+            return null;
+        return result;
+    }
+
+    /** Collects the fields of a parameter used by an expression. */
+    static class FieldUsage extends InnerVisitor {
+        final String parameter;
+        final Set<Integer> used;
+        /** Set if the parameter is used other than by accessing a field. */
+        boolean wholeUsed;
+
+        FieldUsage(IErrorReporter reporter, String parameter) {
+            super(reporter);
+            this.parameter = parameter;
+            this.used = new TreeSet<>();
+            this.wholeUsed = false;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPFieldExpression expression) {
+            int field = fieldOfParameter(expression, this.parameter);
+            if (field < 0)
+                return VisitDecision.CONTINUE;
+            this.used.add(field);
+            return VisitDecision.STOP;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPVariablePath expression) {
+            if (expression.variable.equals(this.parameter))
+                this.wholeUsed = true;
+            return VisitDecision.STOP;
+        }
+    }
+
+    /** The sorted set of fields of 'parameter' used by 'expression',
+     * or null if the parameter is used in other ways. */
+    @Nullable
+    public static Set<Integer> usedFields(
+            IErrorReporter reporter, DBSPExpression expression, DBSPParameter parameter) {
+        FieldUsage usage = new FieldUsage(reporter, parameter.name);
+        usage.traverse(expression);
+        if (usage.wholeUsed)
+            return null;
+        return usage.used;
+    }
+}
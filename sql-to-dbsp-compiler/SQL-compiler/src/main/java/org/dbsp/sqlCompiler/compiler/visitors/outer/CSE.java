@@ -0,0 +1,72 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+
+import java.util.Map;
+
+/**
+ * Common subexpression elimination: merges operators that compute the same
+ * result, as discovered by FindCSE.  This avoids keeping duplicate traces
+ * when multiple views share the same pipelines. */
+public class CSE extends Passes {
+    public CSE(IErrorReporter reporter) {
+        super(reporter);
+        FindCSE finder = new FindCSE(reporter);
+        super.add(finder);
+        super.add(new RemoveDuplicates(reporter, finder.duplicate));
+    }
+
+    /** Replaces each operator with its equivalent representative. */
+    static class RemoveDuplicates extends CircuitCloneVisitor {
+        final Map<DBSPOperator, DBSPOperator> duplicate;
+
+        RemoveDuplicates(IErrorReporter reporter, Map<DBSPOperator, DBSPOperator> duplicate) {
+            super(reporter, false);
+            this.duplicate = duplicate;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPOperator node) {
+            DBSPOperator existing = this.duplicate.get(node);
+            if (existing == null)
+                return VisitDecision.CONTINUE;
+            // The representative always precedes the duplicate in the circuit
+            this.visited.add(node);
+            this.map(node, this.mapped(existing), false);
+            return VisitDecision.STOP;
+        }
+
+        @Override
+        public DBSPCircuit apply(DBSPCircuit circuit) {
+            if (this.duplicate.isEmpty())
+                return circuit;
+            return super.apply(circuit);
+        }
+    }
+}
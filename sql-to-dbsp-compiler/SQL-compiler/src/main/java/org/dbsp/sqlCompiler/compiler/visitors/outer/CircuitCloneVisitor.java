@@ -172,6 +172,9 @@ public class CircuitCloneVisitor extends CircuitVisitor implements IWritesLogs {
     @Override
     public void postorder(DBSPApplyOperator operator) { this.replace(operator); }
 
+    @Override
+    public void postorder(DBSPApply2Operator operator) { this.replace(operator); }
+
     @Override
     public void postorder(DBSPDelayOperator operator) {
         if (operator.output == null) {
@@ -193,6 +196,9 @@ public class CircuitCloneVisitor extends CircuitVisitor implements IWritesLogs {
     @Override
     public void postorder(DBSPIndexedTopKOperator operator) { this.replace(operator); }
 
+    @Override
+    public void postorder(DBSPIncrementalSortOperator operator) { this.replace(operator); }
+
     @Override
     public void postorder(DBSPMapIndexOperator operator) { this.replace(operator); }
 
@@ -292,6 +298,11 @@ public class CircuitCloneVisitor extends CircuitVisitor implements IWritesLogs {
         this.replace(operator);
     }
 
+    @Override
+    public void postorder(DBSPAntiJoinOperator operator) {
+        this.replace(operator);
+    }
+
     @Override
     public void postorder(DBSPSumOperator operator) {
         this.replace(operator);
@@ -334,6 +345,9 @@ public class CircuitCloneVisitor extends CircuitVisitor implements IWritesLogs {
     @Override
     public void postorder(DBSPIntegrateTraceRetainKeysOperator operator) { this.replace(operator); }
 
+    @Override
+    public void postorder(DBSPIntegrateTraceRetainValuesOperator operator) { this.replace(operator); }
+
     @Override
     public void postorder(DBSPWaterlineOperator operator) { this.replace(operator); }
 
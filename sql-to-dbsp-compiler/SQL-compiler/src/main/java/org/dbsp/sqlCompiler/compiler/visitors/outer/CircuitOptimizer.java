@@ -65,6 +65,13 @@ public class CircuitOptimizer implements ICompilerComponent {
             passes.add(new PropagateEmptySources(reporter));
             passes.add(new DeadCode(reporter, options.languageOptions.generateInputForEveryTable, true));
             passes.add(new OptimizeProjections(reporter));
+            if (!options.ioOptions.emitHandles)
+                passes.add(new ReuseSourceIndex(reporter));
+            passes.add(new OptimizeJoinInputs(reporter));
+            passes.add(new PruneInputColumns(reporter));
+            // Merge the projections inserted by the previous pass
+            passes.add(new OptimizeProjections(reporter));
+            passes.add(new CSE(reporter));
             passes.add(new OptimizeDistinctVisitor(reporter));
             if (options.languageOptions.incrementalize) {
                 passes.add(new IncrementalizeVisitor(reporter));
@@ -30,6 +30,7 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPControlledFilterOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFlatMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
@@ -94,6 +95,7 @@ public class CircuitRewriter extends CircuitCloneVisitor {
     // - DBSPNegateOperator
     // - DBSPNoopOperator
     // - DBSPSubtractOperator
+    // - DBSPAntiJoinOperator
     // - DBSPSumOperator
     // - DBSPDeindexOperator
     @Override
@@ -219,7 +221,7 @@ public class CircuitRewriter extends CircuitCloneVisitor {
         DBSPExpression value = this.transform(operator.getFunction());
         DBSPOperator result = operator;
         if (value != operator.getFunction()) {
-            result = new DBSPConstantOperator(operator.getNode(), value, operator.isMultiset);
+            result = new DBSPConstantOperator(operator.getNode(), value, operator.incremental, operator.isMultiset);
         }
         this.map(operator, result);
     }
@@ -270,6 +272,21 @@ public class CircuitRewriter extends CircuitCloneVisitor {
         this.map(operator, result);
     }
 
+    @Override
+    public void postorder(DBSPIntegrateTraceRetainValuesOperator operator) {
+        DBSPType outputType = this.transform(operator.outputType);
+        List<DBSPOperator> sources = Linq.map(operator.inputs, this::mapped);
+        DBSPExpression function = this.transform(operator.getFunction());
+        DBSPOperator result = operator;
+        if (!outputType.sameType(operator.outputType)
+                || Linq.different(sources, operator.inputs)
+                || function != operator.getFunction()) {
+            result = new DBSPIntegrateTraceRetainValuesOperator(operator.getNode(), function,
+                    sources.get(0), sources.get(1));
+        }
+        this.map(operator, result);
+    }
+
     @Override
     public void postorder(DBSPIndexOperator operator) {
         DBSPType outputType = this.transform(operator.outputType);
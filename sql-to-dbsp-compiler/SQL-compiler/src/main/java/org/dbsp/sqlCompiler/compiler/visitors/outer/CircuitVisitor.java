@@ -126,6 +126,10 @@ public abstract class CircuitVisitor
         return this.preorder(node.to(DBSPUnaryOperator.class));
     }
 
+    public VisitDecision preorder(DBSPIncrementalSortOperator node) {
+        return this.preorder(node.to(DBSPUnaryOperator.class));
+    }
+
     public VisitDecision preorder(DBSPLagOperator node) {
         return this.preorder(node.to(DBSPUnaryOperator.class));
     }
@@ -154,6 +158,10 @@ public abstract class CircuitVisitor
         return this.preorder(node.to(DBSPOperator.class));
     }
 
+    public VisitDecision preorder(DBSPAntiJoinOperator node) {
+        return this.preorder(node.to(DBSPOperator.class));
+    }
+
     public VisitDecision preorder(DBSPSumOperator node) {
         return this.preorder(node.to(DBSPOperator.class));
     }
@@ -278,6 +286,10 @@ public abstract class CircuitVisitor
         return this.preorder(node.to(DBSPUnaryOperator.class));
     }
 
+    public VisitDecision preorder(DBSPApply2Operator node) {
+        return this.preorder(node.to(DBSPOperator.class));
+    }
+
     public VisitDecision preorder(DBSPControlledFilterOperator node) {
         return this.preorder(node.to(DBSPOperator.class));
     }
@@ -286,6 +298,10 @@ public abstract class CircuitVisitor
         return this.preorder(node.to(DBSPOperator.class));
     }
 
+    public VisitDecision preorder(DBSPIntegrateTraceRetainValuesOperator node) {
+        return this.preorder(node.to(DBSPOperator.class));
+    }
+
     public VisitDecision preorder(DBSPWaterlineOperator node) {
         return this.preorder(node.to(DBSPUnaryOperator.class));
     }
@@ -312,6 +328,10 @@ public abstract class CircuitVisitor
         this.postorder(node.to(DBSPUnaryOperator.class));
     }
 
+    public void postorder(DBSPIncrementalSortOperator node) {
+        this.postorder(node.to(DBSPUnaryOperator.class));
+    }
+
     public void postorder(DBSPLagOperator node) {
         this.postorder(node.to(DBSPUnaryOperator.class));
     }
@@ -324,6 +344,10 @@ public abstract class CircuitVisitor
         this.postorder(node.to(DBSPOperator.class));
     }
 
+    public void postorder(DBSPAntiJoinOperator node) {
+        this.postorder(node.to(DBSPOperator.class));
+    }
+
     public void postorder(DBSPSumOperator node) {
         this.postorder(node.to(DBSPOperator.class));
     }
@@ -462,6 +486,10 @@ public abstract class CircuitVisitor
         this.postorder(node.to(DBSPUnaryOperator.class));
     }
 
+    public void postorder(DBSPApply2Operator node) {
+        this.postorder(node.to(DBSPOperator.class));
+    }
+
     public void postorder(DBSPControlledFilterOperator node) {
         this.postorder(node.to(DBSPOperator.class));
     }
@@ -470,6 +498,10 @@ public abstract class CircuitVisitor
         this.postorder(node.to(DBSPOperator.class));
     }
 
+    public void postorder(DBSPIntegrateTraceRetainValuesOperator node) {
+        this.postorder(node.to(DBSPOperator.class));
+    }
+
     public void postorder(DBSPWaterlineOperator node) {
         this.postorder(node.to(DBSPUnaryOperator.class));
     }
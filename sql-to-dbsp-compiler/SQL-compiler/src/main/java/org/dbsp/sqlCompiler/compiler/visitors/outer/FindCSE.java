@@ -0,0 +1,227 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamDistinctOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSubtractOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSumOperator;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustInnerVisitor;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.ir.IDBSPOuterNode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.util.IWritesLogs;
+import org.dbsp.util.IndentStream;
+import org.dbsp.util.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds operators that compute the same result as an operator that appears
+ * earlier in the circuit.  Two operators are equivalent if they have the same
+ * class and operation, the same output type, the same inputs (after
+ * replacing equivalent inputs), and functions that are identical modulo the
+ * names of the closure parameters.
+ * Only operators whose behavior is completely described by these fields are
+ * considered; sources, sinks, delays, and operators which carry additional
+ * state (aggregates, TopK, windows, etc.) are never merged.
+ * Since operators are visited in topological order a single pass discovers
+ * entire duplicated pipelines.
+ * This visitor does not allocate any IR nodes. */
+public class FindCSE extends CircuitVisitor implements IWritesLogs {
+    /** Maps each operator to an earlier equivalent operator. */
+    public final Map<DBSPOperator, DBSPOperator> duplicate;
+    /** Maps the canonical representation of an operator to the first
+     * operator in the circuit with that representation. */
+    final Map<String, DBSPOperator> canonical;
+
+    public FindCSE(IErrorReporter reporter) {
+        super(reporter);
+        this.duplicate = new HashMap<>();
+        this.canonical = new HashMap<>();
+    }
+
+    /**
+     * Prints an expression or type as Rust, but renames the parameters of the
+     * outermost closure to canonical names.  Two closures that differ only
+     * in the names of their parameters produce the same string. */
+    static class CanonicalPrinter extends ToRustInnerVisitor {
+        final Map<String, String> renamed;
+
+        CanonicalPrinter(IErrorReporter reporter, IndentStream builder, Map<String, String> renamed) {
+            super(reporter, builder, false);
+            this.renamed = renamed;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPParameter parameter) {
+            this.builder.append(this.renamed.getOrDefault(parameter.name, parameter.name))
+                    .append(": ");
+            parameter.type.accept(this);
+            return VisitDecision.STOP;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPVariablePath expression) {
+            this.builder.append(this.renamed.getOrDefault(expression.variable, expression.variable));
+            return VisitDecision.STOP;
+        }
+
+        @Override
+        public VisitDecision doNull(DBSPLiteral literal) {
+            // The base class allocates a new type here
+            this.builder.append("None::<");
+            literal.getType().accept(this);
+            this.builder.append(">");
+            return VisitDecision.STOP;
+        }
+
+        static String print(IErrorReporter reporter, IDBSPInnerNode node) {
+            Map<String, String> renamed = new HashMap<>();
+            DBSPClosureExpression closure = node.as(DBSPClosureExpression.class);
+            if (closure != null) {
+                int index = 0;
+                for (DBSPParameter param: closure.parameters)
+                    renamed.put(param.name, "$" + index++);
+            }
+            StringBuilder builder = new StringBuilder();
+            CanonicalPrinter printer = new CanonicalPrinter(reporter, new IndentStream(builder), renamed);
+            node.accept(printer);
+            return builder.toString();
+        }
+    }
+
+    /** The operator that will replace the specified one. */
+    DBSPOperator representative(DBSPOperator operator) {
+        return this.duplicate.getOrDefault(operator, operator);
+    }
+
+    /** A string that uniquely identifies the computation performed by an operator. */
+    String canonicalForm(DBSPOperator operator) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(operator.getClass().getSimpleName())
+                .append(" ")
+                .append(operator.operation)
+                .append(" ")
+                .append(operator.isMultiset)
+                .append(" ")
+                .append(CanonicalPrinter.print(this.errorReporter, operator.outputType))
+                .append("(");
+        for (DBSPOperator input: operator.inputs)
+            builder.append(this.representative(input).id).append(",");
+        builder.append(")");
+        if (operator.function != null)
+            builder.append(CanonicalPrinter.print(this.errorReporter, operator.function));
+        return builder.toString();
+    }
+
+    void findEquivalent(DBSPOperator operator) {
+        String key = this.canonicalForm(operator);
+        DBSPOperator existing = this.canonical.get(key);
+        if (existing == null) {
+            this.canonical.put(key, operator);
+            return;
+        }
+        Logger.INSTANCE.belowLevel(this, 1)
+                .append(operator.toString())
+                .append(" is equivalent to ")
+                .append(existing.toString())
+                .newline();
+        this.duplicate.put(operator, existing);
+    }
+
+    @Override
+    public void postorder(DBSPMapOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPMapIndexOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPIndexOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPFilterOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPDeindexOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPStreamJoinOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPJoinOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPStreamDistinctOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPDistinctOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPIntegrateOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPDifferentiateOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPNegateOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPSumOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPSubtractOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPAntiJoinOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void postorder(DBSPConstantOperator operator) { this.findEquivalent(operator); }
+
+    @Override
+    public void startVisit(IDBSPOuterNode node) {
+        this.duplicate.clear();
+        this.canonical.clear();
+        super.startVisit(node);
+    }
+}
@@ -24,6 +24,7 @@
 package org.dbsp.sqlCompiler.compiler.visitors.outer;
 
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceBaseOperator;
@@ -103,6 +104,12 @@ public class FindDeadCode extends CircuitVisitor implements IWritesLogs {
         return VisitDecision.STOP;
     }
 
+    @Override
+    public VisitDecision preorder(DBSPIntegrateTraceRetainValuesOperator operator) {
+        this.keep(operator);
+        return VisitDecision.STOP;
+    }
+
     @Override
     public VisitDecision preorder(DBSPSinkOperator operator) {
         List<DBSPOperator> r = new ArrayList<>();
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeclaration;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustInnerVisitor;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.InnerRewriteVisitor;
+import org.dbsp.sqlCompiler.ir.IDBSPOuterNode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPApplyExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCastExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPPathExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPDecimalLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPIndexedZSetLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPKeywordLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPVecLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStaticItem;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeUser;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDecimal;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeString;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves constant expressions which are expensive to evaluate out of the
+ * functions of the operators into static items, which are evaluated once,
+ * the first time they are used.  Without this each row processed by
+ * a function evaluates the constants again.
+ * Hoisted expressions contain no variables, and are made only of scalar literals,
+ * casts, unary and binary operations, and calls to functions that compile patterns.
+ * They are expensive if they contain a decimal literal, a pattern compilation,
+ * or a cast from or to a string or a decimal (which parse or format values).
+ * The declarations of the original circuit (user-defined functions, structs)
+ * are not modified, since the static items are only visible in the circuit. */
+public class HoistConstants extends CircuitRewriter {
+    /** Functions which compile a literal pattern; they are pure. */
+    public static final Set<String> PATTERN_COMPILERS = Set.of(
+            "compile_like2", "compile_like3", "compile_rlike");
+
+    public HoistConstants(IErrorReporter reporter) {
+        super(reporter, new Hoister(reporter));
+    }
+
+    Hoister getHoister() {
+        return (Hoister) this.transform;
+    }
+
+    /** True if 'expression' can be evaluated at any time and produces always the same result. */
+    static boolean isConstant(DBSPExpression expression) {
+        if (expression.is(DBSPLiteral.class))
+            return !expression.is(DBSPVecLiteral.class) &&
+                    !expression.is(DBSPZSetLiteral.class) &&
+                    !expression.is(DBSPIndexedZSetLiteral.class) &&
+                    !expression.is(DBSPKeywordLiteral.class);
+        DBSPCastExpression cast = expression.as(DBSPCastExpression.class);
+        if (cast != null)
+            return isConstant(cast.source);
+        DBSPUnaryExpression unary = expression.as(DBSPUnaryExpression.class);
+        if (unary != null)
+            return isConstant(unary.source);
+        DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+        if (binary != null)
+            return isConstant(binary.left) && isConstant(binary.right);
+        DBSPApplyExpression apply = expression.as(DBSPApplyExpression.class);
+        if (apply != null) {
+            DBSPPathExpression path = apply.function.as(DBSPPathExpression.class);
+            if (path == null || !PATTERN_COMPILERS.contains(path.path.toString()))
+                return false;
+            for (DBSPExpression argument: apply.arguments)
+                if (!isConstant(argument))
+                    return false;
+            return true;
+        }
+        return false;
+    }
+
+    /** True if values of this type are parsed or formatted by casts. */
+    static boolean isParsed(DBSPType type) {
+        return type.is(DBSPTypeString.class) || type.is(DBSPTypeDecimal.class);
+    }
+
+    /** True if evaluating a constant expression costs more than copying its value. */
+    static boolean isExpensive(DBSPExpression expression) {
+        if (expression.is(DBSPDecimalLiteral.class))
+            return !expression.to(DBSPLiteral.class).isNull;
+        if (expression.is(DBSPApplyExpression.class))
+            return true;
+        DBSPCastExpression cast = expression.as(DBSPCastExpression.class);
+        if (cast != null)
+            return isParsed(cast.getType()) || isParsed(cast.source.getType()) || isExpensive(cast.source);
+        DBSPUnaryExpression unary = expression.as(DBSPUnaryExpression.class);
+        if (unary != null)
+            return isExpensive(unary.source);
+        DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+        if (binary != null)
+            return isExpensive(binary.left) || isExpensive(binary.right);
+        return false;
+    }
+
+    /** Replaces the expensive constant expressions with references to static items. */
+    static class Hoister extends InnerRewriteVisitor {
+        /** Static items created, indexed by the Rust code of their expression. */
+        final Map<String, DBSPStaticItem> statics;
+        final List<DBSPStaticItem> items;
+
+        Hoister(IErrorReporter reporter) {
+            super(reporter);
+            this.statics = new HashMap<>();
+            this.items = new ArrayList<>();
+        }
+
+        void clear() {
+            this.statics.clear();
+            this.items.clear();
+        }
+
+        /** If the expression should be hoisted replace it with a reference to a static item
+         * and return true. */
+        boolean hoist(DBSPExpression expression) {
+            if (!isConstant(expression) || !isExpensive(expression))
+                return false;
+            String code = ToRustInnerVisitor.toRustString(this.errorReporter, expression, true);
+            DBSPStaticItem item = this.statics.get(code);
+            if (item == null) {
+                item = new DBSPStaticItem("STATIC_" + this.items.size(), expression.getType(), expression);
+                this.statics.put(code, item);
+                this.items.add(item);
+            }
+            DBSPExpression value = item.getValue();
+            // Compiled patterns are only used by reference
+            if (!item.type.is(DBSPTypeUser.class))
+                value = value.applyCloneIfNeeded();
+            this.map(expression, value);
+            return true;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPDecimalLiteral expression) {
+            if (this.hoist(expression))
+                return VisitDecision.STOP;
+            return super.preorder(expression);
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPCastExpression expression) {
+            if (this.hoist(expression))
+                return VisitDecision.STOP;
+            return super.preorder(expression);
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPUnaryExpression expression) {
+            if (this.hoist(expression))
+                return VisitDecision.STOP;
+            return super.preorder(expression);
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPBinaryExpression expression) {
+            if (this.hoist(expression))
+                return VisitDecision.STOP;
+            return super.preorder(expression);
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPApplyExpression expression) {
+            if (this.hoist(expression))
+                return VisitDecision.STOP;
+            return super.preorder(expression);
+        }
+    }
+
+    @Override
+    public void startVisit(IDBSPOuterNode node) {
+        this.getHoister().clear();
+        super.startVisit(node);
+    }
+
+    @Override
+    public void postorder(DBSPDeclaration decl) {
+        this.getResult().addDeclaration(decl);
+    }
+
+    @Override
+    public void endVisit() {
+        for (DBSPStaticItem item: this.getHoister().items)
+            this.getResult().addDeclaration(new DBSPDeclaration(item));
+        super.endVisit();
+    }
+}
@@ -1,19 +1,32 @@
 package org.dbsp.sqlCompiler.compiler.visitors.outer;
 
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPApply2Operator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPApplyOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPControlledFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPUnaryOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowAggregateOperator;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
 import org.dbsp.sqlCompiler.compiler.InputColumnMetadata;
 import org.dbsp.sqlCompiler.compiler.errors.CompilationError;
+import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.monotone.IMaybeMonotoneType;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.monotone.MonotoneExpression;
 import org.dbsp.sqlCompiler.compiler.visitors.inner.monotone.PartiallyMonotoneTuple;
@@ -24,9 +37,12 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeBool;
 import org.dbsp.sqlCompiler.ir.type.IsNumericType;
 import org.dbsp.util.Linq;
 import org.dbsp.util.Logger;
@@ -35,13 +51,16 @@ import org.dbsp.util.Utilities;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /** As a result of the Monotonicity analysis, this pass inserts ControlledFilter
  * operators to throw away tuples that are not "useful", and some apply
  * operators that compute the bounds that drive the controlled filters.
- * It also inserts waterline operators near sources with lateness information. */
+ * It also inserts waterline operators near sources with lateness information,
+ * including sources with a primary key. */
 public class InsertLimiters extends CircuitCloneVisitor {
     /** For each operator in the expansion of the operators of this circuit
      * the list of its monotone output columns */
@@ -54,6 +73,12 @@ public class InsertLimiters extends CircuitCloneVisitor {
      * The keys in this map can be both operators from this circuit and from
      * the expanded circuit. */
     public final Map<DBSPOperator, DBSPOperator> bound;
+    /** For each stream whose integral is pruned, the operators that prune its keys.
+     * The runtime keeps a single key filter for each trace, so these
+     * are merged into one operator before being added to the circuit. */
+    final Map<DBSPOperator, List<DBSPOperator>> retainKeys;
+    /** Same as retainKeys, for the operators that prune the values. */
+    final Map<DBSPOperator, List<DBSPOperator>> retainValues;
 
     // Used only for debugging; should normally be 'true'.
     static final boolean useControlledFilters = true;
@@ -67,6 +92,8 @@ public class InsertLimiters extends CircuitCloneVisitor {
         this.expansionMonotoneValues = expansionMonotoneValues;
         this.expandedInto = expandedInto;
         this.bound = new HashMap<>();
+        this.retainKeys = new LinkedHashMap<>();
+        this.retainValues = new LinkedHashMap<>();
     }
 
     /**
@@ -108,6 +135,23 @@ public class InsertLimiters extends CircuitCloneVisitor {
         super.postorder(operator);
     }
 
+    @Override
+    public void postorder(DBSPMapIndexOperator operator) {
+        // Used for the inputs of window aggregates
+        if (this.bound.containsKey(operator.input()))
+            this.addBounds(operator, 0);
+        super.postorder(operator);
+    }
+
+    @Override
+    public void postorder(DBSPDifferentiateOperator operator) {
+        // The changes of a collection have the same bound as the collection
+        DBSPOperator inputBound = this.bound.get(operator.input());
+        if (inputBound != null && this.expansionMonotoneValues.containsKey(operator))
+            Utilities.putNew(this.bound, operator, inputBound);
+        super.postorder(operator);
+    }
+
     @Override
     public void postorder(DBSPAggregateOperator aggregator) {
         DBSPOperator source = this.mapped(aggregator.input());
@@ -156,12 +200,12 @@ public class InsertLimiters extends CircuitCloneVisitor {
             // The before and after filters are actually identical for now.
             DBSPIntegrateTraceRetainKeysOperator before = DBSPIntegrateTraceRetainKeysOperator.create(
                     aggregator.getNode(), source, projection2, limiter2);
-            this.addOperator(before);
+            this.addRetain(before);
             // output of 'before' is never used
 
             DBSPIntegrateTraceRetainKeysOperator after = DBSPIntegrateTraceRetainKeysOperator.create(
                     aggregator.getNode(), filteredAggregator, projection2, limiter2);
-            this.addOperator(after);
+            this.addRetain(after);
             // output of 'after'' is never used
 
             this.map(aggregator, filteredAggregator, false);
@@ -195,7 +239,12 @@ public class InsertLimiters extends CircuitCloneVisitor {
             if (leftProjection.to(PartiallyMonotoneTuple.class).getField(0).mayBeMonotone()) {
                 DBSPIntegrateTraceRetainKeysOperator r = DBSPIntegrateTraceRetainKeysOperator.create(
                         join.getNode(), right, leftProjection, leftLimiter);
-                this.addOperator(r);
+                this.addRetain(r);
+            } else if (leftProjection.to(PartiallyMonotoneTuple.class).getField(1).mayBeMonotone()) {
+                // Only the value is monotone: prune the old values of the left input itself.
+                DBSPIntegrateTraceRetainValuesOperator l = DBSPIntegrateTraceRetainValuesOperator.create(
+                        join.getNode(), left, leftProjection, leftLimiter);
+                this.addRetain(l);
             }
         }
 
@@ -207,13 +256,179 @@ public class InsertLimiters extends CircuitCloneVisitor {
             if (rightProjection.to(PartiallyMonotoneTuple.class).getField(0).mayBeMonotone()) {
                 DBSPIntegrateTraceRetainKeysOperator l = DBSPIntegrateTraceRetainKeysOperator.create(
                         join.getNode(), left, rightProjection, rightLimiter);
-                this.addOperator(l);
+                this.addRetain(l);
+            } else if (rightProjection.to(PartiallyMonotoneTuple.class).getField(1).mayBeMonotone()) {
+                DBSPIntegrateTraceRetainValuesOperator r = DBSPIntegrateTraceRetainValuesOperator.create(
+                        join.getNode(), right, rightProjection, rightLimiter);
+                this.addRetain(r);
             }
         }
 
         this.map(join, result, true);
     }
 
+    /** Record an operator which prunes the integral of its data input;
+     * it is added to the circuit when the whole circuit has been visited. */
+    void addRetain(DBSPOperator retain) {
+        Map<DBSPOperator, List<DBSPOperator>> map =
+                retain.is(DBSPIntegrateTraceRetainKeysOperator.class) ? this.retainKeys : this.retainValues;
+        map.computeIfAbsent(retain.inputs.get(0), k -> new ArrayList<>()).add(retain);
+        retain.setDerivedFrom(this.getCurrent().getId());
+    }
+
+    /** Merge two operators which prune the same integral.
+     * A row is retained if either filter retains it, so the
+     * result uses the looser of the two bounds.  The control input
+     * of the result is the pair of the two bounds. */
+    DBSPOperator mergeRetain(DBSPOperator left, DBSPOperator right) {
+        DBSPOperator leftControl = left.inputs.get(1);
+        DBSPOperator rightControl = right.inputs.get(1);
+        DBSPVariablePath l = new DBSPVariablePath("l", leftControl.getType().ref());
+        DBSPVariablePath r = new DBSPVariablePath("r", rightControl.getType().ref());
+        DBSPTupleExpression pair = new DBSPTupleExpression(
+                l.deref().applyClone(), r.deref().applyClone());
+        DBSPOperator control = new DBSPApply2Operator(left.getNode(),
+                pair.closure(l.asParameter(), r.asParameter()), pair.getType(), leftControl, rightControl);
+        control.setDerivedFrom(left.derivedFrom);
+        this.getResult().addOperator(control);
+
+        DBSPClosureExpression leftFunction = left.getFunction().to(DBSPClosureExpression.class);
+        DBSPClosureExpression rightFunction = right.getFunction().to(DBSPClosureExpression.class);
+        DBSPVariablePath d = new DBSPVariablePath("d", leftFunction.parameters[0].getType());
+        DBSPVariablePath bounds = new DBSPVariablePath("bounds", pair.getType().ref());
+        DBSPExpression retained = new DBSPBinaryExpression(left.getNode(),
+                new DBSPTypeBool(CalciteObject.EMPTY, false), DBSPOpcode.OR,
+                leftFunction.call(d, bounds.deref().field(0).borrow()),
+                rightFunction.call(d.deepCopy(), bounds.deref().field(1).borrow()));
+        DBSPClosureExpression function = retained.closure(d.asParameter(), bounds.asParameter());
+        DBSPOperator result = left.withFunction(function, left.outputType)
+                .withInputs(Linq.list(left.inputs.get(0), control), false);
+        result.setDerivedFrom(left.derivedFrom);
+        return result;
+    }
+
+    /** Add to the circuit a single pruning operator for each integral. */
+    void emitRetains(Map<DBSPOperator, List<DBSPOperator>> retains) {
+        for (List<DBSPOperator> list: retains.values()) {
+            DBSPOperator result = list.get(0);
+            for (int i = 1; i < list.size(); i++)
+                result = this.mergeRetain(result, list.get(i));
+            this.getResult().addOperator(result);
+        }
+        retains.clear();
+    }
+
+    @Override
+    public VisitDecision preorder(DBSPPartialCircuit circuit) {
+        VisitDecision decision = super.preorder(circuit);
+        this.emitRetains(this.retainKeys);
+        this.emitRetains(this.retainValues);
+        return decision;
+    }
+
+    /** Handles operators which keep the integral of their input, and which
+     * only produce outputs for the keys (partitions) of their input that change:
+     * TopK, LAG, and window aggregates.  If the keys of the input are monotone,
+     * no more changes can arrive for the keys below the lower bound of the input,
+     * so their history is discarded from the integral.
+     * The values within a partition cannot be discarded for TopK and LAG,
+     * even if the ORDER BY column is monotone: a new row may need
+     * arbitrarily old rows of its partition to compute its result. */
+    void retainInputKeys(DBSPUnaryOperator operator) {
+        DBSPOperator input = operator.input();
+        MonotoneExpression inputMonotone = this.expansionMonotoneValues.get(input);
+        DBSPOperator inputBound = this.bound.get(input);
+        if (inputMonotone == null || inputBound == null)
+            return;
+
+        IMaybeMonotoneType projection = Monotonicity.getBodyType(inputMonotone);
+        // Check if the "key" field is monotone
+        if (projection.to(PartiallyMonotoneTuple.class).getField(0).mayBeMonotone()) {
+            DBSPIntegrateTraceRetainKeysOperator retain = DBSPIntegrateTraceRetainKeysOperator.create(
+                    operator.getNode(), this.mapped(input), projection, inputBound);
+            this.addRetain(retain);
+            // output of 'retain' is never used
+        }
+    }
+
+    @Override
+    public void postorder(DBSPIndexedTopKOperator operator) {
+        this.retainInputKeys(operator);
+        this.replace(operator);
+        // Bound for the consumers of the operator, if its output is monotone
+        this.addBounds(operator, 0);
+    }
+
+    @Override
+    public void postorder(DBSPLagOperator operator) {
+        this.retainInputKeys(operator);
+        this.replace(operator);
+        this.addBounds(operator, 0);
+    }
+
+    /** The input of a window aggregate is indexed by partition, and its values
+     * are pairs (ORDER BY column, row).  If the ORDER BY column is monotone,
+     * returns an operator which computes its lower bound; the window aggregate
+     * uses it as a waterline to discard the rows that can no longer
+     * be part of the window of a new row. */
+    @Nullable
+    DBSPOperator orderWaterline(DBSPWindowAggregateOperator operator) {
+        DBSPOperator input = operator.input();
+        MonotoneExpression inputMonotone = this.expansionMonotoneValues.get(input);
+        DBSPOperator inputBound = this.bound.get(input);
+        if (inputMonotone == null || inputBound == null)
+            return null;
+
+        PartiallyMonotoneTuple projection = Monotonicity.getBodyType(inputMonotone)
+                .to(PartiallyMonotoneTuple.class);
+        IMaybeMonotoneType value = projection.getField(1);
+        if (!value.mayBeMonotone() || !value.is(PartiallyMonotoneTuple.class))
+            return null;
+        PartiallyMonotoneTuple orderAndRow = value.to(PartiallyMonotoneTuple.class);
+        if (!orderAndRow.getField(0).mayBeMonotone())
+            return null;
+
+        // The bound only contains the monotone fields of the projection
+        DBSPVariablePath var = new DBSPVariablePath("b", inputBound.getType().ref());
+        DBSPExpression order = var.deref()
+                .field(projection.compressedIndex(1))
+                .field(orderAndRow.compressedIndex(0));
+        DBSPClosureExpression function = order.closure(var.asParameter());
+        DBSPOperator waterline = new DBSPApplyOperator(
+                operator.getNode(), function, operator.getOrderType(), inputBound);
+        this.addOperator(waterline);
+        return waterline;
+    }
+
+    @Override
+    public void postorder(DBSPWindowAggregateOperator operator) {
+        this.retainInputKeys(operator);
+        DBSPOperator waterline = this.orderWaterline(operator);
+        if (waterline == null) {
+            this.replace(operator);
+            return;
+        }
+        DBSPOperator result = operator.withWaterline(this.mapped(operator.input()), waterline);
+        this.map(operator, result);
+    }
+
+    /** Expression computing the smallest legal value of a column with lateness.
+     * @param field  Value of the column in a row. */
+    static DBSPExpression lowerBound(InputColumnMetadata column, DBSPExpression field) {
+        Objects.requireNonNull(column.lateness);
+        DBSPType type = field.getType();
+        if (!type.is(IsNumericType.class)) {
+            throw new CompilationError("Column " + column.name + " has a type " + type +
+                    " which does not support lateness", column.getNode());
+        }
+        return new DBSPBinaryExpression(column.getNode(), type, DBSPOpcode.SUB, field, column.lateness);
+    }
+
+    /** Initial value of the waterline for a column with lateness. */
+    static DBSPExpression zero(InputColumnMetadata column) {
+        return column.type.to(IsNumericType.class).getZero();
+    }
+
     @Override
     public void postorder(DBSPSourceMultisetOperator operator) {
         MonotoneExpression expression = this.expansionMonotoneValues.get(operator);
@@ -227,17 +442,8 @@ public class InsertLimiters extends CircuitCloneVisitor {
         DBSPVariablePath t = new DBSPVariablePath("t", operator.getOutputZSetType().elementType.ref());
         for (InputColumnMetadata column: operator.metadata.getColumns()) {
             if (column.lateness != null) {
-                DBSPExpression field = t.deref().field(index);
-                DBSPType type = field.getType();
-                field = new DBSPBinaryExpression(operator.getNode(), field.getType(),
-                        DBSPOpcode.SUB, field, column.lateness);
-                minimums.add(field);
-                if (!type.is(IsNumericType.class)) {
-                    throw new CompilationError("Column " + column.name + " has a type " + type +
-                            " which does not support lateness", column.getNode());
-                }
-                DBSPExpression zero = type.to(IsNumericType.class).getZero();
-                zeros.add(zero);
+                minimums.add(lowerBound(column, t.deref().field(index)));
+                zeros.add(zero(column));
             }
             index++;
         }
@@ -268,4 +474,70 @@ public class InsertLimiters extends CircuitCloneVisitor {
             this.map(operator, operator, false);
         }
     }
+
+    @Override
+    public void postorder(DBSPSourceMapOperator operator) {
+        MonotoneExpression expression = this.expansionMonotoneValues.get(operator);
+        if (expression == null) {
+            super.postorder(operator);
+            return;
+        }
+        // The monotone values of an indexed input are a pair (key, value),
+        // where each component contains the columns with lateness; the key
+        // only contains the primary key columns, and is missing if none of them
+        // has lateness.  The waterline has the same shape.
+        List<DBSPExpression> keyMinimums = new ArrayList<>();
+        List<DBSPExpression> keyZeros = new ArrayList<>();
+        List<DBSPExpression> minimums = new ArrayList<>();
+        List<DBSPExpression> zeros = new ArrayList<>();
+        int index = 0;
+        DBSPTypeTuple rowType = operator.getOutputIndexedZSetType().elementType.to(DBSPTypeTuple.class);
+        DBSPVariablePath t = new DBSPVariablePath("t", rowType.ref());
+        for (InputColumnMetadata column: operator.metadata.getColumns()) {
+            if (column.lateness != null) {
+                DBSPExpression min = lowerBound(column, t.deref().field(index));
+                DBSPExpression zero = zero(column);
+                if (column.isPrimaryKey) {
+                    keyMinimums.add(min);
+                    keyZeros.add(zero.deepCopy());
+                }
+                minimums.add(min.deepCopy());
+                zeros.add(zero);
+            }
+            index++;
+        }
+        if (zeros.isEmpty()) {
+            this.replace(operator);
+            return;
+        }
+
+        List<DBSPExpression> min = new ArrayList<>();
+        List<DBSPExpression> zero = new ArrayList<>();
+        if (!keyZeros.isEmpty()) {
+            min.add(new DBSPTupleExpression(keyMinimums, false));
+            zero.add(new DBSPTupleExpression(keyZeros, false));
+        }
+        min.add(new DBSPTupleExpression(minimums, false));
+        zero.add(new DBSPTupleExpression(zeros, false));
+        DBSPRawTupleExpression minimum = new DBSPRawTupleExpression(min);
+
+        // The waterline is computed on the rows of the table, exactly as
+        // for a table without a primary key.
+        this.addOperator(operator);
+        DBSPDeindexOperator rows = new DBSPDeindexOperator(operator.getNode(), operator);
+        this.addOperator(rows);
+        DBSPWaterlineOperator waterline = new DBSPWaterlineOperator(
+                operator.getNode(), new DBSPRawTupleExpression(zero).closure(),
+                minimum.closure(t.asParameter()), minimum.getType(), rows);
+        this.addOperator(waterline);
+        Utilities.putNew(this.bound, operator, waterline);
+
+        if (useControlledFilters) {
+            DBSPControlledFilterOperator filter = DBSPControlledFilterOperator.create(
+                    operator.getNode(), operator, Monotonicity.getBodyType(expression), waterline);
+            this.map(operator, filter);
+        } else {
+            this.map(operator, operator, false);
+        }
+    }
 }
@@ -6,7 +6,10 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexedTopKOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPLagOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPNoopOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
@@ -128,8 +131,9 @@ public class Monotonicity extends CircuitVisitor {
         }
         IMaybeMonotoneType keyProjection = new PartiallyMonotoneTuple(keyColumns, false);
         IMaybeMonotoneType valueProjection = new PartiallyMonotoneTuple(valueColumns, false);
+        // Functions over IndexedZSets take a pair of references as a parameter
         IMaybeMonotoneType pairProjection = new PartiallyMonotoneTuple(
-                Linq.list(keyProjection, valueProjection), false);
+                Linq.list(keyProjection, valueProjection), true);
         MonotoneExpression result = this.identity(node, pairProjection, true);
         this.set(node, result);
     }
@@ -143,6 +147,26 @@ public class Monotonicity extends CircuitVisitor {
         this.set(node, output);
     }
 
+    /** Monotonicity of an operator over IndexedZSets which produces
+     * outputs with the same keys as its input, but with different values.
+     * Only the monotonicity of the keys is preserved. */
+    void keyIdentity(DBSPUnaryOperator node) {
+        MonotoneExpression input = this.getMonotoneExpression(node.input());
+        if (input == null)
+            return;
+        PartiallyMonotoneTuple tuple = getBodyType(input).to(PartiallyMonotoneTuple.class);
+        IMaybeMonotoneType key = tuple.getField(0);
+        if (!key.mayBeMonotone())
+            return;
+        DBSPTypeIndexedZSet ix = node.getOutputIndexedZSetType();
+        assert key.getType().sameType(ix.keyType) :
+                "Types differ " + key.getType() + " and " + ix.keyType;
+        IMaybeMonotoneType projection = new PartiallyMonotoneTuple(
+                Linq.list(key, new NonMonotoneType(ix.elementType)), true);
+        MonotoneExpression output = this.identity(node, projection, true);
+        this.set(node, output);
+    }
+
     /** Given an expression that is expected to represent a closure,
      * get the monotonicity information of its body. */
     static IMaybeMonotoneType getBodyType(MonotoneExpression expression) {
@@ -179,6 +203,20 @@ public class Monotonicity extends CircuitVisitor {
         this.set(node, result);
     }
 
+    @Override
+    public void postorder(DBSPMapIndexOperator node) {
+        MonotoneExpression inputFunction = this.getMonotoneExpression(node.input());
+        if (inputFunction == null)
+            return;
+        boolean pairOfReferences = node.input().getType().is(DBSPTypeIndexedZSet.class);
+        MonotoneTransferFunctions mm = new MonotoneTransferFunctions(
+                this.errorReporter, node, getBodyType(inputFunction), pairOfReferences);
+        MonotoneExpression result = mm.applyAnalysis(node.getFunction());
+        if (result == null)
+            return;
+        this.set(node, result);
+    }
+
     @Override
     public void postorder(DBSPDeindexOperator node) {
         MonotoneExpression inputFunction = this.getMonotoneExpression(node.input());
@@ -223,8 +261,9 @@ public class Monotonicity extends CircuitVisitor {
 
     @Override
     public void postorder(DBSPUpsertFeedbackOperator node) {
-        // TODO
-        // this.identity(node);
+        // The retractions produced for the pre-existing keys carry old values,
+        // which may be below the current bound; the keys are unchanged.
+        this.keyIdentity(node);
     }
 
     @Override
@@ -232,6 +271,19 @@ public class Monotonicity extends CircuitVisitor {
         this.identity(node);
     }
 
+    @Override
+    public void postorder(DBSPIndexedTopKOperator node) {
+        // Only the key is monotone, even when the output rows are input rows:
+        // an input row can evict an old row from the TopK set, which
+        // retracts an output row that may be below the waterline.
+        this.keyIdentity(node);
+    }
+
+    @Override
+    public void postorder(DBSPLagOperator node) {
+        this.keyIdentity(node);
+    }
+
     @Override
     public void postorder(DBSPPrimitiveAggregateOperator node) {
         // Input type is IndexedZSet<key, tuple>
@@ -169,10 +169,17 @@ public class OptimizeIncrementalVisitor extends CircuitCloneVisitor {
 
     @Override
     public void postorder(DBSPConstantOperator operator) {
-        this.addOperator(operator);
-        DBSPDifferentiateOperator diff = new DBSPDifferentiateOperator(operator.getNode(), operator);
-        this.addOperator(diff);
-        DBSPIntegrateOperator integral = new DBSPIntegrateOperator(operator.getNode(), diff);
+        if (operator.incremental) {
+            super.postorder(operator);
+            return;
+        }
+        // The derivative of a constant is the value in the first step and
+        // empty afterwards; this avoids producing and differentiating the
+        // value in every step.
+        DBSPConstantOperator delta = new DBSPConstantOperator(
+                operator.getNode(), operator.getFunction(), true, operator.isMultiset);
+        this.addOperator(delta);
+        DBSPIntegrateOperator integral = new DBSPIntegrateOperator(operator.getNode(), delta);
         this.map(operator, integral);
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+
+/**
+ * Pushes filters below joins and narrows the indexes feeding joins
+ * until convergence is achieved.
+ */
+public class OptimizeJoinInputs extends Repeat {
+    static CircuitTransform createOnePass(IErrorReporter reporter) {
+        Passes result = new Passes(reporter);
+        FanoutVisitor fanout = new FanoutVisitor(reporter);
+        result.add(fanout);
+        result.add(new OptimizeJoinInputsVisitor(reporter,
+                // Do not modify joins or indexes with fanout > 1
+                op -> fanout.getFanout(op) == 1));
+        result.add(new DeadCode(reporter, true, false));
+        // Filters moved below joins may expose projections that can be merged into the join
+        result.add(OptimizeProjections.createOnePass(reporter));
+        return result;
+    }
+
+    public OptimizeJoinInputs(IErrorReporter reporter) {
+        super(reporter, createOnePass(reporter));
+    }
+}
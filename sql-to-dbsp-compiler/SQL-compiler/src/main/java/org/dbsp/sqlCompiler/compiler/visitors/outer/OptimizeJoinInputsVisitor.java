@@ -0,0 +1,399 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.frontend.ExpressionCompiler;
+import org.dbsp.sqlCompiler.compiler.frontend.TypeCompiler;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.InnerVisitor;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.RemapFields;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBinaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBorrowExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCastExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPCloneExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPDerefExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPFieldExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPIsNullExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPOpcode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPSomeExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPUnaryExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeBool;
+import org.dbsp.util.Linq;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Optimizes the inputs of joins whose inputs are DBSPIndexOperators.
+ * You probably don't want to use this visitor directly, consider using
+ * OptimizeJoinInputs, which iterates until convergence.
+ * - Conjuncts of a filter applied to the output of a join which only refer
+ *   to the columns of one join input are moved before the index of that input.
+ *   Only conjuncts which cannot fail at runtime are moved, since the moved
+ *   conjuncts are also evaluated on rows that have no match in the join.
+ * - The values produced by an index are narrowed to the columns that the
+ *   join function actually reads.
+ * An index is only modified if the join is its only consumer.
+ * Outer joins are compiled into an inner join, optionally followed by a filter
+ * for the non-equality conditions, and separate operators which compute
+ * the null-padded rows from the unfiltered join inputs.  Both rewrites
+ * above preserve the result of the inner join, so the null-padded rows are
+ * unchanged, even for conditions that refer to the padded side. */
+public class OptimizeJoinInputsVisitor extends CircuitCloneVisitor {
+    /** If this function returns 'true' the operator can be optimized. */
+    protected final Function<DBSPOperator, Boolean> canOptimize;
+
+    public OptimizeJoinInputsVisitor(IErrorReporter reporter, Function<DBSPOperator, Boolean> canOptimize) {
+        super(reporter, false);
+        this.canOptimize = canOptimize;
+    }
+
+    static boolean isJoin(DBSPOperator operator) {
+        return operator.is(DBSPJoinOperator.class) || operator.is(DBSPStreamJoinOperator.class);
+    }
+
+    /** Value part of the function of an index operator if it is a tuple. */
+    @Nullable
+    static DBSPTupleExpression indexValue(DBSPIndexOperator index) {
+        DBSPClosureExpression function = index.getFunction().to(DBSPClosureExpression.class);
+        DBSPRawTupleExpression body = function.body.as(DBSPRawTupleExpression.class);
+        if (body == null || body.size() != 2)
+            return null;
+        return body.fields[1].as(DBSPTupleExpression.class);
+    }
+
+    /** The index operator which is input 'input' of 'join', if it can be
+     * modified.  'original' is the original join, 'join' is its replacement. */
+    @Nullable
+    DBSPIndexOperator modifiableIndex(DBSPOperator original, DBSPOperator join, int input) {
+        if (!this.canOptimize.apply(original.inputs.get(input)))
+            return null;
+        return join.inputs.get(input).as(DBSPIndexOperator.class);
+    }
+
+    /** Decompose a condition into conjuncts.  The conjuncts are not wrapped into
+     * wrap_bool; wrap_bool(a && b) is the same as wrap_bool(a) && wrap_bool(b). */
+    static void conjuncts(DBSPExpression expression, List<DBSPExpression> result) {
+        DBSPUnaryExpression unary = expression.as(DBSPUnaryExpression.class);
+        if (unary != null && unary.operation == DBSPOpcode.WRAP_BOOL) {
+            conjuncts(unary.source, result);
+            return;
+        }
+        DBSPBinaryExpression binary = expression.as(DBSPBinaryExpression.class);
+        if (binary != null && binary.operation == DBSPOpcode.AND) {
+            conjuncts(binary.left, result);
+            conjuncts(binary.right, result);
+            return;
+        }
+        result.add(expression);
+    }
+
+    /** Conjunction of a list of non-empty conditions, as a closure with the specified parameter. */
+    static DBSPClosureExpression conjunction(List<DBSPExpression> conditions, DBSPParameter parameter) {
+        DBSPExpression result = null;
+        for (DBSPExpression condition: conditions) {
+            DBSPExpression wrapped = ExpressionCompiler.wrapBoolIfNeeded(condition);
+            if (result == null)
+                result = wrapped;
+            else
+                result = new DBSPBinaryExpression(wrapped.getNode(),
+                        new DBSPTypeBool(wrapped.getNode(), false), DBSPOpcode.AND, result, wrapped);
+        }
+        assert result != null;
+        return result.closure(new DBSPParameter(parameter.name, parameter.type));
+    }
+
+    /** Checks whether an expression is built only from operations which
+     * cannot panic at runtime.  A conservative approximation: arithmetic,
+     * function calls and most casts may fail (overflow, division by zero,
+     * invalid conversions). */
+    static class CannotFail extends InnerVisitor {
+        static final Set<DBSPOpcode> SAFE_OPCODES = EnumSet.of(
+                DBSPOpcode.WRAP_BOOL, DBSPOpcode.NOT, DBSPOpcode.INDICATOR,
+                DBSPOpcode.IS_FALSE, DBSPOpcode.IS_TRUE, DBSPOpcode.IS_NOT_TRUE, DBSPOpcode.IS_NOT_FALSE,
+                DBSPOpcode.EQ, DBSPOpcode.NEQ, DBSPOpcode.LT, DBSPOpcode.GT, DBSPOpcode.LTE, DBSPOpcode.GTE,
+                DBSPOpcode.AND, DBSPOpcode.OR, DBSPOpcode.IS_DISTINCT, DBSPOpcode.IS_NOT_DISTINCT,
+                DBSPOpcode.MAX, DBSPOpcode.MIN);
+        boolean cannotFail;
+
+        CannotFail(IErrorReporter reporter) {
+            super(reporter);
+            this.cannotFail = true;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPExpression expression) {
+            // Any other expression may fail.
+            this.cannotFail = false;
+            return VisitDecision.STOP;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPUnaryExpression expression) {
+            if (!SAFE_OPCODES.contains(expression.operation))
+                return this.preorder(expression.to(DBSPExpression.class));
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPBinaryExpression expression) {
+            if (!SAFE_OPCODES.contains(expression.operation))
+                return this.preorder(expression.to(DBSPExpression.class));
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPCastExpression expression) {
+            // Only casts which make a value nullable cannot fail.
+            if (!expression.getType().sameType(expression.source.getType().setMayBeNull(true)))
+                return this.preorder(expression.to(DBSPExpression.class));
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPIsNullExpression expression) {
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPSomeExpression expression) {
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPFieldExpression expression) {
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPDerefExpression expression) {
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPBorrowExpression expression) {
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPCloneExpression expression) {
+            return VisitDecision.CONTINUE;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPVariablePath expression) {
+            return VisitDecision.STOP;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPLiteral expression) {
+            return VisitDecision.STOP;
+        }
+    }
+
+    /** True if evaluating 'expression' cannot panic. */
+    boolean cannotFail(DBSPExpression expression) {
+        CannotFail visitor = new CannotFail(this.errorReporter);
+        visitor.traverse(expression);
+        return visitor.cannotFail;
+    }
+
+    @Override
+    public void postorder(DBSPFilterOperator operator) {
+        DBSPOperator join = this.mapped(operator.input());
+        if (!isJoin(join) || !this.canOptimize.apply(operator.input())) {
+            super.postorder(operator);
+            return;
+        }
+
+        DBSPClosureExpression joinFunction = join.getFunction().to(DBSPClosureExpression.class);
+        DBSPTupleExpression row = joinFunction.body.as(DBSPTupleExpression.class);
+        DBSPClosureExpression predicate = operator.getFunction().to(DBSPClosureExpression.class);
+        if (row == null) {
+            super.postorder(operator);
+            return;
+        }
+
+        // Conditions pushed to each side, expressed over the rows of the index inputs
+        List<List<DBSPExpression>> pushed = new ArrayList<>();
+        List<DBSPIndexOperator> indexes = new ArrayList<>();
+        for (int side = 0; side < 2; side++) {
+            pushed.add(new ArrayList<>());
+            indexes.add(this.modifiableIndex(operator.input(), join, side));
+        }
+        List<DBSPExpression> remaining = new ArrayList<>();
+        List<DBSPExpression> conjuncts = new ArrayList<>();
+        conjuncts(predicate.body, conjuncts);
+        for (DBSPExpression conjunct: conjuncts) {
+            // A conjunct that can fail must not be evaluated on rows that the join drops.
+            if (!this.cannotFail(conjunct) ||
+                    !this.pushCondition(conjunct, predicate.parameters[0], row, joinFunction, indexes, pushed))
+                remaining.add(conjunct);
+        }
+        if (pushed.get(0).isEmpty() && pushed.get(1).isEmpty()) {
+            super.postorder(operator);
+            return;
+        }
+
+        List<DBSPOperator> inputs = new ArrayList<>(join.inputs);
+        for (int side = 0; side < 2; side++) {
+            List<DBSPExpression> conditions = pushed.get(side);
+            if (conditions.isEmpty())
+                continue;
+            DBSPIndexOperator index = indexes.get(side);
+            assert index != null;
+            DBSPClosureExpression indexFunction = index.getFunction().to(DBSPClosureExpression.class);
+            DBSPOperator filter = new DBSPFilterOperator(operator.getNode(),
+                    conjunction(conditions, indexFunction.parameters[0]), index.input());
+            this.addOperator(filter);
+            DBSPOperator newIndex = index.withInputs(Linq.list(filter), false);
+            this.addOperator(newIndex);
+            inputs.set(side, newIndex);
+        }
+        DBSPOperator result = join.withInputs(inputs, false);
+        if (!remaining.isEmpty()) {
+            this.addOperator(result);
+            result = new DBSPFilterOperator(operator.getNode(),
+                    conjunction(remaining, predicate.parameters[0]), result);
+        }
+        this.map(operator, result);
+    }
+
+    /** Try to express a condition on the output of a join as a condition on
+     * the rows of one of the index inputs of the join.  If successful,
+     * add the result to the list for the corresponding input and return 'true'. */
+    boolean pushCondition(
+            DBSPExpression condition, DBSPParameter rowParameter, DBSPTupleExpression row,
+            DBSPClosureExpression joinFunction, List<DBSPIndexOperator> indexes,
+            List<List<DBSPExpression>> pushed) {
+        // Express the condition in terms of the parameters of the join function
+        DBSPExpression onJoin = new RemapFields(this.errorReporter, rowParameter,
+                f -> f < row.size() ? row.fields[f] : null).rewrite(condition);
+        if (onJoin == null)
+            return false;
+        int side = -1;
+        for (int p = 0; p < joinFunction.parameters.length; p++) {
+            Set<Integer> used = RemapFields.usedFields(this.errorReporter, onJoin, joinFunction.parameters[p]);
+            if (used == null)
+                return false;
+            if (used.isEmpty())
+                continue;
+            if (p == 0 || side >= 0)
+                // Uses the key or both inputs
+                return false;
+            side = p - 1;
+        }
+        if (side < 0)
+            return false;
+        DBSPIndexOperator index = indexes.get(side);
+        if (index == null)
+            return false;
+        DBSPTupleExpression value = indexValue(index);
+        if (value == null)
+            return false;
+        DBSPExpression result = new RemapFields(this.errorReporter, joinFunction.parameters[side + 1],
+                f -> f < value.size() ? value.fields[f] : null).rewrite(onJoin);
+        if (result == null)
+            return false;
+        pushed.get(side).add(result);
+        return true;
+    }
+
+    /** Narrow the values of the index inputs to the columns used by the join function. */
+    void narrowInputs(DBSPOperator operator) {
+        DBSPClosureExpression function = operator.getFunction().to(DBSPClosureExpression.class);
+        List<DBSPOperator> inputs = Linq.map(operator.inputs, this::mapped);
+        DBSPParameter[] parameters = function.parameters.clone();
+        DBSPExpression body = function.body;
+        boolean changed = false;
+        for (int side = 0; side < 2; side++) {
+            if (!this.canOptimize.apply(operator.inputs.get(side)))
+                continue;
+            DBSPIndexOperator index = inputs.get(side).as(DBSPIndexOperator.class);
+            if (index == null)
+                continue;
+            DBSPTupleExpression value = indexValue(index);
+            DBSPParameter parameter = parameters[side + 1];
+            Set<Integer> used = RemapFields.usedFields(this.errorReporter, body, parameter);
+            if (value == null || used == null || used.isEmpty() || used.size() == value.size())
+                continue;
+
+            List<Integer> kept = new ArrayList<>(used);
+            DBSPExpression[] fields = Linq.map(kept, f -> value.fields[f]).toArray(new DBSPExpression[0]);
+            DBSPTupleExpression narrowValue = new DBSPTupleExpression(fields);
+            DBSPClosureExpression indexFunction = index.getFunction().to(DBSPClosureExpression.class);
+            DBSPExpression key = indexFunction.body.to(DBSPRawTupleExpression.class).fields[0];
+            DBSPType keyType = index.getOutputIndexedZSetType().keyType;
+            DBSPIndexOperator narrowIndex = new DBSPIndexOperator(index.getNode(),
+                    new DBSPRawTupleExpression(key, narrowValue).closure(indexFunction.parameters),
+                    TypeCompiler.makeIndexedZSet(keyType, narrowValue.getType()),
+                    index.isMultiset, index.input());
+            this.addOperator(narrowIndex);
+
+            DBSPVariablePath narrowParameter = narrowValue.getType().ref().var(parameter.name);
+            DBSPExpression newBody = new RemapFields(this.errorReporter, parameter,
+                    f -> narrowParameter.deref().field(kept.indexOf(f))).rewrite(body);
+            assert newBody != null;
+            body = newBody;
+            parameters[side + 1] = narrowParameter.asParameter();
+            inputs.set(side, narrowIndex);
+            changed = true;
+        }
+        if (!changed) {
+            this.replace(operator);
+            return;
+        }
+        DBSPOperator result = operator.withInputs(inputs, false)
+                .withFunction(body.closure(parameters), operator.outputType);
+        this.map(operator, result);
+    }
+
+    @Override
+    public void postorder(DBSPJoinOperator operator) {
+        this.narrowInputs(operator);
+    }
+
+    @Override
+    public void postorder(DBSPStreamJoinOperator operator) {
+        this.narrowInputs(operator);
+    }
+}
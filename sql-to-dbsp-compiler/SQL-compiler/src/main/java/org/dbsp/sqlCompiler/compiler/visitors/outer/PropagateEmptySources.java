@@ -1,6 +1,7 @@
 package org.dbsp.sqlCompiler.compiler.visitors.outer;
 
 import org.dbsp.sqlCompiler.circuit.operator.DBSPAggregateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPAntiJoinOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPDistinctOperator;
@@ -193,6 +194,23 @@ public class PropagateEmptySources extends CircuitCloneVisitor {
         super.postorder(operator);
     }
 
+    @Override
+    public void postorder(DBSPAntiJoinOperator operator) {
+        DBSPOperator left = this.mapped(operator.inputs.get(0));
+        DBSPOperator right = this.mapped(operator.inputs.get(1));
+        if (this.emptySources.contains(left)) {
+            DBSPLiteral value = this.emptyLiteral(operator.getType());
+            DBSPConstantOperator result = new DBSPConstantOperator(operator.getNode(), value, operator.isMultiset);
+            this.emptySources.add(result);
+            this.map(operator, result);
+            return;
+        } else if (this.emptySources.contains(right)) {
+            this.map(operator, left, false);
+            return;
+        }
+        super.postorder(operator);
+    }
+
     @Override
     public void postorder(DBSPStreamJoinOperator operator) {
         for (DBSPOperator prev: operator.inputs) {
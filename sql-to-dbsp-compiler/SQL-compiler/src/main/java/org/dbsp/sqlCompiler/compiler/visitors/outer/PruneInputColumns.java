@@ -0,0 +1,259 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNegateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPNoopOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMultisetOperator;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.compiler.frontend.TypeCompiler;
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.RemapFields;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeZSet;
+import org.dbsp.util.Linq;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Removes the columns of input tables which are not used by any view.
+ * A backward liveness analysis computes the columns of each operator output
+ * that are read by its consumers.  A projection on the live columns is inserted
+ * after each table (after the DBSPDeindexOperator for tables with a primary key),
+ * and the operators that consume the narrowed rows are rewritten.
+ * The tables themselves, and thus the program metadata, are unchanged. */
+public class PruneInputColumns extends Passes {
+    public PruneInputColumns(IErrorReporter reporter) {
+        super(reporter);
+        LiveColumns live = new LiveColumns(reporter);
+        super.add(live);
+        super.add(new Prune(reporter, live));
+    }
+
+    /** Unary linear operators that produce their input rows unchanged (or with changed weights).
+     * Distinct is not linear: it needs all columns, since rows that only differ
+     * in a pruned column would be merged before the distinct. */
+    static boolean preservesRows(DBSPOperator operator) {
+        return operator.is(DBSPIntegrateOperator.class) ||
+                operator.is(DBSPDifferentiateOperator.class) ||
+                operator.is(DBSPNegateOperator.class) ||
+                operator.is(DBSPNoopOperator.class);
+    }
+
+    /** Unary operators whose function reads the input rows. */
+    static boolean readsRows(DBSPOperator operator) {
+        return operator.is(DBSPMapOperator.class) ||
+                operator.is(DBSPIndexOperator.class) ||
+                operator.is(DBSPMapIndexOperator.class) ||
+                operator.is(DBSPFilterOperator.class);
+    }
+
+    /** Operators after which the columns are pruned. */
+    static boolean isPruningPoint(DBSPOperator operator) {
+        if (operator.is(DBSPSourceMultisetOperator.class))
+            return true;
+        return operator.is(DBSPDeindexOperator.class) &&
+                operator.inputs.get(0).is(DBSPSourceMapOperator.class);
+    }
+
+    /** Computes the live columns of the outputs of operators which produce ZSets of tuples. */
+    static class LiveColumns extends CircuitVisitor {
+        final List<DBSPOperator> operators;
+        /** Columns demanded by the consumers of each operator.
+         * Missing operators have no consumers. */
+        final Map<DBSPOperator, Set<Integer>> demanded;
+        /** Operators which have all columns used. */
+        final Set<DBSPOperator> allUsed;
+
+        LiveColumns(IErrorReporter reporter) {
+            super(reporter);
+            this.operators = new ArrayList<>();
+            this.demanded = new HashMap<>();
+            this.allUsed = new HashSet<>();
+        }
+
+        /** The live columns of the output of 'operator'; null if all are live. */
+        @Nullable
+        Set<Integer> live(DBSPOperator operator) {
+            if (this.allUsed.contains(operator))
+                return null;
+            return this.demanded.getOrDefault(operator, new TreeSet<>());
+        }
+
+        /** The columns of its input used by 'operator'; null if all are used. */
+        @Nullable
+        Set<Integer> usedByConsumer(DBSPOperator operator) {
+            if (operator.inputs.size() != 1)
+                return null;
+            DBSPOperator input = operator.inputs.get(0);
+            if (!input.outputType.is(DBSPTypeZSet.class) ||
+                    !input.getOutputZSetElementType().is(DBSPTypeTuple.class))
+                return null;
+            if (preservesRows(operator))
+                return this.live(operator);
+            if (!readsRows(operator))
+                return null;
+            DBSPClosureExpression function = operator.getFunction().to(DBSPClosureExpression.class);
+            Set<Integer> used = RemapFields.usedFields(
+                    this.errorReporter, function.body, function.parameters[0]);
+            if (used == null || !operator.is(DBSPFilterOperator.class))
+                return used;
+            Set<Integer> live = this.live(operator);
+            if (live == null)
+                return null;
+            Set<Integer> result = new TreeSet<>(used);
+            result.addAll(live);
+            return result;
+        }
+
+        @Override
+        public VisitDecision preorder(DBSPPartialCircuit circuit) {
+            this.operators.clear();
+            this.demanded.clear();
+            this.allUsed.clear();
+            return super.preorder(circuit);
+        }
+
+        @Override
+        public void postorder(DBSPOperator operator) {
+            this.operators.add(operator);
+        }
+
+        @Override
+        public void postorder(DBSPPartialCircuit circuit) {
+            // Visit consumers before producers
+            for (int i = this.operators.size() - 1; i >= 0; i--) {
+                DBSPOperator operator = this.operators.get(i);
+                Set<Integer> used = this.usedByConsumer(operator);
+                for (DBSPOperator input: operator.inputs) {
+                    if (used == null)
+                        this.allUsed.add(input);
+                    else
+                        this.demanded.computeIfAbsent(input, k -> new TreeSet<>()).addAll(used);
+                }
+            }
+        }
+
+        /** The columns to keep after a pruning point; null if no columns can be removed. */
+        @Nullable
+        List<Integer> kept(DBSPOperator operator) {
+            if (!isPruningPoint(operator))
+                return null;
+            Set<Integer> live = this.live(operator);
+            int width = operator.getOutputZSetElementType().to(DBSPTypeTuple.class).size();
+            if (live == null || live.isEmpty() || live.size() >= width)
+                return null;
+            return new ArrayList<>(live);
+        }
+    }
+
+    /** Inserts the projections and rewrites the operators that consume the narrowed rows. */
+    static class Prune extends CircuitCloneVisitor {
+        final LiveColumns live;
+        /** For each original operator whose output rows have been narrowed,
+         * the columns that have been kept. */
+        final Map<DBSPOperator, List<Integer>> narrowed;
+
+        Prune(IErrorReporter reporter, LiveColumns live) {
+            super(reporter, false);
+            this.live = live;
+            this.narrowed = new HashMap<>();
+        }
+
+        @Override
+        public void replace(DBSPOperator operator) {
+            if (this.visited.contains(operator))
+                return;
+            List<Integer> kept = operator.inputs.size() == 1 ?
+                    this.narrowed.get(operator.inputs.get(0)) : null;
+            if (kept != null) {
+                this.visited.add(operator);
+                this.rewrite(operator, kept);
+                return;
+            }
+            kept = this.live.kept(operator);
+            if (kept == null) {
+                super.replace(operator);
+                return;
+            }
+
+            // Insert a projection after the operator
+            this.visited.add(operator);
+            DBSPOperator result = operator.withInputs(Linq.map(operator.inputs, this::mapped), this.force);
+            this.addOperator(result);
+            DBSPTypeTuple rowType = result.getOutputZSetElementType().to(DBSPTypeTuple.class);
+            DBSPVariablePath t = rowType.ref().var("t");
+            List<DBSPExpression> fields = Linq.map(kept, f -> t.deepCopy().deref().field(f).applyCloneIfNeeded());
+            DBSPTupleExpression projection = new DBSPTupleExpression(fields, false);
+            DBSPMapOperator map = new DBSPMapOperator(operator.getNode(), projection.closure(t.asParameter()),
+                    TypeCompiler.makeZSet(projection.getType()), result);
+            this.map(operator, map);
+            this.narrowed.put(operator, kept);
+        }
+
+        /** Rewrite an operator whose input rows only contain the 'kept' columns. */
+        void rewrite(DBSPOperator operator, List<Integer> kept) {
+            DBSPOperator input = this.mapped(operator.inputs.get(0));
+            DBSPOperator result;
+            if (preservesRows(operator)) {
+                result = operator.withInputs(Linq.list(input), true);
+                this.narrowed.put(operator, kept);
+            } else {
+                DBSPClosureExpression function = operator.getFunction().to(DBSPClosureExpression.class);
+                DBSPParameter parameter = function.parameters[0];
+                DBSPVariablePath row = input.getOutputZSetElementType().ref().var(parameter.name);
+                DBSPExpression body = new RemapFields(this.errorReporter, parameter,
+                        f -> row.deref().field(kept.indexOf(f))).rewrite(function.body);
+                assert body != null;
+                result = operator.withFunction(body.closure(row.asParameter()), operator.outputType)
+                        .withInputs(Linq.list(input), true);
+                if (operator.is(DBSPFilterOperator.class))
+                    this.narrowed.put(operator, kept);
+            }
+            this.map(operator, result);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.visitors.outer;
+
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDeindexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
+import org.dbsp.sqlCompiler.compiler.IErrorReporter;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+
+/**
+ * Tables with a primary key are represented by a DBSPSourceMapOperator,
+ * which is already indexed by the key, followed by a DBSPDeindexOperator
+ * (see IndexedInputs).  When the deindexed data is indexed again on exactly
+ * the primary key columns (e.g., by a join on the primary key), this
+ * visitor uses the indexed source directly, which avoids maintaining a second
+ * arrangement of the table.
+ * Identical index operators applied to the same stream are merged by CSE. */
+public class ReuseSourceIndex extends CircuitCloneVisitor {
+    public ReuseSourceIndex(IErrorReporter reporter) {
+        super(reporter, false);
+    }
+
+    /** The index function that re-creates the source index from a row. */
+    static DBSPClosureExpression sourceIndexFunction(DBSPSourceMapOperator source) {
+        DBSPTypeTuple rowType = source.getOutputIndexedZSetType().elementType.to(DBSPTypeTuple.class);
+        DBSPVariablePath t = rowType.ref().var("t");
+        List<DBSPExpression> keys = Linq.map(source.keyFields,
+                i -> t.deepCopy().deref().field(i).applyCloneIfNeeded());
+        return new DBSPRawTupleExpression(
+                new DBSPTupleExpression(keys, false),
+                DBSPTupleExpression.flatten(t.deref()))
+                .closure(t.asParameter());
+    }
+
+    @Override
+    public void postorder(DBSPIndexOperator operator) {
+        DBSPOperator input = this.mapped(operator.input());
+        DBSPDeindexOperator deindex = input.as(DBSPDeindexOperator.class);
+        if (deindex != null) {
+            DBSPSourceMapOperator source = deindex.input().as(DBSPSourceMapOperator.class);
+            if (source != null &&
+                    !operator.isMultiset &&
+                    source.outputType.sameType(operator.outputType)) {
+                String expected = FindCSE.CanonicalPrinter.print(
+                        this.errorReporter, sourceIndexFunction(source));
+                String actual = FindCSE.CanonicalPrinter.print(
+                        this.errorReporter, operator.getFunction());
+                if (expected.equals(actual)) {
+                    this.map(operator, source, false);
+                    return;
+                }
+            }
+        }
+        super.postorder(operator);
+    }
+}
@@ -25,9 +25,11 @@ import org.dbsp.sqlCompiler.circuit.operator.DBSPWeighOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowAggregateOperator;
 import org.dbsp.sqlCompiler.compiler.IErrorReporter;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.CircuitCloneVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPConstructorExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPPathExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
 import org.dbsp.sqlCompiler.ir.path.DBSPPath;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeAny;
@@ -109,7 +111,7 @@ public class ExpandOperators extends CircuitCloneVisitor {
     public void postorder(DBSPStreamAggregateOperator operator) {
         if (operator.isLinear) {
             DBSPOperator input = this.mapped(operator.input());
-            DBSPExpression function = operator.getAggregate().combineLinear();
+            DBSPClosureExpression function = operator.getAggregate().combineLinear();
             DBSPTypeIndexedZSet ix = input.getOutputIndexedZSetType();
             DBSPVariablePath arg = new DBSPVariablePath("kv",
                     new DBSPTypeTuple(ix.keyType.ref(), ix.elementType.ref()));
@@ -122,9 +124,19 @@ public class ExpandOperators extends CircuitCloneVisitor {
                             DBSPTypeAny.getDefault(),
                             new DBSPPath("WeightedSum")),
                     DBSPTypeAny.getDefault());
+            DBSPTypeIndexedZSet linearType = new DBSPTypeIndexedZSet(
+                    operator.getNode(), ix.keyType, function.getResultType());
             DBSPStreamAggregateOperator result = new DBSPStreamAggregateOperator(operator.getNode(),
-                    operator.getOutputIndexedZSetType(), weightedSum, null, weigh, false);
-            this.map(operator, result);
+                    linearType, weightedSum, null, weigh, false);
+            this.addOperator(result);
+            // Drop the row count and compute the final results
+            DBSPClosureExpression post = operator.getAggregate().getLinearPostprocessing();
+            DBSPVariablePath kv = new DBSPVariablePath("kv", linearType.getKVRefType());
+            DBSPExpression convert = new DBSPRawTupleExpression(
+                    kv.field(0).deref().applyCloneIfNeeded(), post.call(kv.field(1)));
+            DBSPMapIndexOperator postProcess = new DBSPMapIndexOperator(operator.getNode(),
+                    convert.closure(kv.asParameter()), operator.getOutputIndexedZSetType(), result);
+            this.map(operator, postProcess);
             Utilities.putNew(this.expansion, operator, new StreamAggregateExpansion(weigh, result));
         } else {
             this.replace(operator);
@@ -13,6 +13,7 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPRawTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI64Literal;
 import org.dbsp.sqlCompiler.ir.path.DBSPPath;
 import org.dbsp.sqlCompiler.ir.path.DBSPSimplePathSegment;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
@@ -172,7 +173,11 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
      * The linear functions have the signature:
      * '|row| value', where 'row' is always the same variable.
      * The result function will have the signature:
-     * |row| (value0, value1, ...).
+     * |row| (value0, value1, ..., 1).
+     * The last field counts the rows: linear aggregation drops the groups whose
+     * sum is zero, and the count is only zero for empty groups, even if the
+     * values of a non-empty group add up to zero.
+     * The result must be post-processed by getLinearPostprocessing.
      */
     public DBSPClosureExpression combineLinear() {
         DBSPClosureExpression[] closures = Linq.map(this.components, c -> c.linearFunction, DBSPClosureExpression.class);
@@ -181,11 +186,30 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
                 throw new InternalCompilerError("Expected exactly 1 parameter for linear closure", expr);
         }
         DBSPParameter parameter = this.rowVar.asParameter();
-        DBSPExpression[] bodies = Linq.map(closures, c -> c.body, DBSPExpression.class);
-        DBSPTupleExpression tuple = new DBSPTupleExpression(bodies);
+        List<DBSPExpression> bodies = Linq.map(Linq.list(closures), c -> c.body);
+        bodies.add(new DBSPI64Literal(1));
+        DBSPTupleExpression tuple = new DBSPTupleExpression(bodies, false);
         return tuple.closure(parameter);
     }
 
+    /**
+     * Given an DBSPAggregate where all Implementation objects have a linearFunction
+     * component, return a function that converts the sum of the values produced by
+     * combineLinear into the result of the aggregate.  The function has the signature
+     * |a: &(value0, value1, ..., count)| (result0, result1, ...).
+     */
+    public DBSPClosureExpression getLinearPostprocessing() {
+        DBSPType linearType = this.combineLinear().getResultType();
+        DBSPVariablePath var = linearType.ref().var("a");
+        DBSPExpression[] results = new DBSPExpression[this.components.length];
+        for (int i = 0; i < this.components.length; i++) {
+            DBSPClosureExpression post = this.components[i].linearPostProcess;
+            DBSPExpression field = var.deref().field(i).applyCloneIfNeeded();
+            results[i] = post != null ? post.call(field) : field;
+        }
+        return new DBSPTupleExpression(results).closure(var.asParameter());
+    }
+
     public boolean isEmpty() {
         return this.components.length == 0;
     }
@@ -229,6 +253,27 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
          */
         @Nullable
         public final DBSPClosureExpression linearFunction;
+        /**
+         * If non-null, the sum of the values produced by 'linearFunction'
+         * may be zero for a non-empty collection, and this function, with the signature
+         * |accumulator| result, produces the result of the aggregate from the sum.
+         */
+        @Nullable
+        public final DBSPClosureExpression linearPostProcess;
+        /**
+         * If non-null this is a DBSP aggregator, such as Min or Max, which
+         * computes the result directly from the values produced by 'projection'.
+         * Such aggregators only inspect the first or last values of each group,
+         * which are sorted in the trace, instead of folding all of them.
+         */
+        @Nullable
+        public final DBSPExpression aggregator;
+        /**
+         * Function with the signature |row| value, which produces the values
+         * aggregated by 'aggregator'.  Non-null iff 'aggregator' is non-null.
+         */
+        @Nullable
+        public final DBSPClosureExpression projection;
 
         public Implementation(
                 CalciteObject origin,
@@ -239,7 +284,13 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
                 DBSPExpression emptySetResult,
                 DBSPType semigroup,
                 @Nullable
-                DBSPClosureExpression linearFunction) {
+                DBSPClosureExpression linearFunction,
+                @Nullable
+                DBSPClosureExpression linearPostProcess,
+                @Nullable
+                DBSPExpression aggregator,
+                @Nullable
+                DBSPClosureExpression projection) {
             super(origin);
             this.zero = zero;
             this.increment = increment;
@@ -247,6 +298,24 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
             this.emptySetResult = emptySetResult;
             this.semigroup = semigroup;
             this.linearFunction = linearFunction;
+            this.linearPostProcess = linearPostProcess;
+            this.aggregator = aggregator;
+            this.projection = projection;
+            assert (aggregator == null) == (projection == null);
+            assert linearPostProcess == null || linearFunction != null;
+        }
+
+        public Implementation(
+                CalciteObject origin,
+                DBSPExpression zero,
+                DBSPClosureExpression increment,
+                @Nullable
+                DBSPClosureExpression postProcess,
+                DBSPExpression emptySetResult,
+                DBSPType semigroup,
+                @Nullable
+                DBSPClosureExpression linearFunction) {
+            this(origin, zero, increment, postProcess, emptySetResult, semigroup, linearFunction, null, null, null);
         }
 
         public Implementation(
@@ -288,6 +357,12 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
             if (this.postProcess != null)
                 this.postProcess.accept(visitor);
             this.emptySetResult.accept(visitor);
+            if (this.linearPostProcess != null)
+                this.linearPostProcess.accept(visitor);
+            if (this.aggregator != null)
+                this.aggregator.accept(visitor);
+            if (this.projection != null)
+                this.projection.accept(visitor);
             visitor.pop(this);
             visitor.postorder(this);
         }
@@ -309,7 +384,11 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
                 this.increment == o.increment &&
                 this.postProcess == o.postProcess &&
                 this.emptySetResult == o.emptySetResult &&
-                this.semigroup == o.semigroup;
+                this.semigroup == o.semigroup &&
+                this.linearFunction == o.linearFunction &&
+                this.linearPostProcess == o.linearPostProcess &&
+                this.aggregator == o.aggregator &&
+                this.projection == o.projection;
         }
 
         public DBSPExpression asFold(boolean compact) {
@@ -361,6 +440,19 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
                         .append("linearFunction=")
                         .append(this.linearFunction);
             }
+            if (this.linearPostProcess != null) {
+                builder.newline()
+                        .append("linearPostProcess=")
+                        .append(this.linearPostProcess);
+            }
+            if (this.aggregator != null) {
+                builder.newline()
+                        .append("aggregator=")
+                        .append(this.aggregator)
+                        .newline()
+                        .append("projection=")
+                        .append(Objects.requireNonNull(this.projection));
+            }
             builder.newline().decrease().append("]");
             return builder;
         }
@@ -370,6 +462,21 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
         return Linq.all(this.components, c -> c.linearFunction != null);
     }
 
+    /**
+     * If this aggregate can be computed by a DBSP aggregator which
+     * does not need to fold all values of a group, return its implementation,
+     * otherwise return null.
+     */
+    @Nullable
+    public Implementation getPrimitive() {
+        if (this.components.length != 1 || this.isWindowAggregate)
+            return null;
+        Implementation implementation = this.components[0];
+        if (implementation.aggregator == null)
+            return null;
+        return implementation;
+    }
+
     @Override
     public boolean sameFields(IDBSPNode other) {
         DBSPAggregate o = other.as(DBSPAggregate.class);
@@ -25,6 +25,7 @@ package org.dbsp.sqlCompiler.ir;
 
 import org.dbsp.sqlCompiler.compiler.errors.SourcePositionRange;
 import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
+import org.dbsp.util.IdGenerators;
 import org.dbsp.util.IndentStream;
 import org.dbsp.util.Utilities;
 
@@ -40,7 +41,6 @@ import java.util.List;
  */
 public abstract class DBSPNode
         implements IDBSPNode {
-    static long crtId = 0;
     public final long id;
 
     /**
@@ -131,7 +131,7 @@ public abstract class DBSPNode
 
     protected DBSPNode(CalciteObject node) {
         this.node = node;
-        this.id = crtId++;
+        this.id = IdGenerators.current().nextNodeId();
         if (log != null)
             log.add(this);
     }
@@ -141,7 +141,7 @@ public abstract class DBSPNode
      * It is only used for testing.
      */
     public static void reset() {
-        crtId = 0;
+        IdGenerators.current().resetNodeIds();
     }
 
     public CalciteObject getNode() { return this.node; }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.ir.statement;
+
+import org.dbsp.sqlCompiler.compiler.visitors.VisitDecision;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.InnerVisitor;
+import org.dbsp.sqlCompiler.ir.IDBSPNode;
+import org.dbsp.sqlCompiler.ir.NonCoreIR;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.IHasType;
+import org.dbsp.util.IIndentStream;
+
+/**
+ * <a href="https://doc.rust-lang.org/reference/items/static-items.html">Static item</a>
+ * whose value is computed by 'expression' the first time it is used.
+ * The expression must not refer to any variables.
+ * In Rust the item has type StaticLazy&lt;type&gt;, which dereferences to 'type'.
+ */
+@NonCoreIR
+public class DBSPStaticItem extends DBSPItem implements IHasType {
+    public final String name;
+    public final DBSPType type;
+    public final DBSPExpression expression;
+
+    public DBSPStaticItem(String name, DBSPType type, DBSPExpression expression) {
+        this.name = name;
+        this.type = type;
+        this.expression = expression;
+    }
+
+    @Override
+    public DBSPStatement deepCopy() {
+        return new DBSPStaticItem(this.name, this.type, this.expression.deepCopy());
+    }
+
+    @Override
+    public void accept(InnerVisitor visitor) {
+        VisitDecision decision = visitor.preorder(this);
+        if (decision.stop()) return;
+        visitor.push(this);
+        this.type.accept(visitor);
+        this.expression.accept(visitor);
+        visitor.pop(this);
+        visitor.postorder(this);
+    }
+
+    /** The value of the item; has type 'type'. */
+    public DBSPExpression getValue() {
+        return new DBSPVariablePath(this.name, this.type.ref()).deref();
+    }
+
+    @Override
+    public DBSPType getType() {
+        return this.type;
+    }
+
+    @Override
+    public boolean sameFields(IDBSPNode other) {
+        DBSPStaticItem o = other.as(DBSPStaticItem.class);
+        if (o == null)
+            return false;
+        return this.name.equals(o.name) &&
+                this.type.sameType(o.type) &&
+                this.expression == o.expression;
+    }
+
+    @Override
+    public IIndentStream toString(IIndentStream builder) {
+        return builder.append("static ")
+                .append(this.name)
+                .append(": ")
+                .append(this.type)
+                .append(" = ")
+                .append(this.expression);
+    }
+}
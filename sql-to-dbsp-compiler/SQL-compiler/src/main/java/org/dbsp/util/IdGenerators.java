@@ -0,0 +1,119 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.util;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters used to allocate the ids of IR nodes and fresh names.
+ * Each compiler owns an instance; objects created by a thread obtain
+ * their ids from the instance that is current on that thread.  An instance
+ * is only current within a {@link Scope}, which the compiler opens around
+ * each of its entry points.  This makes the ids produced by a compilation
+ * independent of other compilations that run in the same JVM.
+ * Objects created outside any scope use a global instance.
+ */
+public class IdGenerators {
+    static final IdGenerators GLOBAL = new IdGenerators();
+    static final ThreadLocal<IdGenerators> current = new ThreadLocal<>();
+
+    private final AtomicLong nextNodeId;
+    /** For each name prefix the next number to use. */
+    private final Map<String, Integer> nextNameId;
+
+    public IdGenerators() {
+        this.nextNodeId = new AtomicLong(0);
+        this.nextNameId = new HashMap<>();
+    }
+
+    /** The generators used by the current thread. */
+    public static IdGenerators current() {
+        IdGenerators result = current.get();
+        if (result == null)
+            return GLOBAL;
+        return result;
+    }
+
+    /** While open, a scope makes a set of generators current on the thread that opened it.
+     * Closing the scope restores the generators that were current before. */
+    public static class Scope implements AutoCloseable {
+        @Nullable
+        final IdGenerators previous;
+
+        Scope(@Nullable IdGenerators previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (this.previous == null)
+                current.remove();
+            else
+                current.set(this.previous);
+        }
+    }
+
+    /** Use these generators for all objects created by the current thread
+     * until the returned scope is closed. */
+    public Scope enter() {
+        Scope result = new Scope(current.get());
+        current.set(this);
+        return result;
+    }
+
+    public long nextNodeId() {
+        return this.nextNodeId.getAndIncrement();
+    }
+
+    /** The next number that will be used for the specified prefix. */
+    public synchronized int peekNameId(String prefix) {
+        return this.nextNameId.getOrDefault(prefix, 0);
+    }
+
+    /** Allocate a new number for the specified prefix. */
+    public synchronized int nextNameId(String prefix) {
+        int result = this.peekNameId(prefix);
+        this.nextNameId.put(prefix, result + 1);
+        return result;
+    }
+
+    /**
+     * Do not call this method!
+     * It is only used for testing.
+     */
+    public void resetNodeIds() {
+        this.nextNodeId.set(0);
+    }
+
+    /**
+     * Do not call this method!
+     * It is only used for testing.
+     */
+    public synchronized void resetNames() {
+        this.nextNameId.clear();
+    }
+}
@@ -25,17 +25,12 @@
 
 package org.dbsp.util;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Used to generate new names during a program execution.
  */
 public class NameGen {
     private final String prefix;
 
-    static final Map<String, Integer> nextId = new HashMap<>();
-
     @SuppressWarnings("unused")
     public NameGen() {
         this.prefix = "id";
@@ -44,24 +39,20 @@ public class NameGen {
     /**
      * Create a new name generator that generates names starting with the
      * specified prefix.  Generated names will look like prefixN, where
-     * N is an increasing number.
+     * N is an increasing number.  The numbers are allocated from the
+     * IdGenerators current when the names are generated.
      * @param prefix  Prefix for all names.
      */
     public NameGen(String prefix) {
         this.prefix = prefix;
-        if (!nextId.containsKey(this.prefix))
-            nextId.put(this.prefix, 0);
     }
 
     public int getNext() {
-        if (!nextId.containsKey(this.prefix))
-            nextId.put(this.prefix, 0);
-        return nextId.get(this.prefix);
+        return IdGenerators.current().peekNameId(this.prefix);
     }
 
     public String nextName() {
-        int id = this.getNext();
-        nextId.put(this.prefix, id+1);
+        int id = IdGenerators.current().nextNameId(this.prefix);
         return this.prefix + id;
     }
 
@@ -70,6 +61,6 @@ public class NameGen {
      * It is for testing only.
      */
     public static void reset() {
-        nextId.clear();
+        IdGenerators.current().resetNames();
     }
 }
@@ -1,7 +1,11 @@
 package org.dbsp.sqlCompiler.compiler.sql;
 
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
 import org.dbsp.sqlCompiler.compiler.CompilerOptions;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.junit.Assert;
 import org.junit.Test;
 
 /** Tests that emit Rust code using the catalog. */
@@ -13,6 +17,46 @@ public class CatalogTests extends BaseSQLTests {
         return result;
     }
 
+    @Test
+    public void testJoinOnPrimaryKeys() {
+        // Joins on the primary keys use the indexed inputs directly
+        String statements = """
+                CREATE TABLE S (ID INT NOT NULL PRIMARY KEY, X VARCHAR);
+                CREATE TABLE R (ID INT NOT NULL PRIMARY KEY, Y INT);
+                CREATE VIEW V AS SELECT S.X, R.Y FROM S JOIN R ON S.ID = R.ID;""";
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.incrementalize = true;
+        compiler.compileStatements(statements);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        int joins = 0;
+        for (DBSPOperator op: ccs.circuit.circuit.getAllOperators()) {
+            if (!op.is(DBSPJoinOperator.class))
+                continue;
+            joins++;
+            for (DBSPOperator input: op.inputs)
+                Assert.assertTrue(input.is(DBSPSourceMapOperator.class));
+        }
+        Assert.assertEquals(1, joins);
+        ccs.step("""
+                INSERT INTO S VALUES (1, 'a'), (2, 'b');
+                INSERT INTO R VALUES (1, 10), (3, 30);""", """
+                 x | y  | weight
+                -----------------
+                 a| 10 | 1""");
+        // Inserting an existing key replaces the row
+        ccs.step("""
+                INSERT INTO S VALUES (1, 'c');
+                INSERT INTO R VALUES (2, 20);""", """
+                 x | y  | weight
+                -----------------
+                 a| 10 | -1
+                 c| 10 | 1
+                 b| 20 | 1""");
+        // The generated Rust cannot be fed with data without handles
+        TestCase test = new TestCase("testJoinOnPrimaryKeys", this.currentTestInformation, ccs, null);
+        Assert.assertTrue(test.interpret());
+    }
+
     @Test
     public void testSanitizeNames() {
         String statements = """
@@ -29,8 +29,14 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.jdbc.CalciteConnection;
 import org.apache.calcite.schema.SchemaPlus;
+import org.dbsp.simulator.interpreter.CircuitInterpreter;
 import org.dbsp.sqlCompiler.CompilerMain;
+import org.dbsp.sqlCompiler.CompilerServer;
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPConstantOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPDifferentiateOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIncrementalSortOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamDistinctOperator;
 import org.dbsp.sqlCompiler.compiler.CompilerOptions;
@@ -38,14 +44,19 @@ import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.TestUtil;
 import org.dbsp.sqlCompiler.compiler.backend.ToCsvVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustInnerVisitor;
 import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
 import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
 import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.CalciteCompiler;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.CalciteOptimizer;
+import org.dbsp.sqlCompiler.compiler.frontend.calciteCompiler.ViewPlanCache;
 import org.dbsp.sqlCompiler.compiler.sql.simple.Change;
 import org.dbsp.sqlCompiler.compiler.sql.simple.EndToEndTests;
+import org.dbsp.sqlCompiler.compiler.visitors.inner.EliminateClones;
 import org.dbsp.sqlCompiler.compiler.visitors.outer.Passes;
 import org.dbsp.sqlCompiler.ir.DBSPFunction;
 import org.dbsp.sqlCompiler.ir.DBSPNode;
+import org.dbsp.sqlCompiler.ir.IDBSPInnerNode;
 import org.dbsp.sqlCompiler.ir.expression.DBSPApplyExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPApplyMethodExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPBlockExpression;
@@ -53,7 +64,9 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPDoubleLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI32Literal;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI64Literal;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStrLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStringLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPUSizeLiteral;
@@ -79,6 +92,8 @@ import org.junit.Test;
 
 import javax.imageio.ImageIO;
 import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
@@ -175,6 +190,23 @@ public class OtherTests extends BaseSQLTests implements IWritesLogs {
         Logger.INSTANCE.setLoggingLevel(this.getClassName(), 0);
     }
 
+    @Test
+    public void optimizerStatistics() {
+        StringBuilder builder = new StringBuilder();
+        Appendable save = Logger.INSTANCE.setDebugStream(builder);
+        Logger.INSTANCE.setLoggingLevel(CalciteOptimizer.class, 1);
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatement(ddl);
+        compiler.compileStatements("""
+                CREATE VIEW V AS SELECT COL1 FROM T;
+                CREATE VIEW W AS SELECT COL1, COUNT(*) FROM T GROUP BY COL1;""");
+        Logger.INSTANCE.setDebugStream(save);
+        Logger.INSTANCE.setLoggingLevel(CalciteOptimizer.class, 0);
+        String messages = builder.toString();
+        Assert.assertTrue(messages.contains("Constant fold: 2 plans"));
+        Assert.assertTrue(messages.contains("Join order: 2 plans"));
+    }
+
     // Test the -T command-line parameter
     @Test
     public void loggingParameter() throws IOException, InterruptedException, SQLException {
@@ -199,6 +231,39 @@ public class OtherTests extends BaseSQLTests implements IWritesLogs {
         Logger.INSTANCE.setLoggingLevel(Passes.class, 0);
     }
 
+    // Test the compiler server mode
+    @Test
+    public void testServer() throws IOException {
+        String requests = """
+                {"id": 1, "options": ["-i"], "program": "CREATE TABLE T(COL1 INT); CREATE VIEW V AS SELECT * FROM T"}
+                {"id": 2, "program": "CREATE VIEW V AS SELECT * FROM X"}
+                not json
+                {"id": 3, "options": ["--handles"], "program": "CREATE TABLE T(COL1 INT); CREATE VIEW V AS SELECT * FROM T"}
+                """;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        new CompilerServer().serve(
+                new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), stream);
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(4, lines.length);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode first = mapper.readTree(lines[0]);
+        Assert.assertEquals(1, first.get("id").asInt());
+        Assert.assertEquals(0, first.get("exitCode").asInt());
+        Assert.assertTrue(first.get("rust").asText().contains("fn circuit"));
+        Assert.assertTrue(first.has("schema"));
+        JsonNode second = mapper.readTree(lines[1]);
+        Assert.assertEquals(2, second.get("id").asInt());
+        Assert.assertEquals(1, second.get("exitCode").asInt());
+        Assert.assertFalse(second.has("rust"));
+        Assert.assertTrue(second.get("messages").get(0).get("message").asText().contains("Object 'X' not found"));
+        JsonNode third = mapper.readTree(lines[2]);
+        Assert.assertEquals(1, third.get("exitCode").asInt());
+        JsonNode fourth = mapper.readTree(lines[3]);
+        Assert.assertEquals(3, fourth.get("id").asInt());
+        Assert.assertEquals(0, fourth.get("exitCode").asInt());
+    }
+
     // Test the --unquotedCasing command-line parameter
     @Test
     public void casing() throws IOException, InterruptedException, SQLException {
@@ -554,6 +619,445 @@ public class OtherTests extends BaseSQLTests implements IWritesLogs {
         Assert.assertTrue(inputType.sameType(outputType));
     }
 
+    // Test that a global ORDER BY is maintained incrementally
+    @Test
+    public void testIncrementalOrderBy() {
+        DBSPCompiler compiler = this.testCompiler();
+        String query = "CREATE VIEW V AS SELECT * FROM T ORDER BY T.COL2";
+        compiler.compileStatement(ddl);
+        compiler.compileStatements(query);
+        compiler.optimize();
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        int sorts = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (op.is(DBSPIncrementalSortOperator.class))
+                sorts++;
+        }
+        Assert.assertEquals(1, sorts);
+    }
+
+    // Test that constant patterns are compiled once
+    @Test
+    public void testHoistConstants() {
+        DBSPCompiler compiler = this.testCompiler();
+        String query = "CREATE VIEW V AS SELECT T.COL1 FROM T WHERE T.COL4 LIKE 'a%b' OR UPPER(T.COL4) LIKE 'a%b'";
+        compiler.compileStatement(ddl);
+        compiler.compileStatements(query);
+        compiler.optimize();
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        RustFileWriter writer = new RustFileWriter(stream);
+        writer.add(circuit);
+        writer.write(compiler);
+        String rust = output.toString(StandardCharsets.UTF_8);
+        Assert.assertTrue(rust.contains("static STATIC_0: StaticLazy<CompiledPattern> = StaticLazy::new(|| compile_like2("));
+        // Identical constants share the same static item
+        Assert.assertFalse(rust.contains("STATIC_1"));
+        Assert.assertTrue(rust.contains("pattern_matches_("));
+    }
+
+    @Test
+    public void testPrimitiveAggregates() {
+        DBSPCompiler compiler = this.testCompiler();
+        // V2 cannot use Min, since nulls are smaller than all other values.
+        // V3 has multiple aggregates, which are computed using a fold.
+        String query = """
+                CREATE VIEW V0 AS SELECT COL3, MAX(COL5) FROM T GROUP BY COL3;
+                CREATE VIEW V1 AS SELECT COL3, MIN(COL1) FROM T GROUP BY COL3;
+                CREATE VIEW V2 AS SELECT COL3, MIN(COL5) FROM T GROUP BY COL3;
+                CREATE VIEW V3 AS SELECT COL3, MAX(COL1), MIN(COL1) FROM T GROUP BY COL3;""";
+        compiler.compileStatement(ddl);
+        compiler.compileStatements(query);
+        compiler.optimize();
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        RustFileWriter writer = new RustFileWriter(stream);
+        writer.add(circuit);
+        writer.write(compiler);
+        String rust = output.toString(StandardCharsets.UTF_8);
+        Assert.assertEquals(1, rust.split("aggregate\\(Max\\)", -1).length - 1);
+        Assert.assertEquals(1, rust.split("aggregate\\(Min\\)", -1).length - 1);
+    }
+
+    @Test
+    public void testLinearAggregates() {
+        DBSPCompiler compiler = this.testCompiler();
+        String query = """
+                CREATE VIEW V AS SELECT COL3, SUM(COL5), AVG(COL1), STDDEV_POP(COL6),
+                COUNT(*) FILTER (WHERE COL1 > 0)
+                FROM T GROUP BY COL3""";
+        compiler.compileStatement(ddl);
+        compiler.compileStatements(query);
+        compiler.optimize();
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        RustFileWriter writer = new RustFileWriter(stream);
+        writer.add(circuit);
+        writer.write(compiler);
+        String rust = output.toString(StandardCharsets.UTF_8);
+        Assert.assertTrue(rust.contains("aggregate_linear("));
+        Assert.assertFalse(rust.contains("Fold::"));
+    }
+
+    @Test
+    public void testSplitAggregates() {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.aggregateSalt = 16;
+        // COUNT(DISTINCT) cannot be split
+        String query = """
+                CREATE VIEW V AS SELECT COL3, SUM(COL5), MIN(COL6), AVG(COL1), COUNT(*)
+                FROM T GROUP BY COL3;
+                CREATE VIEW W AS SELECT COL3, COUNT(DISTINCT COL1)
+                FROM T GROUP BY COL3""";
+        compiler.compileStatement(ddl);
+        compiler.compileStatements(query);
+        compiler.optimize();
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        RustFileWriter writer = new RustFileWriter(stream);
+        writer.add(circuit);
+        writer.write(compiler);
+        String rust = output.toString(StandardCharsets.UTF_8);
+        Assert.assertEquals(1, rust.split("hash_partition\\(", -1).length - 1);
+        Assert.assertTrue(rust.contains("MinOptSemigroup::<"));
+        Assert.assertTrue(rust.contains("PairSemigroup::<"));
+    }
+
+    @Test
+    public void testSplitLinearAggregates() {
+        // Both phases are linear; some sub-groups have a sum of 0
+        String sql = """
+                CREATE TABLE t(g INT NOT NULL, x INT NOT NULL);
+                CREATE VIEW v AS SELECT g, SUM(x) AS s, COUNT(*) AS c FROM t GROUP BY g;""";
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.aggregateSalt = 4;
+        compiler.compileStatements(sql);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        ccs.step("""
+                INSERT INTO t VALUES (1, 5), (1, -5), (2, 3), (2, 4);""",
+                """
+                 g | s | c | weight
+                --------------------
+                 1 | 0 | 2 | 1
+                 2 | 7 | 2 | 1""");
+        ccs.step("""
+                REMOVE FROM t VALUES (2, 3);
+                INSERT INTO t VALUES (1, 0);""",
+                """
+                 g | s | c | weight
+                --------------------
+                 1 | 0 | 2 | -1
+                 1 | 0 | 3 | 1
+                 2 | 7 | 2 | -1
+                 2 | 4 | 1 | 1""");
+        this.addRustTestCase("testSplitLinearAggregates", ccs);
+    }
+
+    @Test
+    public void testLinearAggregateZeroSum() {
+        // The values of the group add up to 0, but the group is not empty
+        String sql = """
+                CREATE TABLE t(g INT NOT NULL, x INT NOT NULL);
+                CREATE VIEW v AS SELECT g, SUM(x) AS s FROM t GROUP BY g;""";
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(sql);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        ccs.step("INSERT INTO t VALUES (1, 5), (1, -5);",
+                """
+                 g | s | weight
+                ----------------
+                 1 | 0 | 1""");
+        ccs.step("INSERT INTO t VALUES (1, 2);",
+                """
+                 g | s | weight
+                ----------------
+                 1 | 0 | -1
+                 1 | 2 | 1""");
+        this.addRustTestCase("testLinearAggregateZeroSum", ccs);
+    }
+
+    @Test
+    public void testEliminateClones() {
+        DBSPCompiler compiler = this.testCompiler();
+        DBSPTypeString type = DBSPTypeString.varchar(false);
+        DBSPVariablePath x = type.ref().var("x");
+        DBSPVariablePath e = type.var("e");
+        // |x: &String| { let v = (*x).clone(); let w = (*x).clone(); (v.clone(), move |e: String| w.clone()) }
+        DBSPLetStatement v = new DBSPLetStatement("v", x.deref().applyClone());
+        DBSPLetStatement w = new DBSPLetStatement("w", x.deref().applyClone());
+        DBSPExpression inner = w.getVarReference().applyClone().closure(e.asParameter());
+        List<DBSPStatement> statements = Linq.list(v, w);
+        DBSPExpression body = new DBSPBlockExpression(statements,
+                new DBSPTupleExpression(v.getVarReference().applyClone(), inner));
+        DBSPExpression closure = body.closure(x.asParameter());
+        IDBSPInnerNode result = new EliminateClones(compiler).apply(closure);
+        String rust = ToRustInnerVisitor.toRustString(compiler, result, false);
+        // x is borrowed, so it has to be cloned
+        Assert.assertTrue(rust.contains("(*x).clone()"));
+        // v is used once
+        Assert.assertFalse(rust.contains("v.clone()"));
+        // w is used in a closure, which may be called multiple times
+        Assert.assertTrue(rust.contains("w.clone()"));
+    }
+
+    @Test
+    public void testIncrementalConstant() {
+        // In incremental circuits constants are produced only once, and are not differentiated
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.incrementalize = true;
+        String query = """
+                CREATE TABLE A (ID INT NOT NULL, X VARCHAR);
+                CREATE VIEW V AS SELECT A.X, L.NAME FROM A
+                JOIN (VALUES (1, 'one'), (2, 'two')) AS L(ID, NAME) ON A.ID = L.ID;""";
+        compiler.compileStatements(query);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (op.is(DBSPConstantOperator.class))
+                Assert.assertTrue(op.to(DBSPConstantOperator.class).incremental);
+            if (op.is(DBSPDifferentiateOperator.class))
+                Assert.assertFalse(op.inputs.get(0).is(DBSPConstantOperator.class));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        RustFileWriter writer = new RustFileWriter(stream);
+        writer.add(circuit);
+        writer.write(compiler);
+        String rust = output.toString(StandardCharsets.UTF_8);
+        Assert.assertTrue(rust.contains("std::mem::take(&mut first)"));
+    }
+
+    static DBSPTupleExpression groupRow(int key, long count, double sum) {
+        return new DBSPTupleExpression(
+                new DBSPI32Literal(key), new DBSPI64Literal(count), new DBSPDoubleLiteral(sum));
+    }
+
+    @Test
+    public void testInterpreter() {
+        // Validate a circuit by executing it without generating Rust
+        String query = "CREATE VIEW V AS SELECT T.COL1, COUNT(*), SUM(T.COL2) FROM T " +
+                "WHERE T.COL1 > 5 GROUP BY T.COL1";
+        DBSPCompiler compiler = this.compileDef();
+        compiler.compileStatement(query);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        CircuitInterpreter interpreter = new CircuitInterpreter(compiler, circuit);
+        DBSPZSetLiteral[] output = interpreter.step(new DBSPZSetLiteral(EndToEndTests.e0, EndToEndTests.e1));
+        DBSPZSetLiteral expected = new DBSPZSetLiteral(groupRow(10, 2, 13.0));
+        Assert.assertTrue(interpreter.toZSet(expected).equals(interpreter.toZSet(output[0])));
+        // Non-incremental circuits only see the current input
+        output = interpreter.step(new DBSPZSetLiteral(EndToEndTests.e1));
+        expected = new DBSPZSetLiteral(groupRow(10, 1, 1.0));
+        Assert.assertTrue(interpreter.toZSet(expected).equals(interpreter.toZSet(output[0])));
+    }
+
+    @Test
+    public void testIncrementalInterpreter() {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.incrementalize = true;
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1, COUNT(*), SUM(T.COL2) FROM T GROUP BY T.COL1");
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        CircuitInterpreter interpreter = new CircuitInterpreter(compiler, circuit);
+        DBSPZSetLiteral[] output = interpreter.step(new DBSPZSetLiteral(EndToEndTests.e0, EndToEndTests.e1));
+        DBSPZSetLiteral expected = new DBSPZSetLiteral(groupRow(10, 2, 13.0));
+        Assert.assertTrue(interpreter.toZSet(expected).equals(interpreter.toZSet(output[0])));
+        // Deleting a row retracts the old aggregate and inserts the new one
+        DBSPZSetLiteral delete = DBSPZSetLiteral.emptyWithElementType(EndToEndTests.e1.getType())
+                .add(EndToEndTests.e1, -1);
+        output = interpreter.step(delete);
+        expected = new DBSPZSetLiteral(groupRow(10, 1, 12.0)).add(groupRow(10, 2, 13.0), -1);
+        Assert.assertTrue(interpreter.toZSet(expected).equals(interpreter.toZSet(output[0])));
+    }
+
+    @Test
+    public void testInterpreterLateness() {
+        // The interpreter evaluates the waterline of T and the filter that drops
+        // the late rows, and ignores the operators that prune the join integrals
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.languageOptions.incrementalize = true;
+        compiler.compileStatements("""
+                CREATE TABLE T (ts INTEGER NOT NULL LATENESS 10, x INTEGER NOT NULL);
+                CREATE TABLE S (ts INTEGER NOT NULL, y INTEGER NOT NULL);
+                CREATE VIEW V AS SELECT T.ts, T.x, S.y FROM T JOIN S ON T.ts = S.ts;""");
+        Assert.assertFalse(compiler.hasErrors());
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        ccs.step("""
+                INSERT INTO T VALUES (100, 1), (50, 2);
+                INSERT INTO S VALUES (100, 7), (50, 8);""", """
+                 ts  | x | y | weight
+                ----------------------
+                 100 | 1 | 7 | 1""");
+        ccs.step("""
+                INSERT INTO T VALUES (95, 3), (85, 4);
+                INSERT INTO S VALUES (95, 9), (85, 10);""", """
+                 ts | x | y | weight
+                --------------------
+                 95 | 3 | 9 | 1""");
+        TestCase test = new TestCase("testInterpreterLateness", this.currentTestInformation, ccs, null);
+        Assert.assertTrue(test.interpret());
+    }
+
+    @Test
+    public void testPruneInputColumns() {
+        // Columns of the input table not used by the view are dropped right after the input
+        DBSPCompiler compiler = this.testCompiler();
+        String query = """
+                CREATE TABLE A (ID INT NOT NULL, X INT, P VARCHAR, Q VARCHAR, R VARCHAR);
+                CREATE VIEW V AS SELECT DISTINCT ID, X FROM A WHERE P IS NOT NULL;""";
+        compiler.compileStatements(query);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        boolean found = false;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (op.is(DBSPFilterOperator.class)) {
+                found = true;
+                Assert.assertTrue(op.getOutputZSetElementType().to(DBSPTypeTuple.class).size() < 5);
+            }
+        }
+        Assert.assertTrue(found);
+    }
+
+    List<String> compileWithThreads(String program, int threads) {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.options.ioOptions.threads = threads;
+        compiler.compileStatements(program);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        List<String> operations = new ArrayList<>();
+        for (DBSPOperator op: circuit.circuit.getAllOperators())
+            operations.add(op.operation);
+        return operations;
+    }
+
+    @Test
+    public void testConcurrentViewOptimization() {
+        // Optimizing the views concurrently produces the same circuit
+        String program = """
+                CREATE TABLE A (ID INT NOT NULL, X INT, Y VARCHAR);
+                CREATE TABLE B (ID INT NOT NULL, Z INT);
+                CREATE VIEW V0 AS SELECT ID, X + 1 AS X1 FROM A WHERE Y IS NOT NULL;
+                CREATE VIEW V1 AS SELECT A.ID, B.Z FROM A JOIN B ON A.ID = B.ID;
+                CREATE VIEW V2 AS SELECT ID, SUM(Z) AS S FROM B GROUP BY ID;
+                CREATE VIEW V3 AS SELECT V1.ID, V2.S FROM V1 JOIN V2 ON V1.ID = V2.ID;""";
+        List<String> sequential = this.compileWithThreads(program, 1);
+        List<String> concurrent = this.compileWithThreads(program, 4);
+        Assert.assertEquals(sequential, concurrent);
+    }
+
+    @Test
+    public void testViewPlanCache() {
+        // Recompiling an edited program only optimizes the views affected by the edit
+        ViewPlanCache cache = new ViewPlanCache();
+        String program = """
+                CREATE TABLE A (ID INT NOT NULL, X INT);
+                CREATE TABLE B (ID INT NOT NULL, Z INT);
+                CREATE VIEW V0 AS SELECT ID, X + 1 AS X1 FROM A;
+                CREATE VIEW V1 AS SELECT A.ID, B.Z FROM A JOIN B ON A.ID = B.ID;
+                CREATE VIEW V2 AS SELECT ID, SUM(Z) AS S FROM V1 GROUP BY ID;""";
+        List<String> expected = null;
+        for (int i = 0; i < 2; i++) {
+            DBSPCompiler compiler = this.testCompiler();
+            compiler.frontend.setPlanCache(cache);
+            compiler.compileStatements(program);
+            compiler.optimize();
+            Assert.assertFalse(compiler.hasErrors());
+            List<String> operations = new ArrayList<>();
+            for (DBSPOperator op: compiler.getFinalCircuit("circuit").circuit.getAllOperators())
+                operations.add(op.operation);
+            if (expected == null)
+                expected = operations;
+            else
+                Assert.assertEquals(expected, operations);
+        }
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+
+        // Changing table B invalidates V1 and V2, which depends on V1
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.frontend.setPlanCache(cache);
+        compiler.compileStatements(program.replace("Z INT", "Z BIGINT"));
+        Assert.assertFalse(compiler.hasErrors());
+        Assert.assertEquals(4, cache.getHits());
+        Assert.assertEquals(5, cache.getMisses());
+
+        // The cache is bounded by the size of the serialized plans
+        long size = cache.getSize();
+        Assert.assertTrue(size > 0);
+        ViewPlanCache small = new ViewPlanCache(size / cache.size());
+        compiler = this.testCompiler();
+        compiler.frontend.setPlanCache(small);
+        compiler.compileStatements(program);
+        Assert.assertFalse(compiler.hasErrors());
+        Assert.assertTrue(small.size() < 3);
+        Assert.assertTrue(small.getSize() <= size / cache.size());
+    }
+
+    /** Compile a program and return the generated Rust.
+     * @param betweenSteps  Code to run between compiling and optimizing the program. */
+    String compileToRust(String program, Runnable betweenSteps) {
+        DBSPCompiler compiler = this.testCompiler();
+        compiler.compileStatements(program);
+        betweenSteps.run();
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        RustFileWriter writer = new RustFileWriter(stream);
+        writer.add(circuit);
+        writer.write(compiler);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    static final String deterministicProgram = """
+                CREATE TABLE A (ID INT NOT NULL, X INT, Y VARCHAR);
+                CREATE VIEW V0 AS SELECT ID, X + 1 AS X1 FROM A WHERE Y IS NOT NULL;
+                CREATE VIEW V1 AS SELECT ID, COUNT(*) AS C FROM A GROUP BY ID;""";
+
+    @Test
+    public void testDeterministicRust() {
+        // Two fresh compilations of a program produce the same Rust
+        String first = this.compileToRust(deterministicProgram, () -> {});
+        String second = this.compileToRust(deterministicProgram, () -> {});
+        Assert.assertEquals(first, second);
+        // IR built outside the compiler does not use the ids of the compiler
+        String third = this.compileToRust(deterministicProgram, () -> {
+            for (int i = 0; i < 10; i++)
+                new DBSPI32Literal(i);
+        });
+        Assert.assertEquals(first, third);
+    }
+
+    @Test
+    public void testConcurrentCompilers() throws InterruptedException {
+        // Compilers running concurrently allocate node ids independently,
+        // so they produce the same output as a compiler running alone.
+        String expected = this.compileToRust(deterministicProgram, () -> {});
+        String[] results = new String[4];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            final int index = i;
+            Thread thread = new Thread(() -> results[index] = this.compileToRust(deterministicProgram, () -> {}));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread: threads)
+            thread.join();
+        for (String result: results)
+            Assert.assertEquals(expected, result);
+    }
+
     // Test the outputsAreSets compiler flag
     @Test
     public void testOutputsAreSets() {
@@ -1,5 +1,6 @@
 package org.dbsp.sqlCompiler.compiler.sql;
 
+import org.dbsp.simulator.interpreter.CircuitInterpreter;
 import org.dbsp.sqlCompiler.compiler.errors.UnimplementedException;
 import org.dbsp.sqlCompiler.compiler.frontend.CalciteObject;
 import org.dbsp.sqlCompiler.compiler.sql.simple.Change;
@@ -13,6 +14,7 @@ import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPVariablePath;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStrLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPUSizeLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
 import org.dbsp.sqlCompiler.ir.statement.DBSPComment;
 import org.dbsp.sqlCompiler.ir.statement.DBSPFunctionItem;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
@@ -27,6 +29,7 @@ import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeString;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeVoid;
 import org.dbsp.util.TableValue;
 import org.dbsp.util.Utilities;
+import org.junit.Assert;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -52,6 +55,36 @@ class TestCase {
         this.message = message;
     }
 
+    /**
+     * Executes the test case using the circuit interpreter instead of Rust.
+     *
+     * @return false if the circuit uses operators or expressions that
+     * the interpreter does not support; the test must then run in Rust. */
+    boolean interpret() {
+        CircuitInterpreter interpreter = new CircuitInterpreter(this.ccs.compiler, this.ccs.circuit);
+        String message = System.lineSeparator() +
+                "mvn test -Dinterpreter=true -Dtest=" + this.javaTestName +
+                System.lineSeparator() + this.name;
+        try {
+            int pair = 0;
+            for (InputOutputChange changes : this.ccs.stream.changes) {
+                Change inputs = changes.getInputs().simplify();
+                Change outputs = changes.getOutputs().simplify();
+                DBSPZSetLiteral[] actual = interpreter.step(inputs.sets);
+                for (int i = 0; i < outputs.getSetCount(); i++) {
+                    DBSPZSetLiteral expected = outputs.getSet(i);
+                    Assert.assertTrue(message + System.lineSeparator() + "step " + pair + " output " + i +
+                                    ": expected " + expected + ", got " + actual[i],
+                            interpreter.toZSet(expected).equals(interpreter.toZSet(actual[i])));
+                }
+                pair++;
+            }
+        } catch (UnimplementedException ex) {
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Generates a Rust function which tests a DBSP circuit.
      *
@@ -1,7 +1,12 @@
 package org.dbsp.sqlCompiler.compiler.sql.postgres;
 
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.sql.SqlIoTest;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -211,4 +216,45 @@ public class PostgresWindowTests extends SqlIoTest {
                  -1.4 |   3 |    3
                 (10 rows)""");
     }
+
+    @Test
+    public void testFusedWindows() {
+        // Windows with the same partition and order keys are joined with the rows only once
+        String query = """
+                SELECT x,
+                SUM(x) OVER (PARTITION BY x % 2 ORDER BY x RANGE BETWEEN 2 PRECEDING AND CURRENT ROW) AS s,
+                MIN(x) OVER (PARTITION BY x % 2 ORDER BY x RANGE BETWEEN 5 PRECEDING AND CURRENT ROW) AS m
+                FROM series""";
+        DBSPCompiler compiler = this.compileQuery("CREATE VIEW V AS " + query, true);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        int joins = 0;
+        int rowJoins = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (!op.is(DBSPStreamJoinOperator.class))
+                continue;
+            joins++;
+            if (op.getOutputZSetElementType().to(DBSPTypeTuple.class).size() > 2)
+                rowJoins++;
+        }
+        Assert.assertEquals(2, joins);
+        Assert.assertEquals(1, rowJoins);
+
+        this.qs(query + """
+                ;
+                 x  | s  | m
+                ----+----+----
+                  1 |  1 |  1
+                  3 |  4 |  1
+                  5 |  8 |  1
+                  7 | 12 |  3
+                  9 | 16 |  5
+                  2 |  2 |  2
+                  4 |  6 |  2
+                  6 | 10 |  2
+                  8 | 14 |  4
+                 10 | 18 |  6
+                (10 rows)""");
+    }
 }
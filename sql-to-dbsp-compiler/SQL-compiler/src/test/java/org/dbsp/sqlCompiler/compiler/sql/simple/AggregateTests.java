@@ -196,4 +196,37 @@ public class AggregateTests extends SqlIoTest {
                  3 | 3 | 3 | 3
                 (1 row)""");
     }
+
+    @Test
+    public void testNullableSums() {
+        // NULL values are ignored when partial sums are combined; a sum
+        // over a group or a window without non-NULL values is NULL.
+        this.qs("""
+                SELECT I IS NULL, SUM(I), AVG(I) FROM T GROUP BY I IS NULL;
+                 N | S | A
+                -----------
+                 t |   |
+                 f | 3 | 1
+                (2 rows)
+
+                SELECT X, SUM(Y) OVER (ORDER BY X RANGE BETWEEN 1 PRECEDING AND CURRENT ROW)
+                FROM (SELECT COALESCE(B, 1) AS X, I AS Y FROM T);
+                 X | S
+                -------
+                 0 | 0
+                 1 | 1
+                 1 | 1
+                 2 | 3
+                (4 rows)
+
+                SELECT X, SUM(Y) OVER (ORDER BY X RANGE BETWEEN 1 PRECEDING AND CURRENT ROW)
+                FROM (SELECT COALESCE(B, 5) AS X, I AS Y FROM T);
+                 X | S
+                -------
+                 0 | 0
+                 1 | 1
+                 2 | 3
+                 5 |
+                (4 rows)""");
+    }
 }
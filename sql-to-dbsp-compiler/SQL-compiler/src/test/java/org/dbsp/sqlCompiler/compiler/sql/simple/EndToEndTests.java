@@ -772,6 +772,15 @@ public class EndToEndTests extends BaseSQLTests {
                         new DBSPI32Literal(10))));
     }
 
+    @Test
+    public void distinctUnusedColumnsTest() {
+        // The rows differ only in columns that the view does not read;
+        // the DISTINCT must not merge them.
+        String query = "SELECT COL1 FROM (SELECT DISTINCT * FROM T)";
+        DBSPTupleExpression ten = new DBSPTupleExpression(new DBSPI32Literal(10));
+        this.testQuery(query, new DBSPZSetLiteral(ten).add(ten));
+    }
+
     @Test
     public void nullDistinctTest() {
         String query = "SELECT DISTINCT 0 + NULL, T.COL1 FROM T";
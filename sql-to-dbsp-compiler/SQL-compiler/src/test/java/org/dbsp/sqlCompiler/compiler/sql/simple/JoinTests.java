@@ -0,0 +1,205 @@
+/*
+ * Copyright 2022 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.sql.simple;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPFilterOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIndexOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPStreamJoinOperator;
+import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.sql.SqlIoTest;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/** Tests for joins and outer joins. */
+public class JoinTests extends SqlIoTest {
+    @Override
+    public void prepareInputs(DBSPCompiler compiler) {
+        // The tests run with input handles, which do not enforce primary keys,
+        // so table K contains a duplicate key.
+        compiler.compileStatements("""
+                CREATE TABLE F (ID INT NOT NULL PRIMARY KEY, A INT, B INT, C INT);
+                CREATE TABLE DA (ID INT NOT NULL PRIMARY KEY, X VARCHAR);
+                CREATE TABLE DB (ID INT NOT NULL PRIMARY KEY, Y VARCHAR);
+                CREATE TABLE DC (ID INT NOT NULL PRIMARY KEY, Z VARCHAR);
+                CREATE TABLE K (ID INT NOT NULL PRIMARY KEY, V INT);
+                CREATE TABLE A (ID INT NOT NULL, X INT, P VARCHAR, Q VARCHAR);
+                CREATE TABLE B (ID INT NOT NULL, Y INT, R VARCHAR);
+                INSERT INTO F VALUES (1, 1, 1, 1), (2, 1, 2, NULL), (3, 2, 1, 5);
+                INSERT INTO DA VALUES (1, 'a'), (2, 'b');
+                INSERT INTO DB VALUES (1, 'x'), (2, 'y');
+                INSERT INTO DC VALUES (1, 'p');
+                INSERT INTO K VALUES (1, 10), (1, 11), (2, 20);
+                INSERT INTO A VALUES (1, 10, 'x', 'q'), (2, 20, 'y', 'q'), (3, 0, 'x', NULL);
+                INSERT INTO B VALUES (1, 100, 'r'), (2, 200, 'r');
+                """);
+    }
+
+    @Test
+    public void testOuterJoinOrdering() {
+        // Join reordering is applied in the presence of outer joins.
+        // As written, the query starts with a cartesian product of DA and DB;
+        // the reordered plan joins both of them with F on their keys instead.
+        String query = """
+                SELECT F.ID, DA.X, DB.Y, DC.Z FROM DA
+                JOIN DB ON TRUE
+                JOIN F ON F.A = DA.ID AND F.B = DB.ID
+                LEFT JOIN DC ON F.C = DC.ID""";
+        DBSPCompiler compiler = this.compileQuery("CREATE VIEW V AS " + query, true);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        Assert.assertNotNull(circuit.getOutput("V"));
+        int joins = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (!op.is(DBSPStreamJoinOperator.class))
+                continue;
+            joins++;
+            // A cartesian product is a join on an empty key
+            DBSPTypeTuple keyType = op.inputs.get(0).getOutputIndexedZSetType().keyType.to(DBSPTypeTuple.class);
+            Assert.assertNotEquals(0, keyType.size());
+        }
+        Assert.assertEquals(3, joins);
+
+        this.qs(query + """
+                ;
+                 ID | X | Y | Z
+                ----------------
+                 1| a| x| p
+                 2| a| y|NULL
+                 3| b| x|NULL
+                (3 rows)""");
+    }
+
+    @Test
+    public void testDuplicatePrimaryKeys() {
+        // Primary keys are not enforced with input handles, so the
+        // optimizer cannot assume that they are unique.
+        this.qs("""
+                SELECT ID, COUNT(*) FROM K GROUP BY ID;
+                 ID | COUNT
+                ------------
+                 1 | 2
+                 2 | 1
+                (2 rows)
+
+                SELECT F.ID FROM F LEFT JOIN K ON F.A = K.ID;
+                 ID
+                ----
+                 1
+                 1
+                 2
+                 2
+                 3
+                (5 rows)""");
+    }
+
+    @Test
+    public void testJoinInputs() {
+        // Filters on one join input are applied before the join,
+        // and only the columns used by the join are indexed
+        String query = "SELECT A.X, B.Y FROM A JOIN B ON A.ID = B.ID WHERE A.P = 'x'";
+        DBSPCompiler compiler = this.compileQuery("CREATE VIEW V AS " + query, true);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (op.is(DBSPFilterOperator.class))
+                Assert.assertFalse(op.inputs.get(0).is(DBSPStreamJoinOperator.class));
+            if (op.is(DBSPIndexOperator.class)) {
+                int indexed = op.getOutputIndexedZSetType().elementType.to(DBSPTypeTuple.class).size();
+                int input = op.inputs.get(0).getOutputZSetElementType().to(DBSPTypeTuple.class).size();
+                Assert.assertTrue(indexed < input);
+            }
+        }
+
+        this.qs(query + """
+                ;
+                 X | Y
+                -------
+                 10 | 100
+                (1 row)""");
+    }
+
+    @Test
+    public void testFailingFilterAfterJoin() {
+        // A filter that may fail is not moved before the join:
+        // the row of A with ID 3 has no match in B, and dividing by its X panics.
+        String query = "SELECT A.ID, B.Y FROM A JOIN B ON A.ID = B.ID WHERE 100 / A.X > 5";
+        DBSPCompiler compiler = this.compileQuery("CREATE VIEW V AS " + query, true);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        boolean found = false;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (op.is(DBSPFilterOperator.class)) {
+                found = true;
+                Assert.assertTrue(op.inputs.get(0).is(DBSPStreamJoinOperator.class));
+            }
+        }
+        Assert.assertTrue(found);
+
+        this.qs(query + """
+                ;
+                 ID | Y
+                --------
+                 1 | 100
+                (1 row)""");
+    }
+
+    @Test
+    public void testOuterJoinAntiJoin() {
+        // The unmatched rows of each side of an outer join are computed with an anti-join
+        String query = "SELECT A.ID AS AID, B.ID AS BID FROM A FULL OUTER JOIN B ON A.ID = B.ID + 2";
+        DBSPCompiler compiler = this.compileQuery("CREATE VIEW V AS " + query, true);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        RustFileWriter writer = new RustFileWriter(stream);
+        writer.add(circuit);
+        writer.write(compiler);
+        String rust = output.toString(StandardCharsets.UTF_8);
+        Assert.assertEquals(2, rust.split("\\.antijoin\\(", -1).length - 1);
+        Assert.assertFalse(rust.contains(".minus("));
+
+        this.qs(query + """
+                ;
+                 AID | BID
+                -----------
+                 3 | 1
+                 1 |
+                 2 |
+                   | 2
+                (4 rows)""");
+    }
+}
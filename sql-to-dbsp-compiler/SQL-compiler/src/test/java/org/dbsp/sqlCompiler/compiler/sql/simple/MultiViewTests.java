@@ -23,6 +23,8 @@
 
 package org.dbsp.sqlCompiler.compiler.sql.simple;
 
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.sql.BaseSQLTests;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
@@ -30,6 +32,7 @@ import org.dbsp.sqlCompiler.ir.expression.literal.DBSPBoolLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPDoubleLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI32Literal;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.junit.Assert;
 import org.junit.Test;
 
 /**
@@ -114,4 +117,39 @@ public class MultiViewTests extends BaseSQLTests {
         ccs.addChange(change);
         this.addRustTestCase("MultiViewTests.multiViewTest", ccs);
     }
+
+    /**
+     * Identical pipelines in different views are shared.
+     */
+    @Test
+    public void commonSubexpressionTest() {
+        String query = """
+                CREATE VIEW V0 AS SELECT T.COL1 FROM T WHERE T.COL2 > 5;
+                CREATE VIEW V1 AS SELECT T.COL1 FROM T WHERE T.COL2 > 5;""";
+
+        DBSPCompiler compiler = testCompiler();
+        compiler.compileStatement(EndToEndTests.E2E_TABLE);
+        compiler.compileStatements(query);
+        compiler.optimize();
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        DBSPOperator v0 = circuit.circuit.getOutput("V0");
+        DBSPOperator v1 = circuit.circuit.getOutput("V1");
+        Assert.assertNotNull(v0);
+        Assert.assertNotNull(v1);
+        Assert.assertSame(v0.inputs.get(0), v1.inputs.get(0));
+
+        compiler = testCompiler();
+        compiler.compileStatement(EndToEndTests.E2E_TABLE);
+        compiler.compileStatements(query);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        InputOutputChange change = new InputOutputChange(
+                EndToEndTests.createInput(),
+                new Change(new DBSPZSetLiteral(
+                        new DBSPTupleExpression(new DBSPI32Literal(10))),
+                        new DBSPZSetLiteral(
+                                new DBSPTupleExpression(new DBSPI32Literal(10))))
+        );
+        ccs.addChange(change);
+        this.addRustTestCase("MultiViewTests.commonSubexpressionTest", ccs);
+    }
 }
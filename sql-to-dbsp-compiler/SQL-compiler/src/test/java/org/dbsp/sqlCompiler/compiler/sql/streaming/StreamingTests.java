@@ -1,6 +1,14 @@
 package org.dbsp.sqlCompiler.compiler.sql.streaming;
 
 import org.dbsp.sqlCompiler.CompilerMain;
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPApply2Operator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainKeysOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPIntegrateTraceRetainValuesOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWaterlineOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPWindowAggregateOperator;
 import org.dbsp.sqlCompiler.compiler.DBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
 import org.dbsp.sqlCompiler.compiler.sql.BaseSQLTests;
@@ -18,7 +26,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /** Tests that exercise streaming features. */
 public class StreamingTests extends StreamingTest {
@@ -362,6 +372,119 @@ public class StreamingTests extends StreamingTest {
         this.addRustTestCase("testJoinNonMonotoneColumn", ccs);
     }
 
+    @Test
+    public void testJoinRetainValues() {
+        // The join key is not monotone, but the values of the left input are.
+        String script = """
+            CREATE TABLE series (
+                    metadata VARCHAR NOT NULL,
+                    event_time TIMESTAMP NOT NULL LATENESS INTERVAL '1:00' HOURS TO MINUTES
+            );
+            
+            CREATE TABLE shift(
+                    person VARCHAR NOT NULL,
+                    on_call DATE
+            );
+        
+            CREATE VIEW V AS
+            (SELECT * FROM series JOIN shift ON series.metadata = shift.person);
+            """;
+        DBSPCompiler compiler = testCompiler();
+        compiler.compileStatements(script);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        int retainValues = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            Assert.assertFalse(op.is(DBSPIntegrateTraceRetainKeysOperator.class));
+            if (op.is(DBSPIntegrateTraceRetainValuesOperator.class))
+                retainValues++;
+        }
+        Assert.assertEquals(1, retainValues);
+
+        compiler = testCompiler();
+        compiler.compileStatements(script);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        ccs.step("""
+                INSERT INTO series VALUES('a', '2024-01-01 10:00:00');
+                INSERT INTO shift VALUES('a', '2024-01-01');""",
+                """
+                 metadata | event_time          | person | on_call    | weight
+                ----------------------------------------------------------------
+                 a| 2024-01-01 10:00:00 | a| 2024-01-01 | 1""");
+        ccs.step("INSERT INTO series VALUES('a', '2024-01-01 12:00:00');",
+                """
+                 metadata | event_time          | person | on_call    | weight
+                ----------------------------------------------------------------
+                 a| 2024-01-01 12:00:00 | a| 2024-01-01 | 1""");
+        this.addRustTestCase("testJoinRetainValues", ccs);
+    }
+
+    @Test
+    public void testJoinSharedRetain() {
+        // Both joins use the same index of 'shift', and each of them
+        // computes a bound for it; the two bounds are merged.
+        String script = """
+            CREATE TABLE series (
+                    metadata VARCHAR NOT NULL,
+                    event_time TIMESTAMP NOT NULL LATENESS INTERVAL '1:00' HOURS TO MINUTES
+            );
+            
+            CREATE TABLE shift(
+                    person VARCHAR NOT NULL,
+                    on_call DATE
+            );
+        
+            CREATE VIEW V AS
+            (SELECT * FROM series JOIN shift ON CAST(series.event_time AS DATE) = shift.on_call);
+            
+            CREATE VIEW W AS
+            (SELECT * FROM (SELECT * FROM series WHERE metadata <> 'x') AS s
+             JOIN shift ON CAST(s.event_time AS DATE) = shift.on_call);
+            """;
+        DBSPCompiler compiler = testCompiler();
+        compiler.compileStatements(script);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        Set<DBSPOperator> pruned = new HashSet<>();
+        int apply2 = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (op.is(DBSPIntegrateTraceRetainKeysOperator.class))
+                // At most one operator prunes each integral
+                Assert.assertTrue(pruned.add(op.inputs.get(0)));
+            if (op.is(DBSPApply2Operator.class))
+                apply2++;
+        }
+        Assert.assertEquals(1, apply2);
+
+        compiler = testCompiler();
+        compiler.compileStatements(script);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        ccs.step("""
+                INSERT INTO series VALUES('a', '2024-01-01 10:00:00'), ('x', '2024-01-01 10:30:00');
+                INSERT INTO shift VALUES('p', '2024-01-01');""",
+                """
+                 metadata | event_time          | person | on_call    | weight
+                ----------------------------------------------------------------
+                 a| 2024-01-01 10:00:00 | p| 2024-01-01 | 1
+                 x| 2024-01-01 10:30:00 | p| 2024-01-01 | 1""",
+                """
+                 metadata | event_time          | person | on_call    | weight
+                ----------------------------------------------------------------
+                 a| 2024-01-01 10:00:00 | p| 2024-01-01 | 1""");
+        ccs.step("INSERT INTO series VALUES('b', '2024-01-01 10:45:00');",
+                """
+                 metadata | event_time          | person | on_call    | weight
+                ----------------------------------------------------------------
+                 b| 2024-01-01 10:45:00 | p| 2024-01-01 | 1""",
+                """
+                 metadata | event_time          | person | on_call    | weight
+                ----------------------------------------------------------------
+                 b| 2024-01-01 10:45:00 | p| 2024-01-01 | 1""");
+        this.addRustTestCase("testJoinSharedRetain", ccs);
+    }
+
     @Test
     public void testJoinTwoColumns() {
         // One joined column is monotone, the other one isn't.
@@ -386,6 +509,141 @@ public class StreamingTests extends StreamingTest {
         this.addRustTestCase("testJoinTwoColumns", ccs);
     }
 
+    @Test
+    public void testTopKLagLateness() {
+        // The partitions are monotone, so the traces of the inputs
+        // of TopK and LAG can be garbage-collected.
+        String script = """
+            CREATE TABLE series (
+                    metadata VARCHAR NOT NULL,
+                    event_time TIMESTAMP NOT NULL LATENESS INTERVAL '1:00' HOURS TO MINUTES
+            );
+        
+            CREATE VIEW T AS
+            SELECT * FROM (
+               SELECT metadata, event_time,
+                      ROW_NUMBER() OVER (PARTITION BY event_time ORDER BY metadata) AS rn
+               FROM series)
+            WHERE rn <= 2;
+            
+            CREATE VIEW L AS
+            SELECT metadata, LAG(metadata) OVER (PARTITION BY event_time ORDER BY metadata)
+            FROM series;
+            """;
+        DBSPCompiler compiler = testCompiler();
+        compiler.compileStatements(script);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        int retain = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators())
+            if (op.is(DBSPIntegrateTraceRetainKeysOperator.class))
+                retain++;
+        Assert.assertEquals(2, retain);
+    }
+
+    @Test
+    public void testTopKEvictionBelowWaterline() {
+        // The TopK keeps the row with the smallest x.  Inserting
+        // (10:00, 1) after (08:00, 5) evicts (08:00, 5), which is below the
+        // waterline by then, so the output of the TopK is not monotone
+        // in event_time, and the state of the aggregate cannot be pruned.
+        String script = """
+            CREATE TABLE series (
+                    x INT NOT NULL,
+                    event_time TIMESTAMP NOT NULL LATENESS INTERVAL '1:00' HOURS TO MINUTES
+            );
+
+            CREATE VIEW V AS
+            SELECT event_time, COUNT(*) FROM (
+               SELECT * FROM series ORDER BY x LIMIT 1)
+            GROUP BY event_time;
+            """;
+        DBSPCompiler compiler = testCompiler();
+        // Compile the LIMIT into a TopK which outputs the input rows
+        compiler.options.languageOptions.ignoreOrderBy = true;
+        compiler.compileStatements(script);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        for (DBSPOperator op: circuit.circuit.getAllOperators())
+            Assert.assertFalse(op.is(DBSPIntegrateTraceRetainKeysOperator.class));
+    }
+
+    @Test
+    public void testWindowOrderByLateness() {
+        // The ORDER BY column of the window is monotone, so the window
+        // aggregate gets a waterline, and only keeps the rows that can
+        // still be part of the window of a new row.  LAG needs all the
+        // older rows of a partition, so its input is not pruned by value.
+        String script = """
+            CREATE TABLE transactions (
+                    account_id BIGINT NOT NULL,
+                    amount DOUBLE,
+                    ts TIMESTAMP NOT NULL LATENESS INTERVAL '1:00' HOURS TO MINUTES
+            );
+        
+            CREATE VIEW W AS
+            SELECT account_id, ts,
+                   SUM(amount) OVER (
+                       PARTITION BY account_id
+                       ORDER BY extract(EPOCH FROM ts)
+                       RANGE BETWEEN 3600 PRECEDING AND CURRENT ROW) AS last_hour
+            FROM transactions;
+            
+            CREATE VIEW L AS
+            SELECT account_id, ts, LAG(amount) OVER (PARTITION BY account_id ORDER BY ts)
+            FROM transactions;
+            """;
+        DBSPCompiler compiler = testCompiler();
+        compiler.compileStatements(script);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        int windows = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            Assert.assertFalse(op.is(DBSPIntegrateTraceRetainValuesOperator.class));
+            if (op.is(DBSPWindowAggregateOperator.class)) {
+                Assert.assertNotNull(op.to(DBSPWindowAggregateOperator.class).waterline());
+                windows++;
+            }
+        }
+        Assert.assertEquals(1, windows);
+
+        compiler = testCompiler();
+        compiler.compileStatements(script);
+        CompilerCircuitStream ccs = new CompilerCircuitStream(compiler);
+        this.addRustTestCase("testWindowOrderByLateness", ccs);
+    }
+
+    @Test
+    public void testPrimaryKeyLateness() {
+        String script = """
+            CREATE TABLE series (
+                    id INT NOT NULL PRIMARY KEY,
+                    event_time TIMESTAMP NOT NULL LATENESS INTERVAL '1:00' HOURS TO MINUTES
+            );
+        
+            CREATE VIEW V AS
+            SELECT TUMBLE_START(event_time, INTERVAL '1' HOUR), COUNT(*)
+            FROM series
+            GROUP BY TUMBLE(event_time, INTERVAL '1' HOUR);
+            """;
+        DBSPCompiler compiler = testCompiler();
+        compiler.compileStatements(script);
+        compiler.optimize();
+        Assert.assertFalse(compiler.hasErrors());
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        int waterlines = 0;
+        for (DBSPOperator op: circuit.circuit.getAllOperators()) {
+            if (op.is(DBSPWaterlineOperator.class)) {
+                waterlines++;
+                Assert.assertTrue(op.inputs.get(0).inputs.get(0).is(DBSPSourceMapOperator.class));
+            }
+        }
+        Assert.assertEquals(1, waterlines);
+    }
+
     @Test
     public void testAggregate() {
         String sql = """
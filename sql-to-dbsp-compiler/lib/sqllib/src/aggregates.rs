@@ -4,11 +4,12 @@
 use crate::binary::ByteArray;
 use crate::timestamp::*;
 use core::ops::Add;
-use dbsp::algebra::{F32, F64};
+use dbsp::algebra::{Semigroup, F32, F64};
+use dbsp::utils::Tup2;
 use num::PrimInt;
 use rust_decimal::Decimal;
 use std::cmp::Ord;
-use std::marker::Copy;
+use std::marker::{Copy, PhantomData};
 
 // Macro to create variants of an aggregation function
 // There must exist a function g(left: T, right: T) -> T ($base_name = g)
@@ -266,3 +267,232 @@ where
         (Some(left), Some(right)) => left > right,
     }
 }
+
+/// Values which can be combined by the BIT_AND, BIT_OR, and BIT_XOR aggregates.
+pub trait BitAggregate: Clone {
+    fn bit_and(&self, other: &Self) -> Self;
+    fn bit_or(&self, other: &Self) -> Self;
+    fn bit_xor(&self, other: &Self) -> Self;
+}
+
+macro_rules! int_bit_aggregate {
+    ($($type: ty),*) => {
+        $(
+            impl BitAggregate for $type {
+                fn bit_and(&self, other: &Self) -> Self {
+                    agg_and(*self, *other)
+                }
+
+                fn bit_or(&self, other: &Self) -> Self {
+                    agg_or(*self, *other)
+                }
+
+                fn bit_xor(&self, other: &Self) -> Self {
+                    agg_xor(*self, *other)
+                }
+            }
+        )*
+    };
+}
+
+int_bit_aggregate!(i8, i16, i32, i64);
+
+impl BitAggregate for ByteArray {
+    fn bit_and(&self, other: &Self) -> Self {
+        self.and(other)
+    }
+
+    fn bit_or(&self, other: &Self) -> Self {
+        self.or(other)
+    }
+
+    fn bit_xor(&self, other: &Self) -> Self {
+        self.xor(other)
+    }
+}
+
+// Semigroups used to combine partial results of the aggregates below.
+// The accumulators are nullable, and None stands for an empty collection.
+
+#[derive(Clone)]
+pub struct BitAndSemigroup<T>(PhantomData<T>);
+
+impl<T> Semigroup<Option<T>> for BitAndSemigroup<T>
+where
+    T: BitAggregate,
+{
+    fn combine(left: &Option<T>, right: &Option<T>) -> Option<T> {
+        match (left, right) {
+            (None, _) => right.clone(),
+            (_, None) => left.clone(),
+            (Some(x), Some(y)) => Some(x.bit_and(y)),
+        }
+    }
+}
+
+#[derive(Clone)]
+pub struct BitOrSemigroup<T>(PhantomData<T>);
+
+impl<T> Semigroup<Option<T>> for BitOrSemigroup<T>
+where
+    T: BitAggregate,
+{
+    fn combine(left: &Option<T>, right: &Option<T>) -> Option<T> {
+        match (left, right) {
+            (None, _) => right.clone(),
+            (_, None) => left.clone(),
+            (Some(x), Some(y)) => Some(x.bit_or(y)),
+        }
+    }
+}
+
+#[derive(Clone)]
+pub struct BitXorSemigroup<T>(PhantomData<T>);
+
+impl<T> Semigroup<Option<T>> for BitXorSemigroup<T>
+where
+    T: BitAggregate,
+{
+    fn combine(left: &Option<T>, right: &Option<T>) -> Option<T> {
+        match (left, right) {
+            (None, _) => right.clone(),
+            (_, None) => left.clone(),
+            (Some(x), Some(y)) => Some(x.bit_xor(y)),
+        }
+    }
+}
+
+/// Semigroup for aggregates that produce the same value for all rows,
+/// such as GROUPING.
+#[derive(Clone)]
+pub struct ConstantSemigroup<T>(PhantomData<T>);
+
+impl<T> Semigroup<T> for ConstantSemigroup<T>
+where
+    T: Clone,
+{
+    fn combine(left: &T, _right: &T) -> T {
+        left.clone()
+    }
+}
+
+// Semigroups for ARG_MIN and ARG_MAX.  The accumulator is a pair
+// (value, compared); the pair with the smallest (largest) compared
+// field wins.  In the Opt versions a None compared field
+// stands for a missing value.
+
+#[derive(Clone)]
+pub struct ArgMinSemigroup<T, R>(PhantomData<(T, R)>);
+
+impl<T, R> Semigroup<Tup2<T, R>> for ArgMinSemigroup<T, R>
+where
+    T: Clone,
+    R: Ord + Clone,
+{
+    fn combine(left: &Tup2<T, R>, right: &Tup2<T, R>) -> Tup2<T, R> {
+        if right.1 < left.1 {
+            right.clone()
+        } else {
+            left.clone()
+        }
+    }
+}
+
+#[derive(Clone)]
+pub struct ArgMaxSemigroup<T, R>(PhantomData<(T, R)>);
+
+impl<T, R> Semigroup<Tup2<T, R>> for ArgMaxSemigroup<T, R>
+where
+    T: Clone,
+    R: Ord + Clone,
+{
+    fn combine(left: &Tup2<T, R>, right: &Tup2<T, R>) -> Tup2<T, R> {
+        if right.1 > left.1 {
+            right.clone()
+        } else {
+            left.clone()
+        }
+    }
+}
+
+#[derive(Clone)]
+pub struct ArgMinOptSemigroup<T, R>(PhantomData<(T, R)>);
+
+impl<T, R> Semigroup<Tup2<T, Option<R>>> for ArgMinOptSemigroup<T, R>
+where
+    T: Clone,
+    R: Ord + Clone,
+{
+    fn combine(left: &Tup2<T, Option<R>>, right: &Tup2<T, Option<R>>) -> Tup2<T, Option<R>> {
+        match (&left.1, &right.1) {
+            (_, None) => left.clone(),
+            (None, _) => right.clone(),
+            (Some(x), Some(y)) => {
+                if y < x {
+                    right.clone()
+                } else {
+                    left.clone()
+                }
+            }
+        }
+    }
+}
+
+#[derive(Clone)]
+pub struct ArgMaxOptSemigroup<T, R>(PhantomData<(T, R)>);
+
+impl<T, R> Semigroup<Tup2<T, Option<R>>> for ArgMaxOptSemigroup<T, R>
+where
+    T: Clone,
+    R: Ord + Clone,
+{
+    fn combine(left: &Tup2<T, Option<R>>, right: &Tup2<T, Option<R>>) -> Tup2<T, Option<R>> {
+        match (&left.1, &right.1) {
+            (_, None) => left.clone(),
+            (None, _) => right.clone(),
+            (Some(x), Some(y)) => {
+                if y > x {
+                    right.clone()
+                } else {
+                    left.clone()
+                }
+            }
+        }
+    }
+}
+
+// Semigroups for MIN and MAX over nullable values.  Unlike the
+// MinSemigroup and MaxSemigroup in DBSP, which order None before
+// any other value, None stands for an empty collection.
+
+#[derive(Clone)]
+pub struct MinOptSemigroup<T>(PhantomData<T>);
+
+impl<T> Semigroup<Option<T>> for MinOptSemigroup<T>
+where
+    T: Ord + Clone,
+{
+    fn combine(left: &Option<T>, right: &Option<T>) -> Option<T> {
+        match (left, right) {
+            (None, _) => right.clone(),
+            (_, None) => left.clone(),
+            (Some(x), Some(y)) => Some(x.min(y).clone()),
+        }
+    }
+}
+
+#[derive(Clone)]
+pub struct MaxOptSemigroup<T>(PhantomData<T>);
+
+impl<T> Semigroup<Option<T>> for MaxOptSemigroup<T>
+where
+    T: Ord + Clone,
+{
+    fn combine(left: &Option<T>, right: &Option<T>) -> Option<T> {
+        match (left, right) {
+            (None, _) => right.clone(),
+            (_, None) => left.clone(),
+            (Some(x), Some(y)) => Some(x.max(y).clone()),
+        }
+    }
+}
@@ -38,15 +38,21 @@ use dbsp::{
 };
 use num::{Signed, ToPrimitive};
 use rust_decimal::{Decimal, MathematicalOps};
+use std::cmp::Ordering;
 use std::fmt::Debug;
+use std::hash::Hash;
 use std::marker::PhantomData;
 use std::ops::{Add, Deref, Neg};
 use std::str::FromStr;
+use std::sync::OnceLock;
 
 pub type Weight = i64; // Default weight type
 pub type WSet<D> = OrdZSet<D>;
 pub type IndexedWSet<K, D> = OrdIndexedZSet<K, D>;
 
+/// Semigroup for the nullable accumulators of aggregates such as SUM,
+/// where None stands for a collection without non-NULL values, so it is
+/// the neutral element, as in SQL, where NULL values are ignored.
 #[derive(Clone)]
 pub struct DefaultOptSemigroup<T>(PhantomData<T>);
 
@@ -606,8 +612,8 @@ where
 {
     fn combine(left: &Option<T>, right: &Option<T>) -> Option<T> {
         match (left, right) {
-            (None, _) => None,
-            (_, None) => None,
+            (None, _) => right.clone(),
+            (_, None) => left.clone(),
             (Some(x), Some(y)) => Some(x.add_by_ref(y)),
         }
     }
@@ -970,6 +976,31 @@ pub fn times_i32_ShortInterval(left: i32, right: ShortInterval) -> ShortInterval
 
 some_polymorphic_function2!(times, i32, i32, ShortInterval, ShortInterval, ShortInterval);
 
+/// A static value which is computed the first time it is used.
+/// Used for constant expressions which are expensive to evaluate.
+pub struct StaticLazy<T> {
+    cell: OnceLock<T>,
+    init: fn() -> T,
+}
+
+impl<T> StaticLazy<T> {
+    pub const fn new(init: fn() -> T) -> Self {
+        Self {
+            cell: OnceLock::new(),
+            init,
+        }
+    }
+}
+
+impl<T> Deref for StaticLazy<T> {
+    type Target = T;
+
+    #[inline(always)]
+    fn deref(&self) -> &T {
+        self.cell.get_or_init(self.init)
+    }
+}
+
 /***** decimals ***** */
 
 #[inline(always)]
@@ -1499,6 +1530,110 @@ where
     TypedBatch::new(builder.done())
 }
 
+/// Incrementally maintains the result of an ORDER BY as a sorted vector.
+/// Applies the changes in `delta` to `data`, which is kept sorted by
+/// `comparator`; elements which are equal according to the comparator are
+/// kept in their natural order, so the result is the same as sorting the
+/// whole collection with a stable sort.  Returns the change of the sorted
+/// vector: the previous contents with weight -1 and the new contents with
+/// weight 1.  An empty vector is never part of the result.
+///
+/// The delta is sorted once and merged with `data` in a single pass, so
+/// the cost is O(|data| + |delta| log |delta|).  Besides `data` itself, the
+/// result holds one copy of the previous and one copy of the new contents.
+pub fn sorted_vec_update<D, F>(
+    data: &mut Vec<D>,
+    delta: &IndexedWSet<(), D>,
+    comparator: F,
+) -> WSet<Vec<D>>
+where
+    D: DBData + Erase<DynData>,
+    F: Fn(&D, &D) -> Ordering,
+{
+    let factories = OrdZSetFactories::new::<Vec<D>, (), ZWeight>();
+    let mut builder = VecWSetBuilder::with_capacity(&factories, (), 2);
+    if delta.is_empty() {
+        return TypedBatch::new(builder.done());
+    }
+
+    let order = |a: &D, b: &D| comparator(a, b).then_with(|| a.cmp(b));
+    let mut changes = Vec::with_capacity(delta.len());
+    let mut inserted = 0;
+    let mut cursor = delta.cursor();
+    while cursor.key_valid() {
+        while cursor.val_valid() {
+            let w = *cursor.weight().deref();
+            let item = unsafe { cursor.val().downcast::<D>() };
+            if w > 0 {
+                inserted += w as usize;
+            }
+            changes.push((item.clone(), w));
+            cursor.step_val();
+        }
+        cursor.step_key();
+    }
+    changes.sort_by(|(a, _), (b, _)| order(a, b));
+
+    // The retraction is the only copy of the previous contents; the
+    // elements which are not changed are moved into the new contents.
+    let retraction = data.clone();
+    let mut old = std::mem::take(data).into_iter().peekable();
+    data.reserve(retraction.len() + inserted);
+    // Index in `data` of the first element which differs from `retraction`
+    let mut first_change = None;
+    for (item, w) in changes {
+        if w > 0 {
+            // Insert after the elements equal to `item`
+            while let Some(next) = old.next_if(|next| order(next, &item) != Ordering::Greater) {
+                data.push(next);
+            }
+            first_change.get_or_insert(data.len());
+            data.extend(std::iter::repeat(item).take(w as usize));
+        } else {
+            while let Some(next) = old.next_if(|next| order(next, &item) == Ordering::Less) {
+                data.push(next);
+            }
+            let mut count = w.unsigned_abs();
+            while count > 0
+                && old
+                    .next_if(|next| order(next, &item) == Ordering::Equal)
+                    .is_some()
+            {
+                first_change.get_or_insert(data.len());
+                count -= 1;
+            }
+        }
+    }
+    data.extend(old);
+
+    let Some(position) = first_change else {
+        return TypedBatch::new(builder.done());
+    };
+    // The builder expects the vectors in increasing order; both vectors
+    // share the prefix before the first change.
+    let minus_one: ZWeight = -1;
+    let one: ZWeight = 1;
+    let mut changes = [(retraction, minus_one), (data.clone(), one)];
+    if changes[0].0[position..] > changes[1].0[position..] {
+        changes.swap(0, 1);
+    }
+    for (mut vec, mut w) in changes {
+        if !vec.is_empty() {
+            builder.push_vals(vec.erase_mut(), ().erase_mut(), w.erase_mut());
+        }
+    }
+    TypedBatch::new(builder.done())
+}
+
+/// Assigns a value to one of `buckets` partitions using a hash of the value.
+/// Used to split large groups into sub-groups which are aggregated separately.
+pub fn hash_partition<T>(value: &T, buckets: i32) -> i32
+where
+    T: Hash,
+{
+    (dbsp::default_hash(value) % (buckets as u64)) as i32
+}
+
 pub fn append_to_upsert_handle<K>(data: &WSet<K>, handle: &SetHandle<K>)
 where
     K: DBData,
@@ -1565,3 +1700,55 @@ where
     }
     false
 }
+
+#[cfg(test)]
+mod test {
+    use super::{sorted_vec_update, DefaultOptSemigroup};
+    use dbsp::{algebra::Semigroup, indexed_zset};
+
+    #[test]
+    fn default_opt_semigroup_ignores_none() {
+        type S = DefaultOptSemigroup<i64>;
+        assert_eq!(S::combine(&None, &None), None);
+        assert_eq!(S::combine(&None, &Some(2)), Some(2));
+        assert_eq!(S::combine(&Some(1), &None), Some(1));
+        assert_eq!(S::combine(&Some(1), &Some(2)), Some(3));
+    }
+
+    #[test]
+    fn sorted_vec_inserts_and_deletes() {
+        // Sort in decreasing order
+        let comparator = |a: &i64, b: &i64| b.cmp(a);
+        let mut data = Vec::new();
+
+        let delta = indexed_zset! { () => { 3i64 => 1, 1 => 2, 2 => 1 } };
+        let result = sorted_vec_update(&mut data, &delta, comparator);
+        assert_eq!(data, vec![3, 2, 1, 1]);
+        assert_eq!(
+            result.iter().collect::<Vec<_>>(),
+            vec![(vec![3, 2, 1, 1], (), 1)]
+        );
+
+        let delta = indexed_zset! { () => { 1i64 => -1, 2 => -1, 4 => 1, 0 => 1 } };
+        let result = sorted_vec_update(&mut data, &delta, comparator);
+        assert_eq!(data, vec![4, 3, 1, 0]);
+        assert_eq!(
+            result.iter().collect::<Vec<_>>(),
+            vec![(vec![3, 2, 1, 1], (), -1), (vec![4, 3, 1, 0], (), 1)]
+        );
+
+        // Deleting a missing element does not change the vector
+        let delta = indexed_zset! { () => { 7i64 => -1 } };
+        let result = sorted_vec_update(&mut data, &delta, comparator);
+        assert_eq!(data, vec![4, 3, 1, 0]);
+        assert_eq!(result.iter().count(), 0);
+
+        let delta = indexed_zset! { () => { 4i64 => -1, 3 => -1, 1 => -1, 0 => -1 } };
+        let result = sorted_vec_update(&mut data, &delta, comparator);
+        assert!(data.is_empty());
+        assert_eq!(
+            result.iter().collect::<Vec<_>>(),
+            vec![(vec![4, 3, 1, 0], (), -1)]
+        );
+    }
+}
@@ -84,6 +84,59 @@ pub fn like3___(value: String, pattern: String, escape: String) -> bool {
 
 some_function3!(like3, String, String, String, bool);
 
+/// A LIKE or RLIKE pattern compiled into a regular expression.
+/// `None` is an invalid regular expression, which does not match any string.
+pub type CompiledPattern = Option<Regex>;
+
+// Translate a LIKE pattern into an equivalent regular expression
+fn like_to_regex(pattern: &str, escape: Option<char>) -> CompiledPattern {
+    let mut result = String::with_capacity(pattern.len() + 8);
+    result.push_str("(?s)\\A");
+    let mut chars = pattern.chars();
+    while let Some(c) = chars.next() {
+        if Some(c) == escape {
+            let escaped = chars
+                .next()
+                .unwrap_or_else(|| panic!("Invalid escape sequence in LIKE pattern '{pattern}'"));
+            result.push_str(&regex::escape(&escaped.to_string()));
+        } else if c == '%' {
+            result.push_str(".*");
+        } else if c == '_' {
+            result.push('.');
+        } else {
+            result.push_str(&regex::escape(&c.to_string()));
+        }
+    }
+    result.push_str("\\z");
+    Regex::new(&result).ok()
+}
+
+pub fn compile_like2(pattern: String) -> CompiledPattern {
+    like_to_regex(&pattern, None)
+}
+
+pub fn compile_like3(pattern: String, escape: String) -> CompiledPattern {
+    let mut chars = escape.chars();
+    let escape_char = chars.next();
+    if chars.next().is_some() {
+        panic!("Invalid escape string in LIKE '{escape}'");
+    }
+    like_to_regex(&pattern, escape_char)
+}
+
+pub fn compile_rlike(pattern: String) -> CompiledPattern {
+    Regex::new(&pattern).ok()
+}
+
+pub fn pattern_matches_(value: String, pattern: &CompiledPattern) -> bool {
+    pattern.as_ref().map_or(false, |re| re.is_match(&value))
+}
+
+pub fn pattern_matchesN(value: Option<String>, pattern: &CompiledPattern) -> Option<bool> {
+    let value = value?;
+    Some(pattern_matches_(value, pattern))
+}
+
 pub fn position__(needle: String, haystack: String) -> i32 {
     let pos = haystack.find(needle.as_str());
     match pos {